@@ -0,0 +1,78 @@
+#!/bin/bash
+set -euo pipefail
+
+# Builds agent/bench into a self-contained JMH jar without touching the network.
+# Jars are taken from agent/bench/lib first, then from a local Maven repository.
+#
+#   ./build.sh && java -jar build/benchmarks.jar                 # everything
+#   java -jar build/benchmarks.jar ProxyDispatch -f 1 -wi 2 -i 3  # one class, short run
+
+BASE_DIR="$(cd "$(dirname "$0")" && pwd)"
+AGENT_DIR="$(cd "$BASE_DIR/.." && pwd)"
+DEFAULT_JDK="$AGENT_DIR/../jdk8u462-b08/Contents/Home"
+JDK_HOME="${JAVA_HOME:-$DEFAULT_JDK}"
+JAVAC_BIN="$JDK_HOME/bin/javac"
+JAR_BIN="$JDK_HOME/bin/jar"
+M2_REPO="${M2_REPO:-$HOME/.m2/repository}"
+
+JMH_VERSION="1.37"
+
+if [[ ! -x "$JAVAC_BIN" ]]; then
+  echo "javac not found at $JAVAC_BIN" >&2
+  exit 1
+fi
+
+# resolve <file name> <maven path>
+resolve() {
+  if [[ -f "$BASE_DIR/lib/$1" ]]; then
+    echo "$BASE_DIR/lib/$1"
+  elif [[ -f "$AGENT_DIR/lib/$1" ]]; then
+    echo "$AGENT_DIR/lib/$1"
+  elif [[ -f "$M2_REPO/$2/$1" ]]; then
+    echo "$M2_REPO/$2/$1"
+  else
+    echo "Missing $1: copy it into $BASE_DIR/lib (or $M2_REPO/$2)" >&2
+    exit 1
+  fi
+}
+
+JMH_CORE="$(resolve "jmh-core-$JMH_VERSION.jar" "org/openjdk/jmh/jmh-core/$JMH_VERSION")"
+JMH_APT="$(resolve "jmh-generator-annprocess-$JMH_VERSION.jar" "org/openjdk/jmh/jmh-generator-annprocess/$JMH_VERSION")"
+JOPT="$(resolve "jopt-simple-5.0.4.jar" "net/sf/jopt-simple/jopt-simple/5.0.4")"
+MATH3="$(resolve "commons-math3-3.6.1.jar" "org/apache/commons/commons-math3/3.6.1")"
+BYTE_BUDDY="$(resolve "byte-buddy-1.14.10.jar" "net/bytebuddy/byte-buddy/1.14.10")"
+ASM="$(resolve "asm-9.5.jar" "org/ow2/asm/asm/9.5")"
+
+BUILD_DIR="$BASE_DIR/build"
+CLASSES_DIR="$BUILD_DIR/classes"
+MANIFEST_PATH="$BUILD_DIR/MANIFEST.MF"
+JAR_PATH="$BUILD_DIR/benchmarks.jar"
+
+rm -rf "$BUILD_DIR"
+mkdir -p "$CLASSES_DIR"
+
+# Agent sources are compiled in alongside the benchmarks so package-private classes
+# (proxies, formatters) can be measured directly.
+find "$AGENT_DIR/src" "$BASE_DIR/src" -name '*.java' | sort > "$BUILD_DIR/sources.list"
+echo "$AGENT_DIR/client/src/com/blueprint/relay/client/MappedFences.java" >> "$BUILD_DIR/sources.list"
+"$JAVAC_BIN" \
+  -source 1.8 \
+  -target 1.8 \
+  -encoding US-ASCII \
+  -cp "$JMH_CORE:$BYTE_BUDDY:$ASM" \
+  -processorpath "$JMH_APT:$JMH_CORE" \
+  -d "$CLASSES_DIR" \
+  @"$BUILD_DIR/sources.list"
+
+for dep in "$JMH_CORE" "$JOPT" "$MATH3" "$BYTE_BUDDY" "$ASM"; do
+  (cd "$CLASSES_DIR" && "$JAR_BIN" xf "$dep")
+done
+rm -f "$CLASSES_DIR/META-INF/MANIFEST.MF"
+
+cat > "$MANIFEST_PATH" <<'MF'
+Main-Class: org.openjdk.jmh.Main
+MF
+
+"$JAR_BIN" cmf "$MANIFEST_PATH" "$JAR_PATH" -C "$CLASSES_DIR" .
+
+echo "Created benchmark jar at $JAR_PATH"
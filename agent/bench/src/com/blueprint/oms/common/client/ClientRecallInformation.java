@@ -0,0 +1,79 @@
+package com.blueprint.oms.common.client;
+
+import java.util.Date;
+
+/**
+ * Shape of the OMS recall row: a dozen simple getters RecallFormatter walks
+ * reflectively for every element.
+ */
+public class ClientRecallInformation {
+  private final long recallId;
+  private final long patientId;
+  private final int locationId;
+  private final String patientName;
+  private final String recallType;
+  private final String status;
+  private final String phone;
+  private final Date dueDate;
+  private final Date lastVisit;
+  private final boolean active;
+  private final Integer attempts;
+
+  public ClientRecallInformation(long recallId) {
+    this.recallId = recallId;
+    this.patientId = 100000L + recallId;
+    this.locationId = (int) (recallId % 12);
+    this.patientName = "Patient " + recallId;
+    this.recallType = recallId % 2 == 0 ? "ANNUAL" : "FOLLOW_UP";
+    this.status = "OPEN";
+    this.phone = "555-01" + (recallId % 100);
+    this.dueDate = new Date(1_700_000_000_000L + recallId * 86_400_000L);
+    this.lastVisit = new Date(1_650_000_000_000L + recallId * 86_400_000L);
+    this.active = recallId % 5 != 0;
+    this.attempts = (int) (recallId % 4);
+  }
+
+  public long getRecallId() {
+    return recallId;
+  }
+
+  public long getPatientId() {
+    return patientId;
+  }
+
+  public int getLocationId() {
+    return locationId;
+  }
+
+  public String getPatientName() {
+    return patientName;
+  }
+
+  public String getRecallType() {
+    return recallType;
+  }
+
+  public String getStatus() {
+    return status;
+  }
+
+  public String getPhone() {
+    return phone;
+  }
+
+  public Date getDueDate() {
+    return dueDate;
+  }
+
+  public Date getLastVisit() {
+    return lastVisit;
+  }
+
+  public boolean isActive() {
+    return active;
+  }
+
+  public Integer getAttempts() {
+    return attempts;
+  }
+}
@@ -0,0 +1,45 @@
+package com.blueprint.oms.report;
+
+/**
+ * Mirrors the getters ArgumentFormatter probes on report-like OMS arguments.
+ */
+public class ReportRequest {
+  private final String reportName;
+  private final String startDate;
+  private final String endDate;
+  private final String locationIds;
+  private final Long userId;
+
+  public ReportRequest(String reportName, String startDate, String endDate, String locationIds, Long userId) {
+    this.reportName = reportName;
+    this.startDate = startDate;
+    this.endDate = endDate;
+    this.locationIds = locationIds;
+    this.userId = userId;
+  }
+
+  public String getReportName() {
+    return reportName;
+  }
+
+  public String getStartDate() {
+    return startDate;
+  }
+
+  public String getEndDate() {
+    return endDate;
+  }
+
+  public String getLocationIds() {
+    return locationIds;
+  }
+
+  public Long getUserId() {
+    return userId;
+  }
+
+  @Override
+  public String toString() {
+    return "ReportRequest[" + reportName + ", " + startDate + ".." + endDate + ", loc=" + locationIds + "]";
+  }
+}
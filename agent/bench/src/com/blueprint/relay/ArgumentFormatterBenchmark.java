@@ -0,0 +1,84 @@
+package com.blueprint.relay;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ArgumentFormatterBenchmark {
+  private Object[] reportArgs;
+  private Object report;
+  private Object jmsSmall;
+  private Object jmsLarge;
+  private Object intArray;
+  private Object objectArray;
+  private Object plain;
+
+  @Setup
+  public void setUp() {
+    BenchSupport.init();
+    report = BenchSupport.reportRequest();
+    reportArgs = new Object[] {report, "LOC-12", 42, null};
+    jmsSmall = BenchSupport.jmsMessage(256);
+    jmsLarge = BenchSupport.jmsMessage(32_000);
+    int[] ints = new int[1_000];
+    for (int i = 0; i < ints.length; i++) {
+      ints[i] = i;
+    }
+    intArray = ints;
+    Object[] objects = new Object[200];
+    for (int i = 0; i < objects.length; i++) {
+      objects[i] = "item-" + i;
+    }
+    objectArray = objects;
+    plain = Long.valueOf(123456789L);
+  }
+
+  @Benchmark
+  public String summarizeArgsReportCall() {
+    return ArgumentFormatter.summarizeArgs(reportArgs);
+  }
+
+  @Benchmark
+  public String summarizeValueReport() {
+    return ArgumentFormatter.summarizeValue(report);
+  }
+
+  @Benchmark
+  public String summarizeValueJmsSmall() {
+    return ArgumentFormatter.summarizeValue(jmsSmall);
+  }
+
+  @Benchmark
+  public String summarizeValueJmsLarge() {
+    return ArgumentFormatter.summarizeValue(jmsLarge);
+  }
+
+  @Benchmark
+  public String summarizeValueIntArray() {
+    return ArgumentFormatter.summarizeValue(intArray);
+  }
+
+  @Benchmark
+  public String summarizeValueObjectArray() {
+    return ArgumentFormatter.summarizeValue(objectArray);
+  }
+
+  @Benchmark
+  public String summarizeValuePlain() {
+    return ArgumentFormatter.summarizeValue(plain);
+  }
+}
@@ -0,0 +1,93 @@
+package com.blueprint.relay;
+
+import com.blueprint.oms.common.client.ClientRecallInformation;
+import com.blueprint.oms.report.ReportRequest;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import javax.jms.TextMessage;
+
+/**
+ * Shared fixtures. Every benchmark calls {@link #init()} from its setup so the relay
+ * log lands in a scratch file before RelayLogger's static initialiser runs.
+ */
+final class BenchSupport {
+  private BenchSupport() {
+  }
+
+  static void init() {
+    if (System.getProperty("blueprint.relay.log") == null) {
+      File log = new File(System.getProperty("java.io.tmpdir"), "BlueprintRelay-bench.log");
+      System.setProperty("blueprint.relay.log", log.getAbsolutePath());
+    }
+  }
+
+  static ReportRequest reportRequest() {
+    return new ReportRequest("Daily Cash Report", "2026-01-01", "2026-01-31", "[1, 4, 7, 12]", 42L);
+  }
+
+  static TextMessage jmsMessage(int textLength) {
+    StringBuilder text = new StringBuilder(textLength);
+    while (text.length() < textLength) {
+      text.append("<row id=\"").append(text.length()).append("\" status=\"OK\"/>");
+    }
+    text.setLength(textLength);
+    return new StubTextMessage("corr-7f3a", "ID:relay-bench-1", "ReportReady", text.toString());
+  }
+
+  static List<ClientRecallInformation> recalls(int size) {
+    List<ClientRecallInformation> recalls = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      recalls.add(new ClientRecallInformation(i));
+    }
+    return recalls;
+  }
+
+  /**
+   * Mimics the OMS controller surface the relay proxies sit in front of.
+   */
+  public interface ReportController {
+    String runReport(String name);
+  }
+
+  public static final class DirectReportController implements ReportController {
+    @Override
+    public String runReport(String name) {
+      return name;
+    }
+  }
+
+  public static final class StubTextMessage implements TextMessage {
+    private final String correlationId;
+    private final String messageId;
+    private final String type;
+    private final String text;
+
+    StubTextMessage(String correlationId, String messageId, String type, String text) {
+      this.correlationId = correlationId;
+      this.messageId = messageId;
+      this.type = type;
+      this.text = text;
+    }
+
+    @Override
+    public String getJMSCorrelationID() {
+      return correlationId;
+    }
+
+    @Override
+    public String getJMSMessageID() {
+      return messageId;
+    }
+
+    @Override
+    public String getJMSType() {
+      return type;
+    }
+
+    @Override
+    public String getText() {
+      return text;
+    }
+  }
+}
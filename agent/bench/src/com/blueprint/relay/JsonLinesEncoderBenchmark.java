@@ -0,0 +1,44 @@
+package com.blueprint.relay;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of turning one call event into log bytes, without the file write: the text
+ * line RelayLogger builds today versus JsonLinesEncoder into its reusable buffer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonLinesEncoderBenchmark {
+  private final JsonLinesEncoder encoder = new JsonLinesEncoder();
+  private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+  private final RelayEvent event = RelayEvent.capture("omsService", "getRecallList", RelayEvent.Phase.EXIT,
+      812_000L, "List(size=200) first=[RecallInformation(id=1, patient=Smith, due=2026-10-19)]");
+
+  @Benchmark
+  public byte[] text() {
+    String line = dateFormat.format(new Date(event.timeMillis)) + " | " + event.toText() + System.lineSeparator();
+    return line.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public ByteBuffer json() {
+    return encoder.encode(event);
+  }
+}
@@ -0,0 +1,74 @@
+package com.blueprint.relay;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of calling through the relay proxies compared with a direct call and with a
+ * pass-through JDK proxy (dispatch cost without logging). omsControllerJdkProxy is the
+ * reflective fallback used when a proxy class cannot be generated.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProxyDispatchBenchmark {
+  private BenchSupport.ReportController direct;
+  private BenchSupport.ReportController passThrough;
+  private BenchSupport.ReportController controllerProxy;
+  private BenchSupport.ReportController controllerJdkProxy;
+  private BenchSupport.ReportController serviceProxy;
+  private String reportName;
+
+  @Setup
+  public void setUp() {
+    BenchSupport.init();
+    direct = new BenchSupport.DirectReportController();
+    final BenchSupport.ReportController target = direct;
+    passThrough = (BenchSupport.ReportController) Proxy.newProxyInstance(
+        BenchSupport.ReportController.class.getClassLoader(),
+        new Class<?>[] {BenchSupport.ReportController.class},
+        (proxy, method, args) -> method.invoke(target, args));
+    controllerProxy = (BenchSupport.ReportController) OmsControllerProxy.wrap(target);
+    controllerJdkProxy = (BenchSupport.ReportController) OmsControllerProxy.wrapWithJdkProxy(target);
+    serviceProxy = (BenchSupport.ReportController) OmsServiceProxy.wrap(target);
+    reportName = "Daily Cash Report";
+  }
+
+  @Benchmark
+  public String directCall() {
+    return direct.runReport(reportName);
+  }
+
+  @Benchmark
+  public String passThroughJdkProxy() {
+    return passThrough.runReport(reportName);
+  }
+
+  @Benchmark
+  public String omsControllerProxy() {
+    return controllerProxy.runReport(reportName);
+  }
+
+  @Benchmark
+  public String omsControllerJdkProxy() {
+    return controllerJdkProxy.runReport(reportName);
+  }
+
+  @Benchmark
+  public String omsServiceProxy() {
+    return serviceProxy.runReport(reportName);
+  }
+}
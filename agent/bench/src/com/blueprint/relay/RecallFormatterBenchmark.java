@@ -0,0 +1,47 @@
+package com.blueprint.relay;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The omsService proxy's recall path: copy + reflect every element, then render.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecallFormatterBenchmark {
+  @Param({"10", "1000", "10000"})
+  public int size;
+
+  private List<?> recalls;
+
+  @Setup
+  public void setUp() {
+    BenchSupport.init();
+    recalls = BenchSupport.recalls(size);
+  }
+
+  @Benchmark
+  public Object summarizeReturnOnly() {
+    return RecallFormatter.summarizeReturn("getRecallList", recalls);
+  }
+
+  @Benchmark
+  public String summarizeAndRender() {
+    return ArgumentFormatter.summarizeValue(RecallFormatter.summarizeReturn("getRecallList", recalls));
+  }
+}
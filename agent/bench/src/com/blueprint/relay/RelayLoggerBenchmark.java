@@ -0,0 +1,43 @@
+package com.blueprint.relay;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * RelayLogger.log from one thread and under contention. Every call appends to the
+ * scratch log file, so this measures the real I/O path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RelayLoggerBenchmark {
+  @Setup
+  public void setUp() {
+    BenchSupport.init();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void logSingleThread() {
+    RelayLogger.log("omsService.%s args=%s", "getLocations", "[Long(42)]");
+  }
+
+  @Benchmark
+  @Threads(8)
+  public void logContended() {
+    RelayLogger.log("omsService.%s args=%s", "getLocations", "[Long(42)]");
+  }
+}
@@ -0,0 +1,13 @@
+package javax.jms;
+
+/**
+ * Benchmark stand-in for the JMS API; ArgumentFormatter only matches on the interface
+ * name and the getters below.
+ */
+public interface Message {
+  String getJMSCorrelationID();
+
+  String getJMSMessageID();
+
+  String getJMSType();
+}
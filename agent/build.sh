@@ -23,6 +23,8 @@ mkdir -p "$CLASSES_DIR"
 
 # Compile the agent sources (Java 8 bytecode keeps us consistent with the captured client).
 find "$BASE_DIR/src" -name '*.java' | sort > "$BUILD_DIR/sources.list"
+# The mapped control channel shares its memory-ordering helper with the client.
+echo "$BASE_DIR/client/src/com/blueprint/relay/client/MappedFences.java" >> "$BUILD_DIR/sources.list"
 "$JAVAC_BIN" \
   -source 1.8 \
   -target 1.8 \
@@ -34,6 +36,7 @@ find "$BASE_DIR/src" -name '*.java' | sort > "$BUILD_DIR/sources.list"
 cat > "$MANIFEST_PATH" <<'EOF'
 Premain-Class: com.blueprint.relay.Agent
 Can-Redefine-Classes: true
+Can-Retransform-Classes: true
 EOF
 
 # Bundle ByteBuddy + ASM into the agent jar (fat jar) so javaagent can load it.
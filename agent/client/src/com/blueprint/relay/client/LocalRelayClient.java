@@ -0,0 +1,174 @@
+package com.blueprint.relay.client;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * Client for the agent's LocalReportServer that keeps a small pool of persistent
+ * HTTP/1.1 connections and pipelines requests onto them. Submissions are
+ * asynchronous; the shared queue spreads them over whichever connection has a free
+ * pipeline slot.
+ *
+ * <pre>
+ *   try (LocalRelayClient client = new LocalRelayClient()) {
+ *     CompletableFuture&lt;RelayResponse&gt; pending = client.report("Daily Cash Report", params);
+ *     ...
+ *   }
+ * </pre>
+ */
+public final class LocalRelayClient implements Closeable {
+  public static final String DEFAULT_HOST = "127.0.0.1";
+  public static final int DEFAULT_PORT = 7777;
+  public static final int DEFAULT_CONNECTIONS = 4;
+  public static final int DEFAULT_PIPELINE_DEPTH = 4;
+
+  private final String host;
+  private final int port;
+  private final LinkedBlockingDeque<PendingRequest> queue = new LinkedBlockingDeque<>();
+  private final List<PooledConnection> connections;
+  private volatile boolean closed;
+
+  public LocalRelayClient() {
+    this(DEFAULT_HOST, DEFAULT_PORT, DEFAULT_CONNECTIONS, DEFAULT_PIPELINE_DEPTH);
+  }
+
+  public LocalRelayClient(String host, int port, int connectionCount, int pipelineDepth) {
+    if (connectionCount < 1 || pipelineDepth < 1) {
+      throw new IllegalArgumentException("connectionCount and pipelineDepth must be positive");
+    }
+    this.host = host;
+    this.port = port;
+    this.connections = new ArrayList<>(connectionCount);
+    for (int i = 0; i < connectionCount; i++) {
+      connections.add(new PooledConnection(host, port, pipelineDepth, queue, "RelayClient-" + (i + 1)));
+    }
+  }
+
+  /**
+   * Queue a GET for the given path (including any query string).
+   */
+  public CompletableFuture<RelayResponse> submit(String pathAndQuery) {
+    PendingRequest request = new PendingRequest(PooledConnection.requestHead(host, port, pathAndQuery));
+    if (closed) {
+      request.future.completeExceptionally(new IOException("Client closed"));
+      return request.future;
+    }
+    queue.offerLast(request);
+    return request.future;
+  }
+
+  public CompletableFuture<RelayResponse> report(String name, Map<String, String> params) {
+    Map<String, String> query = new LinkedHashMap<>();
+    query.put("name", name);
+    if (params != null) {
+      for (Map.Entry<String, String> entry : params.entrySet()) {
+        if (!"name".equals(entry.getKey())) {
+          query.put(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+    return submit("/report?" + encode(query));
+  }
+
+  public CompletableFuture<RelayResponse> health() {
+    return submit("/health");
+  }
+
+  /**
+   * Blocking convenience wrapper around {@link #submit(String)}.
+   */
+  public RelayResponse get(String pathAndQuery) throws IOException {
+    try {
+      return submit(pathAndQuery).get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for " + pathAndQuery);
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause.getMessage(), cause);
+    }
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    for (PooledConnection connection : connections) {
+      connection.close();
+    }
+    PendingRequest request;
+    while ((request = queue.pollFirst()) != null) {
+      request.future.completeExceptionally(new IOException("Client closed"));
+    }
+  }
+
+  static String encode(Map<String, String> params) {
+    StringBuilder builder = new StringBuilder();
+    try {
+      for (Map.Entry<String, String> entry : params.entrySet()) {
+        if (builder.length() > 0) {
+          builder.append('&');
+        }
+        builder.append(URLEncoder.encode(entry.getKey(), "UTF-8"))
+            .append('=')
+            .append(URLEncoder.encode(entry.getValue() == null ? "" : entry.getValue(), "UTF-8"));
+      }
+    } catch (UnsupportedEncodingException ex) {
+      throw new IllegalStateException(ex);
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Reads request paths (one per line, e.g. {@code /report?name=...&location=12}) from
+   * stdin, submits them all through the pool and prints one status line per request
+   * in input order.
+   */
+  public static void main(String[] args) throws Exception {
+    String host = System.getProperty("relay.host", DEFAULT_HOST);
+    int port = Integer.getInteger("relay.port", DEFAULT_PORT);
+    int connectionCount = Integer.getInteger("relay.connections", DEFAULT_CONNECTIONS);
+    int depth = Integer.getInteger("relay.pipeline", DEFAULT_PIPELINE_DEPTH);
+
+    List<String> paths = new ArrayList<>();
+    List<CompletableFuture<RelayResponse>> results = new ArrayList<>();
+    long start = System.nanoTime();
+    try (LocalRelayClient client = new LocalRelayClient(host, port, connectionCount, depth);
+         BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        String path = line.trim();
+        if (path.isEmpty() || path.startsWith("#")) {
+          continue;
+        }
+        paths.add(path);
+        results.add(client.submit(path));
+      }
+      for (int i = 0; i < paths.size(); i++) {
+        try {
+          RelayResponse response = results.get(i).get();
+          System.out.println(response.status() + "\t" + paths.get(i) + "\t"
+              + response.bodyAsString().replace('\n', ' '));
+        } catch (ExecutionException ex) {
+          System.out.println("ERR\t" + paths.get(i) + "\t" + ex.getCause());
+        }
+      }
+    }
+    long elapsedMs = (System.nanoTime() - start) / 1_000_000L;
+    System.err.println("Completed " + paths.size() + " requests in " + elapsedMs + " ms");
+  }
+}
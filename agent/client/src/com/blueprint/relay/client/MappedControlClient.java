@@ -0,0 +1,264 @@
+package com.blueprint.relay.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Client side of the agent's mapped control channel ({@code BlueprintRelay.ctl}). A
+ * request claims one slot through a byte-range lock, so several processes and threads
+ * can share the file. See {@code MappedControlChannel} in the agent for the layout.
+ */
+public final class MappedControlClient implements Closeable {
+  private static final int MAGIC = 0x42524331;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 64;
+  private static final int SLOT_HEADER_SIZE = 16;
+  private static final int OFFSET_MAGIC = 0;
+  private static final int OFFSET_VERSION = 4;
+  private static final int OFFSET_SLOT_COUNT = 8;
+  private static final int OFFSET_SLOT_SIZE = 12;
+  private static final int OFFSET_HEARTBEAT = 16;
+  private static final int SLOT_STATE = 0;
+  private static final int SLOT_SEQUENCE = 4;
+  private static final int SLOT_LENGTH = 8;
+  private static final int STATE_FREE = 0;
+  private static final int STATE_REQUEST = 1;
+  private static final int STATE_RESPONSE = 3;
+  private static final byte OP_PING = 1;
+  private static final byte OP_REPORT = 2;
+  private static final byte STATUS_OK = 0;
+
+  private static final long SPIN_NANOS = 100_000L;
+  private static final long STALE_HEARTBEAT_MS = 2_000L;
+
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+  private final int slotCount;
+  private final int slotSize;
+
+  public MappedControlClient(Path path) throws IOException {
+    this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      if (channel.size() < HEADER_SIZE) {
+        throw new IOException("Control file too small: " + path);
+      }
+      MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+      if (header.getInt(OFFSET_MAGIC) != MAGIC || header.getInt(OFFSET_VERSION) != VERSION) {
+        throw new IOException("Not an initialised relay control file: " + path);
+      }
+      this.slotCount = header.getInt(OFFSET_SLOT_COUNT);
+      this.slotSize = header.getInt(OFFSET_SLOT_SIZE);
+      this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slotCount * slotSize);
+    } catch (IOException | RuntimeException ex) {
+      channel.close();
+      throw ex;
+    }
+  }
+
+  public static Path defaultPath() {
+    return Paths.get(System.getProperty("user.home", "."), "BlueprintRelay.ctl");
+  }
+
+  /**
+   * True when the agent has touched the heartbeat recently.
+   */
+  public boolean isServerAlive() {
+    return System.currentTimeMillis() - buffer.getLong(OFFSET_HEARTBEAT) < STALE_HEARTBEAT_MS;
+  }
+
+  public String ping(long timeoutMillis) throws IOException {
+    return call(OP_PING, new ArrayList<String>(), timeoutMillis);
+  }
+
+  public String report(String name, Map<String, String> params, long timeoutMillis) throws IOException {
+    List<String> fields = new ArrayList<>();
+    fields.add(name);
+    if (params != null) {
+      for (Map.Entry<String, String> entry : params.entrySet()) {
+        fields.add(entry.getKey());
+        fields.add(entry.getValue() == null ? "" : entry.getValue());
+      }
+    }
+    return call(OP_REPORT, fields, timeoutMillis);
+  }
+
+  private String call(byte op, List<String> fields, long timeoutMillis) throws IOException {
+    long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+    int start = ThreadLocalRandom.current().nextInt(slotCount);
+    while (true) {
+      for (int i = 0; i < slotCount; i++) {
+        int slot = (start + i) % slotCount;
+        FileLock lock = tryLock(slot);
+        if (lock == null) {
+          continue;
+        }
+        try {
+          String result = callOnSlot(slot, op, fields, deadline);
+          if (result != null) {
+            return result;
+          }
+        } finally {
+          lock.release();
+        }
+      }
+      if (System.nanoTime() > deadline) {
+        throw new IOException("No free control slot within " + timeoutMillis + " ms");
+      }
+      LockSupport.parkNanos(50_000L);
+    }
+  }
+
+  /**
+   * Returns null if the slot turned out to be occupied by an abandoned request.
+   */
+  private String callOnSlot(int slot, byte op, List<String> fields, long deadline) throws IOException {
+    int base = slotBase(slot);
+    MappedFences.loadFence();
+    int state = buffer.getInt(base + SLOT_STATE);
+    if (state == STATE_RESPONSE) {
+      // A previous caller timed out before collecting its answer.
+      buffer.putInt(base + SLOT_STATE, STATE_FREE);
+    } else if (state != STATE_FREE) {
+      return null;
+    }
+
+    ByteBuffer payload = slotPayload(slot);
+    payload.put(op);
+    payload.putShort((short) fields.size());
+    for (String field : fields) {
+      byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+      if (bytes.length > 0xFFFF || payload.remaining() < 2 + bytes.length) {
+        throw new IOException("Request does not fit in a " + slotSize + " byte slot");
+      }
+      payload.putShort((short) bytes.length);
+      payload.put(bytes);
+    }
+    int sequence = buffer.getInt(base + SLOT_SEQUENCE) + 1;
+    buffer.putInt(base + SLOT_SEQUENCE, sequence);
+    buffer.putInt(base + SLOT_LENGTH, payload.position());
+    MappedFences.storeFence();
+    buffer.putInt(base + SLOT_STATE, STATE_REQUEST);
+
+    long spinUntil = System.nanoTime() + SPIN_NANOS;
+    long parkNanos = 1_000L;
+    while (true) {
+      MappedFences.loadFence();
+      if (buffer.getInt(base + SLOT_STATE) == STATE_RESPONSE) {
+        break;
+      }
+      long now = System.nanoTime();
+      if (now > deadline) {
+        throw new IOException("Timed out waiting for control response (slot " + slot + ")");
+      }
+      if (now < spinUntil) {
+        Thread.yield();
+      } else {
+        LockSupport.parkNanos(parkNanos);
+        parkNanos = Math.min(parkNanos * 2, 1_000_000L);
+      }
+    }
+
+    ByteBuffer response = slotPayload(slot);
+    byte status = response.get();
+    int length = response.getShort() & 0xFFFF;
+    byte[] text = new byte[length];
+    response.get(text);
+    buffer.putInt(base + SLOT_STATE, STATE_FREE);
+
+    String message = new String(text, StandardCharsets.UTF_8);
+    if (status != STATUS_OK) {
+      throw new IOException(message);
+    }
+    return message;
+  }
+
+  private FileLock tryLock(int slot) throws IOException {
+    try {
+      return channel.tryLock(slotBase(slot), slotSize, false);
+    } catch (OverlappingFileLockException ex) {
+      // Another thread in this JVM holds the slot.
+      return null;
+    }
+  }
+
+  private int slotBase(int slot) {
+    return HEADER_SIZE + slot * slotSize;
+  }
+
+  private ByteBuffer slotPayload(int slot) {
+    ByteBuffer view = buffer.duplicate();
+    int start = slotBase(slot) + SLOT_HEADER_SIZE;
+    view.limit(start + slotSize - SLOT_HEADER_SIZE);
+    view.position(start);
+    return view.slice();
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Usage: {@code MappedControlClient [-f file] ping [count]} or
+   * {@code MappedControlClient [-f file] report NAME [key=value ...]}.
+   */
+  public static void main(String[] args) throws Exception {
+    Path path = defaultPath();
+    int index = 0;
+    if (args.length > 1 && "-f".equals(args[0])) {
+      path = Paths.get(args[1]);
+      index = 2;
+    }
+    if (args.length <= index) {
+      System.err.println("Usage: MappedControlClient [-f file] ping [count] | report NAME [key=value ...]");
+      System.exit(2);
+    }
+    long timeout = Long.getLong("relay.control.timeoutMs", 120_000L);
+    try (MappedControlClient client = new MappedControlClient(path)) {
+      if (!client.isServerAlive()) {
+        System.err.println("Warning: agent heartbeat is stale, is the OMS client running?");
+      }
+      String command = args[index];
+      if ("ping".equals(command)) {
+        int count = args.length > index + 1 ? Integer.parseInt(args[index + 1]) : 1;
+        long best = Long.MAX_VALUE;
+        long total = 0L;
+        for (int i = 0; i < count; i++) {
+          long start = System.nanoTime();
+          client.ping(timeout);
+          long elapsed = System.nanoTime() - start;
+          best = Math.min(best, elapsed);
+          total += elapsed;
+        }
+        System.out.printf("PONG x%d avg=%.1fus best=%.1fus%n", count, total / 1000.0 / count, best / 1000.0);
+      } else if ("report".equals(command) && args.length > index + 1) {
+        Map<String, String> params = new LinkedHashMap<>();
+        for (int i = index + 2; i < args.length; i++) {
+          int eq = args[i].indexOf('=');
+          if (eq > 0) {
+            params.put(args[i].substring(0, eq), args[i].substring(eq + 1));
+          }
+        }
+        System.out.println(client.report(args[index + 1], params, timeout));
+      } else {
+        System.err.println("Unknown command: " + command);
+        System.exit(2);
+      }
+    }
+  }
+}
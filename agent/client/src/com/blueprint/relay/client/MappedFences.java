@@ -0,0 +1,68 @@
+package com.blueprint.relay.client;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * Memory ordering for the mapped control file, shared by MappedControlClient and the
+ * agent's MappedControlChannel (agent/build.sh compiles this file into the agent too).
+ * Java 8 has no VarHandle fences, and another process reads the mapping, so plain puts
+ * need hardware ordering: payload before state on write, state before payload on read.
+ * Unsafe's fences provide exactly that and are called through MethodHandles resolved
+ * once; without Unsafe, a volatile read and write stand in as a full fence.
+ */
+public final class MappedFences {
+  private static final MethodHandle STORE_FENCE;
+  private static final MethodHandle LOAD_FENCE;
+  private static volatile int sink;
+
+  static {
+    MethodHandle store = null;
+    MethodHandle load = null;
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      Object unsafe = field.get(null);
+      MethodType fence = MethodType.methodType(void.class);
+      store = MethodHandles.lookup().findVirtual(unsafeClass, "storeFence", fence).bindTo(unsafe);
+      load = MethodHandles.lookup().findVirtual(unsafeClass, "loadFence", fence).bindTo(unsafe);
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      store = null;
+      load = null;
+    }
+    STORE_FENCE = store;
+    LOAD_FENCE = load;
+  }
+
+  private MappedFences() {
+  }
+
+  /** Orders the stores before it ahead of the stores after it. */
+  public static void storeFence() {
+    if (STORE_FENCE != null) {
+      try {
+        STORE_FENCE.invokeExact();
+        return;
+      } catch (Throwable ignored) {
+        // Unsafe.storeFence does not throw; fall back anyway.
+      }
+    }
+    sink = sink + 1;
+  }
+
+  /** Orders the loads before it ahead of the loads after it. */
+  public static void loadFence() {
+    if (LOAD_FENCE != null) {
+      try {
+        LOAD_FENCE.invokeExact();
+        return;
+      } catch (Throwable ignored) {
+        // Unsafe.loadFence does not throw; fall back anyway.
+      }
+    }
+    sink = sink + 1;
+  }
+}
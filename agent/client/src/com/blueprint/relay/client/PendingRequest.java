@@ -0,0 +1,15 @@
+package com.blueprint.relay.client;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A request waiting for (or occupying) a pipeline slot on one of the pooled connections.
+ */
+final class PendingRequest {
+  final byte[] head;
+  final CompletableFuture<RelayResponse> future = new CompletableFuture<>();
+
+  PendingRequest(byte[] head) {
+    this.head = head;
+  }
+}
@@ -0,0 +1,354 @@
+package com.blueprint.relay.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Semaphore;
+
+/**
+ * One persistent HTTP/1.1 connection. A writer thread pulls requests off the shared
+ * client queue and pipelines up to {@code depth} of them onto the socket; a reader
+ * thread matches responses to requests in order. Failed or server-closed sockets are
+ * replaced lazily on the next write.
+ */
+final class PooledConnection {
+  private static final int CONNECT_TIMEOUT_MS = 2000;
+
+  private final String host;
+  private final int port;
+  private final BlockingDeque<PendingRequest> queue;
+  private final Semaphore permits;
+  private final Thread writer;
+  private volatile boolean closed;
+  private Session session;
+
+  PooledConnection(String host, int port, int depth, BlockingDeque<PendingRequest> queue, String name) {
+    this.host = host;
+    this.port = port;
+    this.queue = queue;
+    this.permits = new Semaphore(depth);
+    this.writer = new Thread(this::writeLoop, name + "-writer");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  void close() {
+    closed = true;
+    writer.interrupt();
+    Session current;
+    synchronized (this) {
+      current = session;
+      session = null;
+    }
+    if (current != null) {
+      current.fail(new IOException("Client closed"));
+    }
+  }
+
+  private void writeLoop() {
+    while (!closed) {
+      PendingRequest request;
+      try {
+        // Flush before blocking so nothing sits in the buffer while we wait; while more
+        // work is ready, consecutive requests share a single socket write.
+        if (!permits.tryAcquire()) {
+          flushSession();
+          permits.acquire();
+        }
+        request = queue.pollFirst();
+        if (request == null) {
+          flushSession();
+          request = queue.takeFirst();
+        }
+      } catch (InterruptedException interrupted) {
+        return;
+      }
+
+      Session current;
+      try {
+        current = currentSession();
+      } catch (IOException ex) {
+        permits.release();
+        request.future.completeExceptionally(ex);
+        continue;
+      }
+      current.send(request);
+    }
+  }
+
+  private void flushSession() {
+    Session current;
+    synchronized (this) {
+      current = session;
+    }
+    if (current != null) {
+      current.flush();
+    }
+  }
+
+  private synchronized Session currentSession() throws IOException {
+    if (session == null || !session.alive) {
+      session = new Session(connect());
+    }
+    return session;
+  }
+
+  private Socket connect() throws IOException {
+    Socket socket = new Socket();
+    socket.setTcpNoDelay(true);
+    socket.setKeepAlive(true);
+    socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+    return socket;
+  }
+
+  /**
+   * State tied to a single socket so a reconnect never mixes responses between
+   * two connections.
+   */
+  private final class Session {
+    private final Socket socket;
+    private final OutputStream out;
+    private final InputStream in;
+    private final Deque<PendingRequest> inFlight = new ArrayDeque<>();
+    private volatile boolean alive = true;
+
+    Session(Socket socket) throws IOException {
+      this.socket = socket;
+      this.out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+      this.in = new BufferedInputStream(socket.getInputStream(), 8192);
+      Thread reader = new Thread(this::readLoop, writer.getName().replace("-writer", "-reader"));
+      reader.setDaemon(true);
+      reader.start();
+    }
+
+    void send(PendingRequest request) {
+      synchronized (inFlight) {
+        if (!alive) {
+          permits.release();
+          queue.offerFirst(request);
+          return;
+        }
+        // Register before writing so the reader can never see a response it cannot match.
+        inFlight.addLast(request);
+      }
+      try {
+        out.write(request.head);
+      } catch (IOException ex) {
+        fail(ex);
+      }
+    }
+
+    void flush() {
+      if (!alive) {
+        return;
+      }
+      try {
+        out.flush();
+      } catch (IOException ex) {
+        fail(ex);
+      }
+    }
+
+    private void readLoop() {
+      try {
+        while (alive) {
+          RelayResponse response = readResponse(in);
+          PendingRequest request;
+          synchronized (inFlight) {
+            request = inFlight.pollFirst();
+          }
+          if (request == null) {
+            throw new IOException("Unsolicited response from server");
+          }
+          permits.release();
+          request.future.complete(response);
+          if ("close".equalsIgnoreCase(response.header("Connection"))) {
+            retireAfterClose();
+            return;
+          }
+        }
+      } catch (IOException ex) {
+        fail(ex);
+      } catch (RuntimeException ex) {
+        fail(new IOException("Malformed response: " + ex, ex));
+      }
+    }
+
+    /**
+     * The server stops reading after a {@code Connection: close} response, so anything
+     * pipelined behind it was never processed and can safely go back on the queue.
+     */
+    private void retireAfterClose() {
+      List<PendingRequest> unanswered;
+      synchronized (inFlight) {
+        alive = false;
+        unanswered = new ArrayList<>(inFlight);
+        inFlight.clear();
+      }
+      for (int i = unanswered.size() - 1; i >= 0; i--) {
+        permits.release();
+        queue.offerFirst(unanswered.get(i));
+      }
+      closeSocket();
+    }
+
+    void fail(Throwable cause) {
+      List<PendingRequest> failed;
+      synchronized (inFlight) {
+        if (!alive && inFlight.isEmpty()) {
+          closeSocket();
+          return;
+        }
+        alive = false;
+        failed = new ArrayList<>(inFlight);
+        inFlight.clear();
+      }
+      for (PendingRequest request : failed) {
+        permits.release();
+        request.future.completeExceptionally(cause);
+      }
+      closeSocket();
+    }
+
+    private void closeSocket() {
+      try {
+        socket.close();
+      } catch (IOException ignore) {
+      }
+    }
+  }
+
+  static RelayResponse readResponse(InputStream in) throws IOException {
+    String statusLine = readLine(in);
+    while (statusLine.isEmpty()) {
+      statusLine = readLine(in);
+    }
+    String[] parts = statusLine.split(" ", 3);
+    if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+      throw new IOException("Malformed status line: " + statusLine);
+    }
+    int status;
+    try {
+      status = Integer.parseInt(parts[1]);
+    } catch (NumberFormatException ex) {
+      throw new IOException("Malformed status line: " + statusLine);
+    }
+
+    Map<String, List<String>> headers = new LinkedHashMap<>();
+    for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+      int colon = line.indexOf(':');
+      if (colon <= 0) {
+        continue;
+      }
+      String name = line.substring(0, colon).trim().toLowerCase();
+      String value = line.substring(colon + 1).trim();
+      headers.computeIfAbsent(name, key -> new ArrayList<>(1)).add(value);
+    }
+
+    byte[] body;
+    String transferEncoding = first(headers, "transfer-encoding");
+    String contentLength = first(headers, "content-length");
+    if (status / 100 == 1 || status == 204 || status == 304) {
+      body = new byte[0];
+    } else if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+      body = readChunked(in);
+    } else if (contentLength != null) {
+      body = readFully(in, Integer.parseInt(contentLength.trim()));
+    } else {
+      body = readToEnd(in);
+      headers.put("connection", Collections.singletonList("close"));
+    }
+    return new RelayResponse(status, headers, body);
+  }
+
+  private static byte[] readChunked(InputStream in) throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    while (true) {
+      String sizeLine = readLine(in);
+      int extension = sizeLine.indexOf(';');
+      if (extension >= 0) {
+        sizeLine = sizeLine.substring(0, extension);
+      }
+      int size = Integer.parseInt(sizeLine.trim(), 16);
+      if (size == 0) {
+        // Skip trailers up to the terminating blank line.
+        while (!readLine(in).isEmpty()) {
+          // discard
+        }
+        return buffer.toByteArray();
+      }
+      buffer.write(readFully(in, size));
+      readLine(in);
+    }
+  }
+
+  private static byte[] readFully(InputStream in, int length) throws IOException {
+    byte[] data = new byte[length];
+    int offset = 0;
+    while (offset < length) {
+      int read = in.read(data, offset, length - offset);
+      if (read < 0) {
+        throw new EOFException("Connection closed after " + offset + " of " + length + " bytes");
+      }
+      offset += read;
+    }
+    return data;
+  }
+
+  private static byte[] readToEnd(InputStream in) throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    byte[] scratch = new byte[4096];
+    int read;
+    while ((read = in.read(scratch)) != -1) {
+      buffer.write(scratch, 0, read);
+    }
+    return buffer.toByteArray();
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    StringBuilder line = new StringBuilder(64);
+    while (true) {
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException("Connection closed by server");
+      }
+      if (b == '\n') {
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r') {
+          line.setLength(length - 1);
+        }
+        return line.toString();
+      }
+      line.append((char) b);
+    }
+  }
+
+  private static String first(Map<String, List<String>> headers, String name) {
+    List<String> values = headers.get(name);
+    return values == null || values.isEmpty() ? null : values.get(0);
+  }
+
+  static byte[] requestHead(String host, int port, String pathAndQuery) {
+    String head = "GET " + pathAndQuery + " HTTP/1.1\r\n"
+        + "Host: " + host + ":" + port + "\r\n"
+        + "Connection: keep-alive\r\n"
+        + "Accept: */*\r\n"
+        + "\r\n";
+    return head.getBytes(StandardCharsets.ISO_8859_1);
+  }
+}
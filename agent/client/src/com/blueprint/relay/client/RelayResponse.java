@@ -0,0 +1,50 @@
+package com.blueprint.relay.client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fully buffered response from the local relay server.
+ */
+public final class RelayResponse {
+  private final int status;
+  private final Map<String, List<String>> headers;
+  private final byte[] body;
+
+  RelayResponse(int status, Map<String, List<String>> headers, byte[] body) {
+    this.status = status;
+    this.headers = Collections.unmodifiableMap(headers);
+    this.body = body;
+  }
+
+  public int status() {
+    return status;
+  }
+
+  /**
+   * Header names are stored lower-cased; lookups are case-insensitive.
+   */
+  public String header(String name) {
+    List<String> values = headers.get(name.toLowerCase());
+    return values == null || values.isEmpty() ? null : values.get(0);
+  }
+
+  public Map<String, List<String>> headers() {
+    return headers;
+  }
+
+  public byte[] body() {
+    return body.clone();
+  }
+
+  public String bodyAsString() {
+    return new String(body, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public String toString() {
+    return "RelayResponse{status=" + status + ", bytes=" + body.length + "}";
+  }
+}
@@ -0,0 +1,42 @@
+#!/bin/bash
+set -euo pipefail
+
+# Usage: run.sh [--no-agent] [-Dharness.key=value ...]
+# Runs the stand-in OMS client under the relay agent (or without it, for a baseline)
+# and prints per-stream throughput/latency plus process CPU and GC.
+
+BASE_DIR="$(cd "$(dirname "$0")" && pwd)"
+AGENT_DIR="$BASE_DIR/.."
+DEFAULT_JDK="$BASE_DIR/../../jdk8u462-b08/Contents/Home"
+JDK_HOME="${JAVA_HOME:-$DEFAULT_JDK}"
+JAVA_BIN="$JDK_HOME/bin/java"
+
+HARNESS_JAR="$BASE_DIR/build/oms-harness.jar"
+AGENT_JAR="$AGENT_DIR/build/blueprint-relay-agent.jar"
+
+USE_AGENT=1
+JVM_ARGS=()
+for arg in "$@"; do
+  case "$arg" in
+    --no-agent) USE_AGENT=0 ;;
+    *) JVM_ARGS+=("$arg") ;;
+  esac
+done
+
+[[ -f "$HARNESS_JAR" ]] || "$BASE_DIR/build.sh"
+
+if [[ "$USE_AGENT" -eq 1 ]]; then
+  [[ -f "$AGENT_JAR" ]] || "$AGENT_DIR/build.sh"
+  JVM_ARGS=(
+    "-javaagent:$AGENT_JAR"
+    "-Doms.username=${OMS_USERNAME:-harness}"
+    "-Doms.password=${OMS_PASSWORD:-harness}"
+    "-Dblueprint.relay.log=$BASE_DIR/build/relay-harness.log"
+    "${JVM_ARGS[@]+"${JVM_ARGS[@]}"}"
+  )
+else
+  # Nothing listens on the report port without the agent.
+  JVM_ARGS=("-Dharness.httpRate=0" "${JVM_ARGS[@]+"${JVM_ARGS[@]}"}")
+fi
+
+exec "$JAVA_BIN" "${JVM_ARGS[@]}" -jar "$HARNESS_JAR"
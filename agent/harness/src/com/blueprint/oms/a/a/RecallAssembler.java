@@ -0,0 +1,49 @@
+package com.blueprint.oms.a.a;
+
+import com.blueprint.oms.common.client.ClientRecallInformation;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Business-layer class in the package the agent's package logger instruments. Mixes
+ * trivial hot getters with heavier methods, like the real obfuscated layer.
+ */
+public class RecallAssembler {
+  private final int pageSize;
+  private long assembled;
+
+  public RecallAssembler(int pageSize) {
+    this.pageSize = pageSize;
+  }
+
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  public long getAssembled() {
+    return assembled;
+  }
+
+  public List<ClientRecallInformation> assemble(int locationId, int rows) {
+    List<ClientRecallInformation> result = new ArrayList<>(rows);
+    for (int i = 0; i < rows; i++) {
+      result.add(new ClientRecallInformation(locationId * 10_000L + i, locationId));
+      if (isPageBoundary(i)) {
+        assembled += getPageSize();
+      }
+    }
+    return result;
+  }
+
+  boolean isPageBoundary(int index) {
+    return index > 0 && index % pageSize == 0;
+  }
+
+  public String renderSummary(String reportName, List<ClientRecallInformation> rows) {
+    StringBuilder builder = new StringBuilder(reportName).append(':');
+    for (ClientRecallInformation row : rows) {
+      builder.append(row.getRecallId()).append(',');
+    }
+    return builder.toString();
+  }
+}
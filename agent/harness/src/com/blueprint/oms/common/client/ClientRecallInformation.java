@@ -0,0 +1,63 @@
+package com.blueprint.oms.common.client;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Recall row with the simple getters RecallFormatter walks on every element.
+ */
+public class ClientRecallInformation implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final long recallId;
+  private final long patientId;
+  private final int locationId;
+  private final String patientName;
+  private final String recallType;
+  private final String status;
+  private final Date dueDate;
+  private final boolean active;
+
+  public ClientRecallInformation(long recallId, int locationId) {
+    this.recallId = recallId;
+    this.patientId = 100000L + recallId;
+    this.locationId = locationId;
+    this.patientName = "Patient " + recallId;
+    this.recallType = recallId % 2 == 0 ? "ANNUAL" : "FOLLOW_UP";
+    this.status = "OPEN";
+    this.dueDate = new Date(1_700_000_000_000L + recallId * 86_400_000L);
+    this.active = recallId % 5 != 0;
+  }
+
+  public long getRecallId() {
+    return recallId;
+  }
+
+  public long getPatientId() {
+    return patientId;
+  }
+
+  public int getLocationId() {
+    return locationId;
+  }
+
+  public String getPatientName() {
+    return patientName;
+  }
+
+  public String getRecallType() {
+    return recallType;
+  }
+
+  public String getStatus() {
+    return status;
+  }
+
+  public Date getDueDate() {
+    return dueDate;
+  }
+
+  public boolean isActive() {
+    return active;
+  }
+}
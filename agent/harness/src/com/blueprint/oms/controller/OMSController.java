@@ -0,0 +1,14 @@
+package com.blueprint.oms.controller;
+
+import java.util.Map;
+
+/**
+ * Controller bean the agent proxies and LocalReportServer drives.
+ */
+public interface OMSController {
+  String runReport(String reportName);
+
+  String handleReportRequest(Map<String, Object> params);
+
+  boolean isConnected();
+}
@@ -0,0 +1,38 @@
+package com.blueprint.oms.controller;
+
+import com.blueprint.oms.a.a.RecallAssembler;
+import com.blueprint.oms.service.OMSService;
+import java.util.Map;
+
+public class OMSControllerImpl implements OMSController {
+  private final OMSService service;
+  private final RecallAssembler assembler = new RecallAssembler(50);
+
+  public OMSControllerImpl(OMSService service) {
+    this.service = service;
+  }
+
+  @Override
+  public String runReport(String reportName) {
+    return assembler.renderSummary(reportName, service.getRecallList(0));
+  }
+
+  @Override
+  public String handleReportRequest(Map<String, Object> params) {
+    Object location = params.get("location");
+    int locationId = 0;
+    if (location != null) {
+      try {
+        locationId = Integer.parseInt(String.valueOf(location));
+      } catch (NumberFormatException ignored) {
+        // default location
+      }
+    }
+    return assembler.renderSummary(String.valueOf(params.get("reportName")), service.getRecallList(locationId));
+  }
+
+  @Override
+  public boolean isConnected() {
+    return true;
+  }
+}
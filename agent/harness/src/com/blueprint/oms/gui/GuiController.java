@@ -0,0 +1,53 @@
+package com.blueprint.oms.gui;
+
+import com.blueprint.oms.common.client.ClientRecallInformation;
+import com.blueprint.oms.controller.OMSController;
+import com.blueprint.oms.service.OMSService;
+import java.util.List;
+
+/**
+ * GUI-facing bean. The agent swaps {@link #omsService} for its proxy, so every screen
+ * call below goes through it.
+ */
+public class GuiController {
+  private OMSService omsService;
+  private OMSController omsController;
+
+  public GuiController(OMSService omsService) {
+    this.omsService = omsService;
+  }
+
+  public void setOmsController(OMSController omsController) {
+    this.omsController = omsController;
+  }
+
+  public OMSService getOmsService() {
+    return omsService;
+  }
+
+  public OMSController getOmsController() {
+    return omsController;
+  }
+
+  public List<String> openLocationScreen() {
+    return omsService.getLocations();
+  }
+
+  public List<String> openUserPicker(int locationId) {
+    omsService.getLocationName(locationId);
+    return omsService.getUsers(locationId);
+  }
+
+  public int openRecallScreen(int locationId) {
+    List<ClientRecallInformation> recalls = omsService.getRecallList(locationId);
+    return recalls.size();
+  }
+
+  public void editRecall(ClientRecallInformation recall) {
+    omsService.saveRecall(recall);
+  }
+
+  public String requestReport(String reportName) {
+    return omsController.runReport(reportName);
+  }
+}
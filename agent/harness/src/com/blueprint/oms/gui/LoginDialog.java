@@ -0,0 +1,67 @@
+package com.blueprint.oms.gui;
+
+import java.awt.GridLayout;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPasswordField;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.WindowConstants;
+
+/**
+ * Same component shape as the real login window (title, text field, password field,
+ * "Login" button), which is all AutoLoginService looks for.
+ */
+final class LoginDialog extends JDialog {
+  private static final long serialVersionUID = 1L;
+
+  private final CountDownLatch submitted = new CountDownLatch(1);
+
+  private LoginDialog() {
+    super((java.awt.Frame) null, "Login", false);
+    setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+    getContentPane().setLayout(new GridLayout(3, 2, 4, 4));
+    JTextField user = new JTextField(16);
+    JPasswordField password = new JPasswordField(16);
+    JButton login = new JButton("Login");
+    login.addActionListener(event -> {
+      System.out.println("[harness] Login submitted for '" + user.getText() + "'");
+      submitted.countDown();
+      dispose();
+    });
+    getContentPane().add(new JLabel("Username"));
+    getContentPane().add(user);
+    getContentPane().add(new JLabel("Password"));
+    getContentPane().add(password);
+    getContentPane().add(new JLabel());
+    getContentPane().add(login);
+    pack();
+    setLocationRelativeTo(null);
+  }
+
+  /**
+   * Shows the dialog and waits for the Login button; returns the wait in milliseconds,
+   * or -1 if nobody logged in before the timeout.
+   */
+  static long showAndWait(long timeoutMillis) throws InterruptedException {
+    LoginDialog[] holder = new LoginDialog[1];
+    try {
+      SwingUtilities.invokeAndWait(() -> {
+        holder[0] = new LoginDialog();
+        holder[0].setVisible(true);
+      });
+    } catch (InvocationTargetException ex) {
+      throw new IllegalStateException("Could not show login dialog", ex.getCause());
+    }
+    long start = System.nanoTime();
+    if (!holder[0].submitted.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+      SwingUtilities.invokeLater(holder[0]::dispose);
+      return -1L;
+    }
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+  }
+}
@@ -0,0 +1,62 @@
+package com.blueprint.oms.gui;
+
+import com.blueprint.oms.harness.AgentReadiness;
+import com.blueprint.oms.harness.HarnessBootstrap;
+import com.blueprint.oms.harness.HarnessConfig;
+import com.blueprint.oms.harness.HarnessContext;
+import com.blueprint.oms.harness.LoadGenerator;
+import com.blueprint.oms.harness.ProcessStats;
+import java.awt.GraphicsEnvironment;
+import java.awt.Window;
+import javax.swing.SwingUtilities;
+
+/**
+ * Entry point of the stand-in OMS client. Same class name and static context accessor
+ * as the real client, so the agent's class-load trigger and ContextWatcher attach to it
+ * unchanged.
+ */
+public final class OMSClient {
+  private static volatile HarnessContext context;
+
+  private OMSClient() {
+  }
+
+  public static Object l() {
+    return context;
+  }
+
+  public static void main(String[] args) throws Exception {
+    HarnessConfig config = new HarnessConfig();
+    boolean agent = AgentReadiness.agentAttached();
+    System.out.println("[harness] " + config + " agent=" + agent);
+
+    HarnessContext built = HarnessBootstrap.build(config);
+    context = built;
+    // The real client publishes the context and then spends a while refreshing it.
+    Thread.sleep(config.startupDelayMillis);
+    built.refresh();
+    long refreshedNanos = System.nanoTime();
+
+    if (config.showLogin) {
+      long waited = LoginDialog.showAndWait(Long.getLong("harness.loginTimeoutMs", 60_000L));
+      System.out.println(waited < 0 ? "[harness] Login timed out, continuing" : "[harness] Login after " + waited + " ms");
+    }
+    if (agent) {
+      AgentReadiness.await(built, refreshedNanos, Long.getLong("harness.readyTimeoutMs", 30_000L));
+    }
+
+    ProcessStats before = ProcessStats.sample();
+    new LoadGenerator(config, built).run();
+    ProcessStats.sample().printDelta(before);
+
+    // No System.exit: the agent blocks it. Disposing the windows lets AWT shut down so
+    // the JVM exits once main returns.
+    if (!GraphicsEnvironment.isHeadless()) {
+      SwingUtilities.invokeAndWait(() -> {
+        for (Window window : Window.getWindows()) {
+          window.dispose();
+        }
+      });
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package com.blueprint.oms.harness;
+
+import com.blueprint.oms.controller.OMSControllerImpl;
+import com.blueprint.oms.gui.GuiController;
+import com.blueprint.oms.service.OMSServiceImpl;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long the agent takes to finish its install pass by watching for the
+ * original beans to be replaced by proxies.
+ */
+public final class AgentReadiness {
+  private AgentReadiness() {
+  }
+
+  public static boolean agentAttached() {
+    for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+      if (argument.startsWith("-javaagent:")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Blocks until the controller, service field and JMS listener have all been swapped,
+   * or the timeout passes, and prints when each happened.
+   */
+  public static void await(HarnessContext context, long refreshedNanos, long timeoutMillis) {
+    ListenerContainer container = (ListenerContainer) context.getBean("reportStatusContainer");
+    Object originalListener = container.getMessageListener();
+    long controllerAt = 0L;
+    long serviceAt = 0L;
+    long listenerAt = 0L;
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    while (System.nanoTime() < deadline && (controllerAt == 0L || serviceAt == 0L || listenerAt == 0L)) {
+      long now = System.nanoTime();
+      if (controllerAt == 0L && !(context.getBean("omsController") instanceof OMSControllerImpl)) {
+        controllerAt = now;
+      }
+      GuiController gui = (GuiController) context.getBean("guiController");
+      if (serviceAt == 0L && !(gui.getOmsService() instanceof OMSServiceImpl)) {
+        serviceAt = now;
+      }
+      if (listenerAt == 0L && container.getMessageListener() != originalListener) {
+        listenerAt = now;
+      }
+      try {
+        Thread.sleep(2L);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+    long sinceJvmStart = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime()
+        - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - Math.max(controllerAt, Math.max(serviceAt, listenerAt)));
+    System.out.printf("[harness] Agent ready: controller=%s service=%s jms=%s after refresh (all ready %d ms after JVM start)%n",
+        elapsed(refreshedNanos, controllerAt), elapsed(refreshedNanos, serviceAt), elapsed(refreshedNanos, listenerAt),
+        sinceJvmStart);
+  }
+
+  private static String elapsed(long from, long at) {
+    return at == 0L ? "timeout" : TimeUnit.NANOSECONDS.toMillis(at - from) + "ms";
+  }
+}
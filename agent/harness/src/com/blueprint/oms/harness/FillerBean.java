@@ -0,0 +1,29 @@
+package com.blueprint.oms.harness;
+
+import com.blueprint.oms.controller.OMSController;
+
+/**
+ * Padding bean. Each one accepts the controller through a setter, so the agent's
+ * consumer-injection pass has to visit and update all of them.
+ */
+public class FillerBean {
+  private final int index;
+  private OMSController omsController;
+
+  public FillerBean(int index) {
+    this.index = index;
+  }
+
+  public void setOmsController(OMSController omsController) {
+    this.omsController = omsController;
+  }
+
+  public OMSController getOmsController() {
+    return omsController;
+  }
+
+  @Override
+  public String toString() {
+    return "FillerBean#" + index;
+  }
+}
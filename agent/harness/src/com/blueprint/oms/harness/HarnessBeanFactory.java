@@ -0,0 +1,20 @@
+package com.blueprint.oms.harness;
+
+/**
+ * The two singleton-registry calls the agent makes when it swaps a bean for a proxy.
+ */
+public class HarnessBeanFactory {
+  private final HarnessContext context;
+
+  HarnessBeanFactory(HarnessContext context) {
+    this.context = context;
+  }
+
+  public void destroySingleton(String name) {
+    context.remove(name);
+  }
+
+  public void registerSingleton(String name, Object bean) {
+    context.register(name, bean);
+  }
+}
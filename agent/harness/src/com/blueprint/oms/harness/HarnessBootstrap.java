@@ -0,0 +1,42 @@
+package com.blueprint.oms.harness;
+
+import com.blueprint.oms.controller.OMSController;
+import com.blueprint.oms.controller.OMSControllerImpl;
+import com.blueprint.oms.gui.GuiController;
+import com.blueprint.oms.service.OMSService;
+import com.blueprint.oms.service.OMSServiceImpl;
+
+/**
+ * Wires the stand-in bean graph in the shape the agent expects to find: an
+ * omsController singleton with setter consumers, a guiController holding an OMSService
+ * field, a JMS container with get/setMessageListener, and a bean keeping a listener
+ * in a plain field.
+ */
+public final class HarnessBootstrap {
+  private HarnessBootstrap() {
+  }
+
+  public static HarnessContext build(HarnessConfig config) {
+    HarnessContext context = new HarnessContext();
+    OMSService service = new OMSServiceImpl(config);
+    OMSController controller = new OMSControllerImpl(service);
+    GuiController gui = new GuiController(service);
+    gui.setOmsController(controller);
+
+    context.register("omsService", service);
+    context.register("omsController", controller);
+    context.register("guiController", gui);
+
+    ReportStatusListener listener = new ReportStatusListener();
+    context.register("reportStatusListener", listener);
+    context.register("reportStatusContainer", new ListenerContainer(listener));
+    context.register("notificationRouter", new NotificationRouter(new ReportStatusListener()));
+
+    for (int i = 0; i < config.fillerBeans; i++) {
+      FillerBean filler = new FillerBean(i);
+      filler.setOmsController(controller);
+      context.register("fillerBean" + i, filler);
+    }
+    return context;
+  }
+}
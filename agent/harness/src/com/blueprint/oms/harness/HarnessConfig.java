@@ -0,0 +1,42 @@
+package com.blueprint.oms.harness;
+
+import java.awt.GraphicsEnvironment;
+
+/**
+ * Load shape for the stand-in OMS, read from {@code -Dharness.*} system properties.
+ * Rates are calls per second per stream; 0 disables the stream.
+ */
+public final class HarnessConfig {
+  public final int fillerBeans = Integer.getInteger("harness.beans", 200);
+  public final int locations = Integer.getInteger("harness.locations", 12);
+  public final int recallRows = Integer.getInteger("harness.recallRows", 200);
+  public final int backendMicros = Integer.getInteger("harness.backendMicros", 200);
+  public final int serviceRate = Integer.getInteger("harness.serviceRate", 200);
+  public final int controllerRate = Integer.getInteger("harness.controllerRate", 5);
+  public final int jmsRate = Integer.getInteger("harness.jmsRate", 50);
+  public final int httpRate = Integer.getInteger("harness.httpRate", 2);
+  public final int httpPort = Integer.getInteger("harness.httpPort", 7777);
+  public final int threadsPerStream = Integer.getInteger("harness.threads", 2);
+  public final int jmsTextBytes = Integer.getInteger("harness.jmsTextBytes", 2048);
+  public final int durationSeconds = Integer.getInteger("harness.duration", 30);
+  public final int warmupSeconds = Integer.getInteger("harness.warmup", 5);
+  public final int startupDelayMillis = Integer.getInteger("harness.startupDelayMs", 1000);
+  public final boolean showLogin = Boolean.parseBoolean(
+      System.getProperty("harness.login", String.valueOf(!GraphicsEnvironment.isHeadless())));
+
+  @Override
+  public String toString() {
+    return "beans=" + fillerBeans
+        + " locations=" + locations
+        + " recallRows=" + recallRows
+        + " backendMicros=" + backendMicros
+        + " serviceRate=" + serviceRate
+        + " controllerRate=" + controllerRate
+        + " jmsRate=" + jmsRate
+        + " httpRate=" + httpRate
+        + " threads=" + threadsPerStream
+        + " duration=" + durationSeconds + "s"
+        + " warmup=" + warmupSeconds + "s"
+        + " login=" + showLogin;
+  }
+}
@@ -0,0 +1,63 @@
+package com.blueprint.oms.harness;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Stand-in for Spring's GenericApplicationContext. It exposes exactly the reflective
+ * surface the agent uses (getBean, getBeanDefinitionNames, getBeanFactory, isActive),
+ * so the agent's installers run unmodified without Spring on the classpath.
+ */
+public class HarnessContext {
+  private final Map<String, Object> singletons = new LinkedHashMap<>();
+  private final HarnessBeanFactory beanFactory = new HarnessBeanFactory(this);
+  private volatile boolean active;
+
+  public Object getBean(String name) {
+    Object bean;
+    synchronized (singletons) {
+      bean = singletons.get(name);
+    }
+    if (bean == null) {
+      throw new IllegalStateException("No bean named '" + name + "' available");
+    }
+    return bean;
+  }
+
+  public String[] getBeanDefinitionNames() {
+    synchronized (singletons) {
+      return singletons.keySet().toArray(new String[0]);
+    }
+  }
+
+  public HarnessBeanFactory getBeanFactory() {
+    if (!active) {
+      throw new IllegalStateException("BeanFactory not initialized or already closed");
+    }
+    return beanFactory;
+  }
+
+  public boolean isActive() {
+    return active;
+  }
+
+  void register(String name, Object bean) {
+    synchronized (singletons) {
+      singletons.put(name, bean);
+    }
+  }
+
+  void remove(String name) {
+    synchronized (singletons) {
+      singletons.remove(name);
+    }
+  }
+
+  /**
+   * Marks the context refreshed. The real client publishes its context before refresh
+   * finishes, so the agent must cope with seeing it inactive first.
+   */
+  public void refresh() {
+    active = true;
+  }
+}
@@ -0,0 +1,85 @@
+package com.blueprint.oms.harness;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear latency histogram in microseconds: exact below 64us, then 32
+ * sub-buckets per power of two (about 3% relative error).
+ */
+final class LatencyRecorder {
+  private static final int LINEAR = 64;
+  private static final int SUB_BUCKETS = 32;
+  private static final int BUCKETS = LINEAR + 58 * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder total = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder sumMicros = new LongAdder();
+
+  void record(long micros, boolean failed) {
+    long value = Math.max(0L, micros);
+    counts.incrementAndGet(index(value));
+    total.increment();
+    sumMicros.add(value);
+    if (failed) {
+      errors.increment();
+    }
+  }
+
+  long count() {
+    return total.sum();
+  }
+
+  long errors() {
+    return errors.sum();
+  }
+
+  double meanMicros() {
+    long count = total.sum();
+    return count == 0 ? 0.0 : (double) sumMicros.sum() / count;
+  }
+
+  long percentileMicros(double percentile) {
+    long count = total.sum();
+    if (count == 0) {
+      return 0L;
+    }
+    long rank = Math.max(1L, (long) Math.ceil(count * percentile / 100.0));
+    long seen = 0L;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return upperBound(i);
+      }
+    }
+    return upperBound(BUCKETS - 1);
+  }
+
+  String summary(double seconds) {
+    return String.format(Locale.ROOT, "%8d %9.1f %6d %9.1f %9d %9d %9d %9d",
+        count(), seconds > 0 ? count() / seconds : 0.0, errors(), meanMicros(),
+        percentileMicros(50), percentileMicros(99), percentileMicros(99.9), percentileMicros(100));
+  }
+
+  private static int index(long value) {
+    if (value < LINEAR) {
+      return (int) value;
+    }
+    int msb = 63 - Long.numberOfLeadingZeros(value);
+    int shift = msb - 5;
+    int index = LINEAR + (msb - 6) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    return Math.min(index, BUCKETS - 1);
+  }
+
+  private static long upperBound(int index) {
+    if (index < LINEAR) {
+      return index;
+    }
+    int offset = index - LINEAR;
+    int shift = offset / SUB_BUCKETS + 1;
+    long sub = offset % SUB_BUCKETS + SUB_BUCKETS;
+    return ((sub + 1) << shift) - 1;
+  }
+}
@@ -0,0 +1,28 @@
+package com.blueprint.oms.harness;
+
+import javax.jms.Message;
+import javax.jms.MessageListener;
+
+/**
+ * Mimics a JMS listener container: holds its listener behind a setter/getter pair and
+ * dispatches through whatever is currently installed.
+ */
+public class ListenerContainer {
+  private MessageListener messageListener;
+
+  public ListenerContainer(MessageListener messageListener) {
+    this.messageListener = messageListener;
+  }
+
+  public MessageListener getMessageListener() {
+    return messageListener;
+  }
+
+  public void setMessageListener(MessageListener messageListener) {
+    this.messageListener = messageListener;
+  }
+
+  public void dispatch(Message message) {
+    messageListener.onMessage(message);
+  }
+}
@@ -0,0 +1,177 @@
+package com.blueprint.oms.harness;
+
+import com.blueprint.oms.common.client.ClientRecallInformation;
+import com.blueprint.oms.controller.OMSController;
+import com.blueprint.oms.gui.GuiController;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the stand-in OMS at fixed per-stream rates through the same entry points the
+ * agent intercepts: GUI screens (OMSService field), the controller bean, JMS dispatch
+ * through the container's current listener, and the agent's local report server.
+ *
+ * Latency is measured from each call's scheduled start, not its actual start, so a
+ * stall that delays later calls shows up in the percentiles instead of being hidden.
+ */
+public final class LoadGenerator {
+  private final HarnessConfig config;
+  private final HarnessContext context;
+  private final Map<String, LatencyRecorder> recorders = new LinkedHashMap<>();
+  private final List<Thread> threads = new ArrayList<>();
+  private final AtomicLong jmsSequence = new AtomicLong();
+  private final String jmsText;
+  private volatile boolean running;
+  private volatile boolean measuring;
+
+  public LoadGenerator(HarnessConfig config, HarnessContext context) {
+    this.config = config;
+    this.context = context;
+    StringBuilder text = new StringBuilder(config.jmsTextBytes);
+    while (text.length() < config.jmsTextBytes) {
+      text.append("{\"status\":\"COMPLETE\",\"rows\":128}");
+    }
+    this.jmsText = text.substring(0, config.jmsTextBytes);
+  }
+
+  /**
+   * Runs warmup then the measured window, blocking the caller for both.
+   */
+  public void run() throws InterruptedException {
+    running = true;
+    startStream("service", config.serviceRate, this::serviceCall);
+    startStream("controller", config.controllerRate, this::controllerCall);
+    startStream("jms", config.jmsRate, this::jmsCall);
+    startStream("http", config.httpRate, this::httpCall);
+    if (threads.isEmpty()) {
+      System.out.println("[harness] All stream rates are 0, nothing to run");
+      return;
+    }
+
+    TimeUnit.SECONDS.sleep(config.warmupSeconds);
+    measuring = true;
+    long start = System.nanoTime();
+    TimeUnit.SECONDS.sleep(config.durationSeconds);
+    measuring = false;
+    double seconds = (System.nanoTime() - start) / 1e9;
+    running = false;
+    for (Thread thread : threads) {
+      thread.join(5_000L);
+    }
+    printSummary(seconds);
+  }
+
+  private void startStream(String name, int rate, Runnable call) {
+    if (rate <= 0) {
+      return;
+    }
+    LatencyRecorder recorder = new LatencyRecorder();
+    recorders.put(name, recorder);
+    int threadCount = Math.max(1, Math.min(config.threadsPerStream, rate));
+    long intervalNanos = TimeUnit.SECONDS.toNanos(threadCount) / rate;
+    for (int i = 0; i < threadCount; i++) {
+      long offset = intervalNanos * i / threadCount;
+      Thread thread = new Thread(() -> pace(call, recorder, intervalNanos, offset), "Harness-" + name + "-" + (i + 1));
+      thread.setDaemon(true);
+      threads.add(thread);
+      thread.start();
+    }
+  }
+
+  private void pace(Runnable call, LatencyRecorder recorder, long intervalNanos, long offsetNanos) {
+    long next = System.nanoTime() + offsetNanos;
+    while (running) {
+      long now = System.nanoTime();
+      if (now < next) {
+        LockSupport.parkNanos(next - now);
+        continue;
+      }
+      boolean failed = false;
+      try {
+        call.run();
+      } catch (RuntimeException ex) {
+        failed = true;
+      }
+      if (measuring) {
+        recorder.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - next), failed);
+      }
+      next += intervalNanos;
+    }
+  }
+
+  private void serviceCall() {
+    GuiController gui = (GuiController) context.getBean("guiController");
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int location = random.nextInt(Math.max(1, config.locations));
+    int pick = random.nextInt(100);
+    if (pick < 40) {
+      gui.openLocationScreen();
+    } else if (pick < 75) {
+      gui.openUserPicker(location);
+    } else if (pick < 98) {
+      gui.openRecallScreen(location);
+    } else {
+      gui.editRecall(new ClientRecallInformation(random.nextLong(1_000_000L), location));
+    }
+  }
+
+  private void controllerCall() {
+    OMSController controller = (OMSController) context.getBean("omsController");
+    controller.runReport("Harness Recall Summary");
+  }
+
+  private void jmsCall() {
+    long sequence = jmsSequence.incrementAndGet();
+    SyntheticTextMessage message = new SyntheticTextMessage(sequence, jmsText);
+    if (sequence % 4 == 0) {
+      ((NotificationRouter) context.getBean("notificationRouter")).route(message);
+    } else {
+      ((ListenerContainer) context.getBean("reportStatusContainer")).dispatch(message);
+    }
+  }
+
+  private void httpCall() {
+    int location = ThreadLocalRandom.current().nextInt(Math.max(1, config.locations));
+    HttpURLConnection connection = null;
+    try {
+      URL url = new URL("http://127.0.0.1:" + config.httpPort
+          + "/report?name=Harness+Summary&reportName=Harness+Summary&location=" + location);
+      connection = (HttpURLConnection) url.openConnection();
+      connection.setConnectTimeout(2_000);
+      connection.setReadTimeout(30_000);
+      int status = connection.getResponseCode();
+      InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+      if (body != null) {
+        byte[] buffer = new byte[8192];
+        while (body.read(buffer) >= 0) {
+          // drain so the keep-alive connection can be reused
+        }
+        body.close();
+      }
+      if (status != 200) {
+        throw new IllegalStateException("HTTP " + status);
+      }
+    } catch (IOException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  private void printSummary(double seconds) {
+    System.out.printf("[harness] Measured %.1fs%n", seconds);
+    System.out.printf("[harness] %-10s %8s %9s %6s %9s %9s %9s %9s %9s%n",
+        "stream", "calls", "calls/s", "errors", "mean(us)", "p50(us)", "p99(us)", "p999(us)", "max(us)");
+    for (Map.Entry<String, LatencyRecorder> entry : recorders.entrySet()) {
+      System.out.printf("[harness] %-10s %s%n", entry.getKey(), entry.getValue().summary(seconds));
+    }
+  }
+}
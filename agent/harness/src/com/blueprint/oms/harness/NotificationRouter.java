@@ -0,0 +1,20 @@
+package com.blueprint.oms.harness;
+
+import javax.jms.Message;
+import javax.jms.MessageListener;
+
+/**
+ * Bean that keeps a listener in a plain field, the case MessageListenerFieldInstaller
+ * handles.
+ */
+public class NotificationRouter {
+  private MessageListener fallbackListener;
+
+  public NotificationRouter(MessageListener fallbackListener) {
+    this.fallbackListener = fallbackListener;
+  }
+
+  public void route(Message message) {
+    fallbackListener.onMessage(message);
+  }
+}
@@ -0,0 +1,47 @@
+package com.blueprint.oms.harness;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+
+/**
+ * Whole-process cost counters, sampled before and after the measured run so agent and
+ * no-agent runs can be compared on CPU and GC as well as latency.
+ */
+public final class ProcessStats {
+  final long cpuNanos;
+  final long gcCount;
+  final long gcMillis;
+  final long wallNanos;
+
+  private ProcessStats() {
+    OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    cpuNanos = os instanceof com.sun.management.OperatingSystemMXBean
+        ? ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime()
+        : -1L;
+    long count = 0L;
+    long millis = 0L;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(0L, gc.getCollectionCount());
+      millis += Math.max(0L, gc.getCollectionTime());
+    }
+    gcCount = count;
+    gcMillis = millis;
+    wallNanos = System.nanoTime();
+  }
+
+  public static ProcessStats sample() {
+    return new ProcessStats();
+  }
+
+  public void printDelta(ProcessStats before) {
+    double wallSeconds = (wallNanos - before.wallNanos) / 1e9;
+    String cpu = cpuNanos < 0 ? "n/a" : String.format("%.2fs (%.0f%% of one core)",
+        (cpuNanos - before.cpuNanos) / 1e9, 100.0 * (cpuNanos - before.cpuNanos) / (wallNanos - before.wallNanos));
+    Runtime runtime = Runtime.getRuntime();
+    System.out.printf("[harness] Process: wall=%.1fs cpu=%s gc=%d (%d ms) heapUsed=%dMB threads=%d%n",
+        wallSeconds, cpu, gcCount - before.gcCount, gcMillis - before.gcMillis,
+        (runtime.totalMemory() - runtime.freeMemory()) >> 20,
+        ManagementFactory.getThreadMXBean().getThreadCount());
+  }
+}
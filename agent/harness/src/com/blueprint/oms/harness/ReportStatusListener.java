@@ -0,0 +1,23 @@
+package com.blueprint.oms.harness;
+
+import java.util.concurrent.atomic.AtomicLong;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.TextMessage;
+
+public class ReportStatusListener implements MessageListener {
+  private final AtomicLong received = new AtomicLong();
+  private final AtomicLong bytes = new AtomicLong();
+
+  @Override
+  public void onMessage(Message message) {
+    received.incrementAndGet();
+    if (message instanceof TextMessage) {
+      bytes.addAndGet(((TextMessage) message).getText().length());
+    }
+  }
+
+  public long getReceived() {
+    return received.get();
+  }
+}
@@ -0,0 +1,35 @@
+package com.blueprint.oms.harness;
+
+import javax.jms.TextMessage;
+
+public class SyntheticTextMessage implements TextMessage {
+  private final String correlationId;
+  private final String messageId;
+  private final String text;
+
+  public SyntheticTextMessage(long sequence, String text) {
+    this.correlationId = "harness-" + (sequence / 4);
+    this.messageId = "ID:harness-" + sequence;
+    this.text = text;
+  }
+
+  @Override
+  public String getJMSCorrelationID() {
+    return correlationId;
+  }
+
+  @Override
+  public String getJMSMessageID() {
+    return messageId;
+  }
+
+  @Override
+  public String getJMSType() {
+    return "ReportStatus";
+  }
+
+  @Override
+  public String getText() {
+    return text;
+  }
+}
@@ -0,0 +1,22 @@
+package com.blueprint.oms.service;
+
+import com.blueprint.oms.common.client.ClientRecallInformation;
+import java.util.List;
+
+/**
+ * Read-heavy lookup surface the GUI layer calls repeatedly, plus a couple of
+ * mutating methods.
+ */
+public interface OMSService {
+  List<String> getLocations();
+
+  List<String> getUsers(int locationId);
+
+  List<ClientRecallInformation> getRecallList(int locationId);
+
+  String getLocationName(int locationId);
+
+  void saveRecall(ClientRecallInformation recall);
+
+  void updateLocation(int locationId, String name);
+}
@@ -0,0 +1,70 @@
+package com.blueprint.oms.service;
+
+import com.blueprint.oms.a.a.RecallAssembler;
+import com.blueprint.oms.common.client.ClientRecallInformation;
+import com.blueprint.oms.harness.HarnessConfig;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+public class OMSServiceImpl implements OMSService {
+  private final HarnessConfig config;
+  private final RecallAssembler assembler;
+  private final ConcurrentMap<Integer, String> locationNames = new ConcurrentHashMap<>();
+
+  public OMSServiceImpl(HarnessConfig config) {
+    this.config = config;
+    this.assembler = new RecallAssembler(25);
+    for (int i = 0; i < config.locations; i++) {
+      locationNames.put(i, "Clinic " + i);
+    }
+  }
+
+  @Override
+  public List<String> getLocations() {
+    backendLatency();
+    return new ArrayList<>(locationNames.values());
+  }
+
+  @Override
+  public List<String> getUsers(int locationId) {
+    backendLatency();
+    List<String> users = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      users.add("user" + locationId + "-" + i);
+    }
+    return users;
+  }
+
+  @Override
+  public List<ClientRecallInformation> getRecallList(int locationId) {
+    backendLatency();
+    return assembler.assemble(locationId, config.recallRows);
+  }
+
+  @Override
+  public String getLocationName(int locationId) {
+    backendLatency();
+    return locationNames.get(locationId);
+  }
+
+  @Override
+  public void saveRecall(ClientRecallInformation recall) {
+    backendLatency();
+  }
+
+  @Override
+  public void updateLocation(int locationId, String name) {
+    backendLatency();
+    locationNames.put(locationId, name);
+  }
+
+  private void backendLatency() {
+    if (config.backendMicros > 0) {
+      LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(config.backendMicros));
+    }
+  }
+}
@@ -0,0 +1,12 @@
+package javax.jms;
+
+/**
+ * Minimal JMS surface for the stand-in OMS; the agent matches on these names only.
+ */
+public interface Message {
+  String getJMSCorrelationID();
+
+  String getJMSMessageID();
+
+  String getJMSType();
+}
@@ -0,0 +1,125 @@
+package com.blueprint.relay;
+
+import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Adaptive mode for the package advice ({@code -Drelay.pkg.adaptive=true}). For the
+ * first {@code relay.pkg.discoverySec} seconds (default 30) the advice only counts
+ * calls and self time per method (a per-thread stack subtracts time spent in
+ * instrumented callees) and writes no log lines. Then methods that are both hot
+ * (at least {@code relay.pkg.hotCalls} calls, default 1000) and trivial (mean self
+ * time under {@code relay.pkg.trivialNanos}, default 1000) are added to the
+ * {@link PackageMethodFilter} deny list, the list is saved, and their classes are
+ * retransformed without the advice. Everything else is traced as usual from then on,
+ * and later runs start from the saved list.
+ */
+public final class AdaptiveInstrumentation {
+  private static final int MAX_DEPTH = 256;
+  private static final ThreadLocal<long[]> CHILD_NANOS = ThreadLocal.withInitial(() -> new long[MAX_DEPTH + 1]);
+  private static final ThreadLocal<int[]> DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+  private static volatile boolean discovering;
+
+  private AdaptiveInstrumentation() {
+  }
+
+  static boolean enabled() {
+    return "true".equalsIgnoreCase(System.getProperty("relay.pkg.adaptive"));
+  }
+
+  public static boolean discovering() {
+    return discovering;
+  }
+
+  public static void enter() {
+    int[] depth = DEPTH.get();
+    depth[0]++;
+    if (depth[0] <= MAX_DEPTH) {
+      CHILD_NANOS.get()[depth[0]] = 0L;
+    }
+  }
+
+  public static void exit(int methodId, long elapsedNanos) {
+    int[] depth = DEPTH.get();
+    if (depth[0] <= 0) {
+      return;
+    }
+    long[] childNanos = CHILD_NANOS.get();
+    long selfNanos = depth[0] <= MAX_DEPTH ? elapsedNanos - childNanos[depth[0]] : elapsedNanos;
+    depth[0]--;
+    if (depth[0] > 0 && depth[0] <= MAX_DEPTH) {
+      childNanos[depth[0]] += elapsedNanos;
+    }
+    MethodRegistry.entry(methodId).selfNanos.add(Math.max(0L, selfNanos));
+  }
+
+  /**
+   * Starts discovery; the advice must already be installed with {@code filter}.
+   */
+  static void start(Instrumentation instrumentation, PackageMethodFilter filter) {
+    discovering = true;
+    long discoveryMillis = Long.getLong("relay.pkg.discoverySec", 30L) * 1_000L;
+    Thread thread = new Thread(() -> {
+      try {
+        Thread.sleep(discoveryMillis);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      try {
+        narrow(instrumentation, filter);
+      } finally {
+        // Only now, so the methods being denied are not logged while they are retransformed.
+        discovering = false;
+      }
+    }, "BlueprintRelay-AdaptiveDiscovery");
+    thread.setDaemon(true);
+    thread.start();
+    Agent.log("Adaptive package tracing: discovering hot trivial methods for %ds", discoveryMillis / 1_000L);
+  }
+
+  private static void narrow(Instrumentation instrumentation, PackageMethodFilter filter) {
+    long hotCalls = Long.getLong("relay.pkg.hotCalls", 1_000L);
+    long trivialNanos = Long.getLong("relay.pkg.trivialNanos", 1_000L);
+    Set<String> types = new HashSet<>();
+    int denied = 0;
+    for (int id = 0; id < MethodRegistry.size(); id++) {
+      MethodRegistry.Entry entry = MethodRegistry.entry(id);
+      String signature = entry.signature;
+      long calls = entry.stats.calls.sum();
+      long meanSelfNanos = calls == 0 ? 0L : entry.selfNanos.sum() / calls;
+      if (calls < hotCalls || meanSelfNanos >= trivialNanos || filter.isAllowed(signature) || filter.isDenied(signature)) {
+        continue;
+      }
+      filter.deny(signature, calls + " calls, " + meanSelfNanos + "ns self");
+      types.add(signature.substring(0, signature.lastIndexOf('.')));
+      denied++;
+    }
+    if (denied == 0) {
+      Agent.log("Adaptive package tracing: no hot trivial methods found, keeping all advice");
+      return;
+    }
+    try {
+      filter.save();
+    } catch (Exception ex) {
+      Agent.log("Package filter %s not saved: %s", filter.file(), ex.toString());
+    }
+
+    List<Class<?>> classes = new ArrayList<>();
+    for (Class<?> loaded : instrumentation.getAllLoadedClasses()) {
+      if (types.contains(loaded.getName()) && instrumentation.isModifiableClass(loaded)) {
+        classes.add(loaded);
+      }
+    }
+    try {
+      instrumentation.retransformClasses(classes.toArray(new Class<?>[0]));
+      Agent.log("Adaptive package tracing: removed advice from %d methods on %d classes (saved to %s)",
+          denied, classes.size(), filter.file());
+    } catch (Throwable ex) {
+      Agent.log("Adaptive package tracing: retransformation failed, denied methods apply from next start: %s",
+          ex.toString());
+    }
+  }
+}
@@ -17,27 +17,48 @@ public final class Agent {
   public static void premain(String agentArgs, Instrumentation instrumentation) {
     log("Blueprint relay agent starting (args: %s)", agentArgs == null ? "" : agentArgs);
 
+    long packageLogger = RelayJfr.begin(RelayJfr.INSTALLER, "package logger");
     try {
       PackageLoggerInstaller.install(instrumentation);
       log("Installed package logger for com.blueprint.oms.a.a.*");
+      RelayJfr.end(packageLogger, null);
     } catch (Exception ex) {
+      RelayJfr.end(packageLogger, ex);
       log("Package logger install failed: %s", ex.getMessage());
     }
 
+    long awsProviderLogger = RelayJfr.begin(RelayJfr.INSTALLER, "AWS provider logger");
     try {
       AwsProviderLoggerInstaller.install(instrumentation);
       log("Installed AWS provider logger for software.amazon.awssdk.auth.credentials.*");
+      RelayJfr.end(awsProviderLogger, null);
     } catch (Exception ex) {
+      RelayJfr.end(awsProviderLogger, ex);
       log("AWS provider logger install failed: %s", ex.getMessage());
     }
 
+    long httpRequestLogger = RelayJfr.begin(RelayJfr.INSTALLER, "HTTP request logger");
     try {
       HttpRequestLoggerInstaller.install(instrumentation);
       log("Installed HTTP request logger for Apache HttpClient");
+      RelayJfr.end(httpRequestLogger, null);
     } catch (Exception ex) {
+      RelayJfr.end(httpRequestLogger, ex);
       log("HTTP request logger install failed: %s", ex.getMessage());
     }
 
+    if (AwsSdkInstaller.enabled()) {
+      long awsSdk = RelayJfr.begin(RelayJfr.INSTALLER, "AWS SDK call timing");
+      try {
+        AwsSdkInstaller.install(instrumentation);
+        log("Installed AWS SDK call timing for ExecutionInterceptorChain");
+        RelayJfr.end(awsSdk, null);
+      } catch (Exception ex) {
+        RelayJfr.end(awsSdk, ex);
+        log("AWS SDK call timing install failed: %s", ex.getMessage());
+      }
+    }
+
     try {
       System.setSecurityManager(new SecurityManager() {
         @Override
@@ -55,6 +76,31 @@ public final class Agent {
       log("SecurityManager install failed: %s", ex.toString());
     }
 
+    if (CallTreeProfiler.enabled()) {
+      CallTreeProfiler.startDumps();
+      log("Package advice in profile mode: call tree instead of per-call log lines");
+    }
+
+    if (EdtWatchdog.enabled()) {
+      EdtWatchdog.start();
+    }
+
+    if (TracingGovernor.enabled()) {
+      TracingGovernor.start();
+    }
+
+    if (MemoryPressureMonitor.enabled()) {
+      MemoryPressureMonitor.start();
+    }
+
+    if (CallJournal.enabled()) {
+      CallJournal.start();
+    }
+
+    if (ServiceMemo.enabled()) {
+      ServiceMemo.start();
+    }
+
     ContextWatcher watcher = new ContextWatcher();
     AtomicBoolean armed = new AtomicBoolean(true);
 
@@ -112,7 +158,7 @@ public final class Agent {
 
   static void log(String template, Object... args) {
     String message = String.format(template, args);
-    RelayLogger.log(message);
+    RelayLogger.log("%s", message);
     System.out.println("[RelayAgent] " + message);
   }
 }
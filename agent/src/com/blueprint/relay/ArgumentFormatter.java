@@ -5,9 +5,6 @@ import java.lang.reflect.Method;
 import java.util.Arrays;
 
 public final class ArgumentFormatter {
-  private static final int MAX_LENGTH = 200;
-  private static final int JMS_TEXT_MAX = 20000;
-
   private ArgumentFormatter() {
   }
 
@@ -165,7 +162,9 @@ public final class ArgumentFormatter {
         ? array.getClass().getComponentType().getSimpleName()
         : "Object");
     builder.append("[").append(length).append("]=");
-    if (array instanceof Object[]) {
+    if (!CaptureLimits.captureToString()) {
+      builder.append("<not captured: heap pressure>");
+    } else if (array instanceof Object[]) {
       builder.append(Arrays.toString((Object[]) array));
     } else if (array instanceof int[]) {
       builder.append(Arrays.toString((int[]) array));
@@ -189,27 +188,33 @@ public final class ArgumentFormatter {
     return abbreviate(builder.toString());
   }
 
-  private static String abbreviate(String input) {
+  static String abbreviate(String input) {
     if (input == null) {
       return "";
     }
-    if (input.length() <= MAX_LENGTH) {
+    int limit = CaptureLimits.valueChars();
+    if (input.length() <= limit) {
       return input;
     }
-    return input.substring(0, MAX_LENGTH) + "...";
+    return input.substring(0, limit) + "...";
   }
 
   private static String truncateJms(String input) {
     if (input == null) {
       return "";
     }
-    if (input.length() <= JMS_TEXT_MAX) {
+    int limit = CaptureLimits.jmsTextChars();
+    if (input.length() <= limit) {
       return input;
     }
-    return input.substring(0, JMS_TEXT_MAX) + "...";
+    return input.substring(0, limit) + "...";
   }
 
   private static String safeToString(Object value) {
+    if (!CaptureLimits.captureToString()) {
+      // toString on a large object graph builds the whole string before abbreviate trims it.
+      return "<not captured: heap pressure>";
+    }
     try {
       return String.valueOf(value);
     } catch (Throwable throwable) {
@@ -1,50 +1,108 @@
 package com.blueprint.relay;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 import net.bytebuddy.asm.Advice;
 
+/**
+ * Logs credentials returned by AWS SDK providers. resolveCredentials runs for every SDK
+ * request, so a provider is only logged when what it resolves changes (a new access
+ * key or session token, a failure, or null); repeats are just counted. The last identity
+ * is kept per provider instance, weakly, so two providers of one class (two assumed
+ * roles, say) do not keep displacing each other and discarded providers are dropped.
+ */
 public final class AwsProviderAdvice {
-  @Advice.OnMethodExit(onThrowable = Throwable.class)
+  private static final ConcurrentMap<ProviderKey, String> LAST_IDENTITY = new ConcurrentHashMap<>();
+  private static final ReferenceQueue<Object> COLLECTED = new ReferenceQueue<>();
+  private static final LongAdder RESOLUTIONS = new LongAdder();
+
+  private static final ClassValue<Method[]> CREDENTIAL_GETTERS = new ClassValue<Method[]>() {
+    @Override
+    protected Method[] computeValue(Class<?> type) {
+      return new Method[] {getter(type, "accessKeyId"), getter(type, "secretAccessKey"), getter(type, "sessionToken")};
+    }
+  };
+
+  static {
+    RelayMetrics.registerGauge("relay_aws_credential_resolutions", "resolveCredentials calls seen since start",
+        RESOLUTIONS::sum);
+  }
+
+  private AwsProviderAdvice() {
+  }
+
+  @Advice.OnMethodExit(onThrowable = Throwable.class, suppress = Throwable.class)
   public static void onExit(@Advice.This Object provider,
                             @Advice.Return Object returned,
                             @Advice.Thrown Throwable thrown) {
+    resolved(provider, returned, thrown);
+  }
+
+  public static void resolved(Object provider, Object returned, Throwable thrown) {
+    RESOLUTIONS.increment();
+    String providerName = provider != null ? provider.getClass().getName() : "<null>";
     if (thrown != null) {
-      RelayLogger.log("aws.provider.%s threw %s: %s",
-          provider != null ? provider.getClass().getName() : "<null>",
-          thrown.getClass().getName(),
-          thrown.getMessage());
+      if (changed(provider, "threw " + thrown.getClass().getName())) {
+        RelayLogger.logThrow("aws.provider", providerName, -1L, thrown);
+      }
       return;
     }
 
     if (returned == null) {
-      RelayLogger.log("aws.provider.%s -> null", provider != null ? provider.getClass().getName() : "<null>");
+      if (changed(provider, "null")) {
+        RelayLogger.logExit("aws.provider", providerName, -1L, "null");
+      }
       return;
     }
 
-    String accessKey = readString(returned, "accessKeyId");
-    String sessionToken = readString(returned, "sessionToken");
+    Method[] getters = CREDENTIAL_GETTERS.get(returned.getClass());
+    String accessKey = readString(getters[0], returned);
+    String sessionToken = readString(getters[2], returned);
     boolean hasSession = sessionToken != null && !sessionToken.isEmpty();
-    
+    String identity = accessKey + "|" + (hasSession ? Integer.toHexString(sessionToken.hashCode()) : "-");
+    if (!changed(provider, identity)) {
+      return;
+    }
+
     boolean reveal = "true".equalsIgnoreCase(System.getProperty("relay.dump.secrets"));
 
     if (reveal) {
-      String secretKey = readString(returned, "secretAccessKey");
-      RelayLogger.log("aws.provider.%s -> key=%s secret=%s session=%s",
-          provider != null ? provider.getClass().getName() : "<null>",
-          accessKey,
-          secretKey,
-          hasSession);
+      String secretKey = readString(getters[1], returned);
+      RelayLogger.logExit("aws.provider", providerName,
+          -1L, "key=" + accessKey + " secret=" + secretKey + " session=" + hasSession);
     } else {
       String maskedKey = mask(accessKey);
-      RelayLogger.log("aws.provider.%s -> key=%s session=%s",
-          provider != null ? provider.getClass().getName() : "<null>",
-          maskedKey,
-          hasSession);
+      RelayLogger.logExit("aws.provider", providerName, -1L, "key=" + maskedKey + " session=" + hasSession);
     }
   }
 
   public static String readString(Object target, String methodName) {
+    return target == null ? null : readString(getter(target.getClass(), methodName), target);
+  }
+
+  public static String mask(String key) {
+    if (key == null || key.length() < 4) {
+      return "<none>";
+    }
+    return key.substring(0, 4) + "..." + key.substring(key.length() - 4);
+  }
+
+  private static boolean changed(Object provider, String identity) {
+    for (Object key = COLLECTED.poll(); key != null; key = COLLECTED.poll()) {
+      LAST_IDENTITY.remove(key);
+    }
+    return !identity.equals(LAST_IDENTITY.put(new ProviderKey(provider), identity));
+  }
+
+  private static String readString(Method method, Object target) {
+    if (method == null) {
+      return null;
+    }
     try {
-      java.lang.reflect.Method method = target.getClass().getMethod(methodName);
       Object result = method.invoke(target);
       return result == null ? null : String.valueOf(result);
     } catch (Exception ignored) {
@@ -52,10 +110,41 @@ public final class AwsProviderAdvice {
     }
   }
 
-  public static String mask(String key) {
-    if (key == null || key.length() < 4) {
-      return "<none>";
+  private static Method getter(Class<?> type, String name) {
+    try {
+      Method method = type.getMethod(name);
+      method.setAccessible(true);
+      return method;
+    } catch (NoSuchMethodException | RuntimeException ex) {
+      return null;
+    }
+  }
+
+  /** Weak, identity-compared reference to a provider; a null provider is one key of its own. */
+  private static final class ProviderKey extends WeakReference<Object> {
+    private final int hash;
+
+    ProviderKey(Object provider) {
+      super(provider, COLLECTED);
+      this.hash = System.identityHashCode(provider);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof ProviderKey)) {
+        return false;
+      }
+      Object provider = get();
+      return hash == ((ProviderKey) other).hash && provider == ((ProviderKey) other).get()
+          && (provider != null || hash == 0);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
     }
-    return key.substring(0, 4) + "..." + key.substring(key.length() - 4);
   }
 }
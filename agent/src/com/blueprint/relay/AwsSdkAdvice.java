@@ -0,0 +1,15 @@
+package com.blueprint.relay;
+
+import net.bytebuddy.asm.Advice;
+
+public final class AwsSdkAdvice {
+  private AwsSdkAdvice() {
+  }
+
+  @Advice.OnMethodEnter(suppress = Throwable.class)
+  public static void onEnter(@Advice.Origin("#m") String hook,
+                             @Advice.Argument(0) Object context,
+                             @Advice.Argument(1) Object executionAttributes) {
+    AwsSdkCalls.onHook(hook, context, executionAttributes);
+  }
+}
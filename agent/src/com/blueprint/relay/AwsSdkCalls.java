@@ -0,0 +1,253 @@
+package com.blueprint.relay;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-service/per-operation timing of AWS SDK v2 calls, fed by AwsSdkAdvice on the
+ * SDK's ExecutionInterceptorChain. An execution is tracked from beforeExecution to
+ * afterExecution/onExecutionFailure; beforeTransmission runs once per HTTP attempt,
+ * so attempts beyond the first are retries. Attempts answered with 429, 503 or an
+ * exception the SDK flags as throttling count as throttled.
+ *
+ * Nothing is logged for ordinary calls. A call is logged as {@code aws.sdk.Service.Operation}
+ * only when it retried, was throttled or failed.
+ *
+ * SDK types are reached reflectively with accessors cached per class; the agent does
+ * not compile against the SDK.
+ */
+public final class AwsSdkCalls {
+  private static final String STREAM = "aws.sdk";
+  private static final int MAX_IN_FLIGHT = 10_000;
+  private static final ConcurrentMap<IdentityKey, Execution> IN_FLIGHT = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<String, Operation> OPERATIONS = new ConcurrentHashMap<>();
+
+  private static final ClassValue<Object[]> ATTRIBUTE_KEYS = new ClassValue<Object[]>() {
+    @Override
+    protected Object[] computeValue(Class<?> attributesType) {
+      Method getAttribute = null;
+      Object serviceKey = null;
+      Object operationKey = null;
+      try {
+        getAttribute = attributesType.getMethod("getAttribute",
+            Class.forName("software.amazon.awssdk.core.interceptor.ExecutionAttribute", false,
+                attributesType.getClassLoader()));
+        Class<?> sdkAttributes = Class.forName("software.amazon.awssdk.core.interceptor.SdkExecutionAttribute",
+            false, attributesType.getClassLoader());
+        serviceKey = staticField(sdkAttributes, "SERVICE_NAME");
+        operationKey = staticField(sdkAttributes, "OPERATION_NAME");
+      } catch (ReflectiveOperationException | LinkageError | RuntimeException ex) {
+        Agent.log("AWS SDK execution attributes not readable on %s: %s", attributesType.getName(), ex.toString());
+      }
+      return new Object[] {getAttribute, serviceKey, operationKey};
+    }
+  };
+
+  private static final ClassValue<Method> HTTP_RESPONSES = noArg("httpResponse");
+  private static final ClassValue<Method> STATUS_CODES = noArg("statusCode");
+  private static final ClassValue<Method> EXCEPTIONS = noArg("exception");
+  private static final ClassValue<Method> THROTTLING_CHECKS = noArg("isThrottlingException");
+
+  private AwsSdkCalls() {
+  }
+
+  static final class Operation {
+    final String service;
+    final String operation;
+    final LatencyHistogram latency = new LatencyHistogram();
+    final LongAdder retries = new LongAdder();
+    final LongAdder throttled = new LongAdder();
+    final LongAdder errors = new LongAdder();
+
+    Operation(String service, String operation) {
+      this.service = service;
+      this.operation = operation;
+    }
+  }
+
+  private static final class Execution {
+    final long startNanos = System.nanoTime();
+    final AtomicInteger attempts = new AtomicInteger();
+    final AtomicInteger throttled = new AtomicInteger();
+  }
+
+  /**
+   * Called from the chain hook named {@code hook} with its (context, executionAttributes)
+   * arguments.
+   */
+  public static void onHook(String hook, Object context, Object attributes) {
+    if (attributes == null) {
+      return;
+    }
+    switch (hook) {
+      case "beforeExecution":
+        if (IN_FLIGHT.size() >= MAX_IN_FLIGHT) {
+          // Executions whose end hook never ran (e.g. a cancelled async call).
+          IN_FLIGHT.clear();
+        }
+        IN_FLIGHT.put(new IdentityKey(attributes), new Execution());
+        break;
+      case "beforeTransmission":
+        Execution attempt = IN_FLIGHT.get(new IdentityKey(attributes));
+        if (attempt != null) {
+          attempt.attempts.incrementAndGet();
+        }
+        break;
+      case "afterTransmission":
+        Execution transmitted = IN_FLIGHT.get(new IdentityKey(attributes));
+        if (transmitted != null && isThrottleStatus(statusCode(context))) {
+          transmitted.throttled.incrementAndGet();
+        }
+        break;
+      case "afterExecution":
+        finish(attributes, null);
+        break;
+      case "onExecutionFailure":
+        Object exception = invoke(EXCEPTIONS, context);
+        finish(attributes, exception instanceof Throwable ? (Throwable) exception : new RuntimeException("unknown failure"));
+        break;
+      default:
+        break;
+    }
+  }
+
+  static Map<String, Operation> operations() {
+    return OPERATIONS;
+  }
+
+  private static void finish(Object attributes, Throwable failure) {
+    Execution execution = IN_FLIGHT.remove(new IdentityKey(attributes));
+    if (execution == null) {
+      return;
+    }
+    long elapsedNanos = System.nanoTime() - execution.startNanos;
+    String service = attribute(attributes, 1);
+    String operationName = attribute(attributes, 2);
+    Operation operation = operation(service == null ? "unknown" : service, operationName == null ? "unknown" : operationName);
+
+    int retries = Math.max(0, execution.attempts.get() - 1);
+    int throttled = execution.throttled.get();
+    if (failure != null && throttled == 0 && isThrottling(failure)) {
+      throttled = 1;
+    }
+    operation.latency.record(elapsedNanos);
+    operation.retries.add(retries);
+    operation.throttled.add(throttled);
+    if (failure != null) {
+      operation.errors.increment();
+    }
+
+    if (failure != null) {
+      RelayLogger.logThrow(STREAM, operation.service + "." + operation.operation, elapsedNanos, failure);
+    } else if (retries > 0 || throttled > 0) {
+      RelayLogger.logExit(STREAM, operation.service + "." + operation.operation, elapsedNanos,
+          "attempts=" + (retries + 1) + " throttled=" + throttled);
+    }
+  }
+
+  private static Operation operation(String service, String name) {
+    String key = service + "." + name;
+    Operation operation = OPERATIONS.get(key);
+    if (operation == null) {
+      operation = OPERATIONS.computeIfAbsent(key, ignored -> new Operation(service, name));
+    }
+    return operation;
+  }
+
+  private static String attribute(Object attributes, int keyIndex) {
+    Object[] keys = ATTRIBUTE_KEYS.get(attributes.getClass());
+    Method getAttribute = (Method) keys[0];
+    if (getAttribute == null || keys[keyIndex] == null) {
+      return null;
+    }
+    try {
+      Object value = getAttribute.invoke(attributes, keys[keyIndex]);
+      return value == null ? null : value.toString();
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      return null;
+    }
+  }
+
+  private static int statusCode(Object context) {
+    Object response = invoke(HTTP_RESPONSES, context);
+    Object code = invoke(STATUS_CODES, response);
+    return code instanceof Integer ? (Integer) code : -1;
+  }
+
+  private static boolean isThrottleStatus(int statusCode) {
+    return statusCode == 429 || statusCode == 503;
+  }
+
+  private static boolean isThrottling(Throwable failure) {
+    // The SDK may wrap its exception (e.g. in a CompletionException); a few levels suffice.
+    Throwable cause = failure;
+    for (int depth = 0; cause != null && depth < 4; depth++, cause = cause.getCause()) {
+      if (Boolean.TRUE.equals(invoke(THROTTLING_CHECKS, cause))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Object invoke(ClassValue<Method> methods, Object target) {
+    if (target == null) {
+      return null;
+    }
+    Method method = methods.get(target.getClass());
+    if (method == null) {
+      return null;
+    }
+    try {
+      return method.invoke(target);
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      return null;
+    }
+  }
+
+  private static ClassValue<Method> noArg(String name) {
+    return new ClassValue<Method>() {
+      @Override
+      protected Method computeValue(Class<?> type) {
+        try {
+          Method method = type.getMethod(name);
+          method.setAccessible(true);
+          return method;
+        } catch (NoSuchMethodException | RuntimeException ex) {
+          return null;
+        }
+      }
+    };
+  }
+
+  private static Object staticField(Class<?> type, String name) throws ReflectiveOperationException {
+    Field field = type.getField(name);
+    return field.get(null);
+  }
+
+  /**
+   * ExecutionAttributes may define equals over their contents; executions are tracked
+   * by instance.
+   */
+  private static final class IdentityKey {
+    private final Object value;
+
+    IdentityKey(Object value) {
+      this.value = value;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof IdentityKey && ((IdentityKey) other).value == value;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(value);
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package com.blueprint.relay;
+
+import java.lang.instrument.Instrumentation;
+import java.security.ProtectionDomain;
+import net.bytebuddy.agent.builder.AgentBuilder;
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.matcher.ElementMatcher;
+import net.bytebuddy.matcher.ElementMatchers;
+import net.bytebuddy.utility.JavaModule;
+
+/**
+ * Opt-in ({@code -Drelay.aws.sdk=true}) timing of AWS SDK v2 calls. Rather than
+ * registering an ExecutionInterceptor with every client, the SDK's own
+ * ExecutionInterceptorChain is instrumented: each lifecycle hook it fans out to the
+ * configured interceptors is reported to AwsSdkCalls first.
+ */
+final class AwsSdkInstaller {
+  private static final String CHAIN = "software.amazon.awssdk.core.interceptor.ExecutionInterceptorChain";
+
+  private static final ElementMatcher.Junction<MethodDescription> HOOKS = ElementMatchers.namedOneOf(
+          "beforeExecution", "beforeTransmission", "afterTransmission", "afterExecution", "onExecutionFailure")
+      .and(ElementMatchers.takesArguments(2));
+
+  private AwsSdkInstaller() {
+  }
+
+  static boolean enabled() {
+    return "true".equalsIgnoreCase(System.getProperty("relay.aws.sdk"));
+  }
+
+  static void install(Instrumentation instrumentation) {
+    new AgentBuilder.Default()
+        .ignore(ElementMatchers.none())
+        .type(ElementMatchers.named(CHAIN))
+        .transform(new AgentBuilder.Transformer() {
+          @Override
+          public DynamicType.Builder<?> transform(DynamicType.Builder<?> builder,
+                                                  TypeDescription typeDescription,
+                                                  ClassLoader classLoader,
+                                                  JavaModule module,
+                                                  ProtectionDomain protectionDomain) {
+            return builder.visit(Advice.to(AwsSdkAdvice.class).on(HOOKS));
+          }
+        })
+        .with(new AgentBuilder.Listener() {
+          @Override
+          public void onDiscovery(String typeName, ClassLoader classLoader, JavaModule module, boolean loaded) {
+          }
+
+          @Override
+          public void onTransformation(TypeDescription typeDescription,
+                                       ClassLoader classLoader,
+                                       JavaModule module,
+                                       boolean loaded,
+                                       DynamicType dynamicType) {
+            Agent.log("Installed AWS SDK call timing on %s", typeDescription.getName());
+          }
+
+          @Override
+          public void onIgnored(TypeDescription typeDescription, ClassLoader classLoader, JavaModule module, boolean loaded) {
+          }
+
+          @Override
+          public void onError(String typeName,
+                              ClassLoader classLoader,
+                              JavaModule module,
+                              boolean loaded,
+                              Throwable throwable) {
+            Agent.log("AWS SDK call timing error for %s: %s", typeName, throwable.toString());
+          }
+
+          @Override
+          public void onComplete(String typeName, ClassLoader classLoader, JavaModule module, boolean loaded) {
+          }
+        })
+        .installOn(instrumentation);
+  }
+}
@@ -0,0 +1,658 @@
+package com.blueprint.relay;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Capture mode for the controller, service and JMS proxies ({@code -Drelay.capture=true}).
+ * ProxyCalls writes one record when a call enters, with its start time, thread and an
+ * argument snapshot, and one when it exits, with its duration. The journal goes to
+ * {@code <log>.journal} ({@code relay.capture.file} overrides it) and stops growing at
+ * {@code relay.capture.maxMB} (default 256). CallReplay reads it back.
+ *
+ * Records are tagged and variable-length: stream, method and class names and method
+ * descriptors are written once and then referred to by number, times are deltas in
+ * nanoseconds. A call's descriptor lets replay tell overloads of one arity apart. Exit records
+ * carry no call id; calls nest per thread, so an exit always closes the thread's most
+ * recent open call. Arguments are kept as values of their own type when they are
+ * strings, boxed primitives or booleans, as text, correlation id and type for JMS text messages, serialized when
+ * they are Serializable and fit in {@code relay.capture.maxArgBytes} (default 65536),
+ * and otherwise as their class name and formatted value.
+ */
+final class CallJournal {
+  private static final int MAGIC = 0x42524a31;
+  private static final int VERSION = 3;
+  private static final int NAME = 1;
+  private static final int CALL = 2;
+  private static final int DONE = 3;
+
+  private static final int NULL = 0;
+  private static final int STRING = 1;
+  private static final int INT = 2;
+  private static final int LONG = 3;
+  private static final int BOOLEAN = 4;
+  private static final int DOUBLE = 5;
+  private static final int SERIALIZED = 6;
+  private static final int TEXT_MESSAGE = 7;
+  private static final int OPAQUE = 8;
+  private static final int SHORT = 9;
+  private static final int BYTE = 10;
+  private static final int FLOAT = 11;
+  private static final int CHAR = 12;
+
+  private static volatile CallJournal instance;
+
+  private final Path path;
+  private final DataOutputStream out;
+  private final long limitBytes = Math.max(1L, Long.getLong("relay.capture.maxMB", 256L)) * 1024L * 1024L;
+  private final int maxArgBytes = Math.max(256, Integer.getInteger("relay.capture.maxArgBytes", 65_536));
+  private final Map<String, Integer> names = new HashMap<>();
+  private long lastNanos;
+  private long calls;
+  private boolean full;
+
+  private CallJournal(Path path, OutputStream stream, long startMillis, long startNanos) throws IOException {
+    this.path = path;
+    this.out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+    this.lastNanos = startNanos;
+    out.writeInt(MAGIC);
+    out.writeByte(VERSION);
+    out.writeLong(startMillis);
+  }
+
+  static boolean enabled() {
+    return "true".equalsIgnoreCase(System.getProperty("relay.capture"));
+  }
+
+  static void start() {
+    instance = open();
+  }
+
+  static boolean capturing() {
+    return instance != null;
+  }
+
+  /** The JVM descriptor of {@code method}, as generated proxies record it: {@code (ILjava/lang/String;)V}. */
+  static String descriptor(Method method) {
+    StringBuilder out = new StringBuilder().append('(');
+    for (Class<?> type : method.getParameterTypes()) {
+      descriptor(out, type);
+    }
+    return descriptor(out.append(')'), method.getReturnType()).toString();
+  }
+
+  private static StringBuilder descriptor(StringBuilder out, Class<?> type) {
+    while (type.isArray()) {
+      out.append('[');
+      type = type.getComponentType();
+    }
+    if (!type.isPrimitive()) {
+      return out.append('L').append(type.getName().replace('.', '/')).append(';');
+    }
+    if (type == boolean.class) {
+      return out.append('Z');
+    }
+    if (type == long.class) {
+      return out.append('J');
+    }
+    if (type == void.class) {
+      return out.append('V');
+    }
+    // The rest are the first letter of their name upper-cased: B, C, D, F, I, S.
+    return out.append(Character.toUpperCase(type.getName().charAt(0)));
+  }
+
+  private static CallJournal open() {
+    String configured = System.getProperty("relay.capture.file");
+    Path path = configured != null && !configured.trim().isEmpty()
+        ? Paths.get(configured.trim()).toAbsolutePath()
+        : Paths.get(RelayLogger.logPath() + ".journal");
+    try {
+      OutputStream stream = Files.newOutputStream(path, StandardOpenOption.CREATE,
+          StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+      CallJournal journal = new CallJournal(path, stream, System.currentTimeMillis(), System.nanoTime());
+      Thread flusher = new Thread(journal::flushLoop, "BlueprintRelay-CallJournal");
+      flusher.setDaemon(true);
+      flusher.start();
+      Runtime.getRuntime().addShutdownHook(new Thread(journal::close, "relay-call-journal-close"));
+      Agent.log("Capturing controller, service and JMS calls to %s", path);
+      return journal;
+    } catch (IOException ex) {
+      Agent.log("Call capture disabled: cannot write %s: %s", path, ex.toString());
+      return null;
+    }
+  }
+
+  /** {@code descriptor} is the method's JVM descriptor, or null when the caller does not know it. */
+  static void enter(String stream, String method, String descriptor, Object[] args) {
+    CallJournal journal = instance;
+    if (journal == null) {
+      return;
+    }
+    long now = System.nanoTime();
+    long thread = Thread.currentThread().getId();
+    // Snapshot outside the lock; serializing an argument can take as long as the call.
+    byte[] snapshot = journal.snapshot(args);
+    synchronized (journal) {
+      if (journal.full) {
+        return;
+      }
+      try {
+        int streamId = journal.name(stream);
+        int methodId = journal.name(method);
+        int descriptorId = journal.name(descriptor != null ? descriptor : "");
+        journal.out.writeByte(CALL);
+        writeVarLong(journal.out, zigzag(now - journal.lastNanos));
+        writeVarLong(journal.out, thread);
+        writeVarLong(journal.out, streamId);
+        writeVarLong(journal.out, methodId);
+        writeVarLong(journal.out, descriptorId);
+        journal.out.write(snapshot);
+        journal.lastNanos = now;
+        journal.calls++;
+        journal.checkSize();
+      } catch (IOException ex) {
+        journal.fail(ex);
+      }
+    }
+  }
+
+  static void exit(long elapsedNanos, Throwable thrown) {
+    CallJournal journal = instance;
+    if (journal == null) {
+      return;
+    }
+    long thread = Thread.currentThread().getId();
+    synchronized (journal) {
+      if (journal.full) {
+        return;
+      }
+      try {
+        journal.out.writeByte(DONE);
+        writeVarLong(journal.out, thread);
+        writeVarLong(journal.out, Math.max(0L, elapsedNanos));
+        journal.out.writeBoolean(thrown != null);
+      } catch (IOException ex) {
+        journal.fail(ex);
+      }
+    }
+  }
+
+  private byte[] snapshot(Object[] args) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+    DataOutputStream data = new DataOutputStream(bytes);
+    try {
+      int count = args == null ? 0 : args.length;
+      writeVarLong(data, count);
+      for (int i = 0; i < count; i++) {
+        writeValue(data, args[i]);
+      }
+    } catch (IOException ex) {
+      // ByteArrayOutputStream does not throw.
+    }
+    return bytes.toByteArray();
+  }
+
+  private void writeValue(DataOutputStream data, Object value) throws IOException {
+    if (value == null) {
+      data.writeByte(NULL);
+    } else if (value instanceof String) {
+      data.writeByte(STRING);
+      writeText(data, (String) value, maxArgBytes);
+    } else if (value instanceof Integer) {
+      data.writeByte(INT);
+      data.writeInt((Integer) value);
+    } else if (value instanceof Long) {
+      data.writeByte(LONG);
+      data.writeLong((Long) value);
+    } else if (value instanceof Boolean) {
+      data.writeByte(BOOLEAN);
+      data.writeBoolean((Boolean) value);
+    } else if (value instanceof Double) {
+      data.writeByte(DOUBLE);
+      data.writeDouble((Double) value);
+    } else if (value instanceof Short) {
+      data.writeByte(SHORT);
+      data.writeShort((Short) value);
+    } else if (value instanceof Byte) {
+      data.writeByte(BYTE);
+      data.writeByte((Byte) value);
+    } else if (value instanceof Float) {
+      data.writeByte(FLOAT);
+      data.writeFloat((Float) value);
+    } else if (value instanceof Character) {
+      data.writeByte(CHAR);
+      data.writeChar((Character) value);
+    } else if (implementsInterface(value.getClass(), "javax.jms.TextMessage")) {
+      data.writeByte(TEXT_MESSAGE);
+      writeText(data, readString(value, "getJMSCorrelationID"), 1024);
+      writeText(data, readString(value, "getJMSType"), 1024);
+      writeText(data, readString(value, "getText"), maxArgBytes);
+    } else {
+      byte[] serialized = value instanceof Serializable && CaptureLimits.captureToString() ? serialize(value) : null;
+      if (serialized != null) {
+        data.writeByte(SERIALIZED);
+        writeText(data, value.getClass().getName(), 1024);
+        writeVarLong(data, serialized.length);
+        data.write(serialized);
+      } else {
+        data.writeByte(OPAQUE);
+        writeText(data, value.getClass().getName(), 1024);
+        writeText(data, ArgumentFormatter.summarizeValue(value), maxArgBytes);
+      }
+    }
+  }
+
+  /**
+   * Java serialization of one argument, or null when it fails or is over the size limit.
+   * Writing stops as soon as the limit is passed, so a large object graph is not
+   * serialized in full only to be dropped.
+   */
+  private byte[] serialize(Object value) {
+    BoundedBytes bytes = new BoundedBytes(maxArgBytes);
+    try (ObjectOutputStream objects = new ObjectOutputStream(bytes)) {
+      objects.writeObject(value);
+    } catch (IOException | RuntimeException ex) {
+      return null;
+    }
+    return bytes.toByteArray();
+  }
+
+  private int name(String value) throws IOException {
+    Integer id = names.get(value);
+    if (id != null) {
+      return id;
+    }
+    int next = names.size();
+    names.put(value, next);
+    out.writeByte(NAME);
+    writeVarLong(out, next);
+    writeText(out, value, 1024);
+    return next;
+  }
+
+  private void checkSize() {
+    if (out.size() >= limitBytes || out.size() < 0) {
+      full = true;
+      Agent.log("Call capture stopped at relay.capture.maxMB after %d calls: %s", calls, path);
+    }
+  }
+
+  private void fail(IOException ex) {
+    full = true;
+    Agent.log("Call capture stopped after %d calls: %s", calls, ex.toString());
+  }
+
+  private void flushLoop() {
+    try {
+      while (true) {
+        Thread.sleep(1_000L);
+        synchronized (this) {
+          out.flush();
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } catch (IOException ex) {
+      synchronized (this) {
+        fail(ex);
+      }
+    }
+  }
+
+  private synchronized void close() {
+    try {
+      out.close();
+    } catch (IOException ignored) {
+      // Shutting down.
+    }
+    full = true;
+  }
+
+  /** Collects up to {@code limit} bytes and fails the write that would go past it. */
+  private static final class BoundedBytes extends OutputStream {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    private final int limit;
+
+    BoundedBytes(int limit) {
+      this.limit = limit;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      reserve(1);
+      bytes.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      reserve(len);
+      bytes.write(b, off, len);
+    }
+
+    byte[] toByteArray() {
+      return bytes.toByteArray();
+    }
+
+    private void reserve(int length) throws IOException {
+      if (length > limit - bytes.size()) {
+        throw new IOException("over relay.capture.maxArgBytes");
+      }
+    }
+  }
+
+  /** One captured call; {@code children} are the captured calls it made on the same thread. */
+  static final class Call {
+    final long thread;
+    final String stream;
+    final String method;
+    final String descriptor;
+    final Object[] args;
+    final long offsetNanos;
+    final List<Call> children = new ArrayList<>(0);
+    long elapsedNanos = -1L;
+    boolean failed;
+
+    Call(long thread, String stream, String method, String descriptor, Object[] args, long offsetNanos) {
+      this.thread = thread;
+      this.stream = stream;
+      this.method = method;
+      this.descriptor = descriptor;
+      this.args = args;
+      this.offsetNanos = offsetNanos;
+    }
+
+    boolean finished() {
+      return elapsedNanos >= 0L;
+    }
+  }
+
+  /** Argument that could not be restored: its class name and formatted value at capture time. */
+  static final class Opaque {
+    final String type;
+    final String text;
+
+    Opaque(String type, String text) {
+      this.type = type;
+      this.text = text;
+    }
+
+    @Override
+    public String toString() {
+      return text != null ? text : type;
+    }
+  }
+
+  /**
+   * Reads a journal into top-level calls, each with its nested calls, in the order they
+   * started. A journal cut short by a crash reads up to its last complete record.
+   */
+  static List<Call> read(Path path) throws IOException {
+    List<Call> roots = new ArrayList<>();
+    List<String> table = new ArrayList<>();
+    Map<Long, Deque<Call>> open = new HashMap<>();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 64 * 1024))) {
+      int magic = in.readInt();
+      int version = in.readUnsignedByte();
+      // Version 1 lacks the SHORT, BYTE, FLOAT and CHAR value tags; versions 1 and 2 lack
+      // the descriptor in CALL records.
+      if (magic != MAGIC || version < 1 || version > VERSION) {
+        throw new IOException("not a relay call journal: " + path);
+      }
+      in.readLong();
+      long offset = 0L;
+      while (true) {
+        int tag = in.read();
+        if (tag < 0) {
+          break;
+        }
+        if (tag == NAME) {
+          int id = (int) readVarLong(in);
+          String value = readText(in);
+          while (table.size() <= id) {
+            table.add(null);
+          }
+          table.set(id, value);
+        } else if (tag == CALL) {
+          offset += unzigzag(readVarLong(in));
+          long thread = readVarLong(in);
+          String stream = table.get((int) readVarLong(in));
+          String method = table.get((int) readVarLong(in));
+          String descriptor = version >= 3 ? table.get((int) readVarLong(in)) : null;
+          if (descriptor != null && descriptor.isEmpty()) {
+            descriptor = null;
+          }
+          Object[] args = new Object[(int) readVarLong(in)];
+          for (int i = 0; i < args.length; i++) {
+            args[i] = readValue(in);
+          }
+          Call call = new Call(thread, stream, method, descriptor, args, offset);
+          Deque<Call> stack = open.computeIfAbsent(thread, key -> new ArrayDeque<>());
+          if (stack.isEmpty()) {
+            roots.add(call);
+          } else {
+            stack.peek().children.add(call);
+          }
+          stack.push(call);
+        } else if (tag == DONE) {
+          long thread = readVarLong(in);
+          long elapsed = readVarLong(in);
+          boolean failed = in.readBoolean();
+          Deque<Call> stack = open.get(thread);
+          if (stack != null && !stack.isEmpty()) {
+            Call call = stack.pop();
+            call.elapsedNanos = elapsed;
+            call.failed = failed;
+          }
+        } else {
+          throw new IOException("corrupt call journal " + path + ": record tag " + tag);
+        }
+      }
+    } catch (EOFException truncated) {
+      // Last record was not completely written; everything before it is usable.
+    }
+    return roots;
+  }
+
+  private static Object readValue(DataInputStream in) throws IOException {
+    int tag = in.readUnsignedByte();
+    switch (tag) {
+      case NULL:
+        return null;
+      case STRING:
+        return readText(in);
+      case INT:
+        return in.readInt();
+      case LONG:
+        return in.readLong();
+      case BOOLEAN:
+        return in.readBoolean();
+      case DOUBLE:
+        return in.readDouble();
+      case SHORT:
+        return in.readShort();
+      case BYTE:
+        return in.readByte();
+      case FLOAT:
+        return in.readFloat();
+      case CHAR:
+        return in.readChar();
+      case TEXT_MESSAGE:
+        return textMessage(readText(in), readText(in), readText(in));
+      case SERIALIZED: {
+        String type = readText(in);
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.readFully(bytes);
+        return deserialize(type, bytes);
+      }
+      case OPAQUE:
+        return new Opaque(readText(in), readText(in));
+      default:
+        throw new IOException("corrupt call journal: value tag " + tag);
+    }
+  }
+
+  private static Object deserialize(String type, byte[] bytes) {
+    try (ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      return objects.readObject();
+    } catch (IOException | ClassNotFoundException | RuntimeException ex) {
+      return new Opaque(type, null);
+    }
+  }
+
+  /**
+   * A javax.jms.TextMessage answering with the captured text, correlation id and type, or
+   * an Opaque carrying the text when the JMS API is not on the replay class path.
+   */
+  private static Object textMessage(String correlationId, String type, String text) {
+    Class<?> api;
+    try {
+      api = Class.forName("javax.jms.TextMessage", false, Thread.currentThread().getContextClassLoader());
+    } catch (ClassNotFoundException | LinkageError ex) {
+      return new Opaque("javax.jms.TextMessage", text);
+    }
+    return Proxy.newProxyInstance(api.getClassLoader(), new Class<?>[] {api}, (proxy, method, args) -> {
+      switch (method.getName()) {
+        case "getText":
+          return text;
+        case "getJMSCorrelationID":
+          return correlationId;
+        case "getJMSType":
+          return type;
+        case "toString":
+          return "ReplayedTextMessage[" + correlationId + "]";
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "equals":
+          return proxy == args[0];
+        default:
+          return defaultValue(method.getReturnType());
+      }
+    });
+  }
+
+  private static Object defaultValue(Class<?> type) {
+    if (!type.isPrimitive() || type == void.class) {
+      return null;
+    }
+    if (type == boolean.class) {
+      return Boolean.FALSE;
+    }
+    if (type == long.class) {
+      return 0L;
+    }
+    if (type == double.class) {
+      return 0.0;
+    }
+    if (type == float.class) {
+      return 0.0f;
+    }
+    if (type == char.class) {
+      return '\0';
+    }
+    if (type == byte.class) {
+      return (byte) 0;
+    }
+    if (type == short.class) {
+      return (short) 0;
+    }
+    return 0;
+  }
+
+  private static void writeText(DataOutputStream data, String value, int maxBytes) throws IOException {
+    if (value == null) {
+      writeVarLong(data, 0L);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    int length = Math.min(bytes.length, maxBytes);
+    writeVarLong(data, length + 1L);
+    data.write(bytes, 0, length);
+  }
+
+  private static String readText(DataInputStream in) throws IOException {
+    long length = readVarLong(in);
+    if (length == 0L) {
+      return null;
+    }
+    byte[] bytes = new byte[(int) (length - 1L)];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeVarLong(DataOutputStream data, long value) throws IOException {
+    while ((value & ~0x7fL) != 0L) {
+      data.writeByte((int) (value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    data.writeByte((int) value);
+  }
+
+  private static long readVarLong(InputStream in) throws IOException {
+    long value = 0L;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException();
+      }
+      value |= (long) (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("corrupt call journal: varint too long");
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1L);
+  }
+
+  private static boolean implementsInterface(Class<?> type, String name) {
+    for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+      for (Class<?> iface : current.getInterfaces()) {
+        if (iface.getName().equals(name) || implementsInterface(iface, name)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static String readString(Object target, String methodName) {
+    try {
+      Method method = target.getClass().getMethod(methodName);
+      Object result = method.invoke(target);
+      return result == null ? null : String.valueOf(result);
+    } catch (Exception ignored) {
+      return null;
+    }
+  }
+}
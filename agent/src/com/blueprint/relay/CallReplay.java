@@ -0,0 +1,426 @@
+package com.blueprint.relay;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a {@link CallJournal} through the relay proxies so agent changes can be load
+ * tested with captured traffic and no OMS.
+ *
+ * <pre>
+ * java -cp blueprint-relay-agent.jar[:STUB_CLASSES] com.blueprint.relay.CallReplay \
+ *     [--speed 1|N|max] [--target STREAM=CLASS]... [--direct] JOURNAL
+ * </pre>
+ *
+ * Each captured thread gets a replay thread that starts its top-level calls at their
+ * captured offsets divided by the speed ({@code max} does not wait at all). A call on a
+ * stream without a target is played by the built-in stub: ProxyCalls enter and exit
+ * around its nested calls, replayed the same way, and a pause for the rest of its
+ * captured duration, also divided by the speed. {@code --target omsService=CLASS} sends
+ * that stream's calls to an instance of CLASS behind the same proxy the agent installs,
+ * with the captured arguments; CLASS needs a public constructor whose parameters are
+ * earlier targets or classes with a public no-argument constructor. Its nested calls
+ * are then whatever the target makes. A target call runs the interface method with the
+ * captured descriptor, or in journals from before descriptors were recorded the one of
+ * that name and arity whose parameters take the captured arguments; with no such method,
+ * or an argument its parameter cannot take, the call counts as failed. {@code --direct} leaves the relay out, for a
+ * baseline. The relay log defaults to {@code JOURNAL.replay.log}.
+ *
+ * Reports calls, throughput and latency per stream, next to the captured latency.
+ */
+public final class CallReplay {
+  private static final Throwable CAPTURED_FAILURE = new RuntimeException("failed when captured", null, false, false) {
+  };
+  private static final Object MISMATCH = new Object();
+
+  private final double speed;
+  private final boolean direct;
+  private final Map<String, Object> targets;
+  private final Map<String, Method[]> methods = new HashMap<>();
+  private final Map<String, Stats> stats = new TreeMap<>();
+  private final Stats lag = new Stats();
+  private long startNanos;
+  private long firstOffset;
+
+  private CallReplay(double speed, boolean direct, Map<String, Object> targets) {
+    this.speed = speed;
+    this.direct = direct;
+    this.targets = targets;
+  }
+
+  public static void main(String[] args) throws Exception {
+    double speed = 1.0;
+    boolean direct = false;
+    Map<String, String> targetClasses = new LinkedHashMap<>();
+    Path journal = null;
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      if ("--speed".equals(arg) && i + 1 < args.length) {
+        speed = parseSpeed(args[++i]);
+      } else if ("--target".equals(arg) && i + 1 < args.length) {
+        String[] binding = args[++i].split("=", 2);
+        if (binding.length != 2) {
+          usage("Target must be STREAM=CLASS: " + args[i]);
+        }
+        targetClasses.put(binding[0], binding[1]);
+      } else if ("--direct".equals(arg)) {
+        direct = true;
+      } else if (!arg.startsWith("--") && journal == null) {
+        journal = Paths.get(arg);
+      } else {
+        usage("Unknown argument: " + arg);
+      }
+    }
+    if (journal == null || !Files.exists(journal)) {
+      usage(journal == null ? "No journal given" : "No call journal at " + journal);
+    }
+    if (System.getProperty("blueprint.relay.log") == null) {
+      System.setProperty("blueprint.relay.log", journal.toAbsolutePath() + ".replay.log");
+    }
+
+    List<CallJournal.Call> roots = CallJournal.read(journal);
+    Map<Long, List<CallJournal.Call>> byThread = new LinkedHashMap<>();
+    for (CallJournal.Call call : roots) {
+      byThread.computeIfAbsent(call.thread, key -> new ArrayList<>()).add(call);
+    }
+    Map<String, Object> targets = new HashMap<>();
+    List<Object> built = new ArrayList<>();
+    for (Map.Entry<String, String> binding : targetClasses.entrySet()) {
+      Object target = instantiate(Class.forName(binding.getValue()), built);
+      Object proxied = direct ? target : wrap(binding.getKey(), target);
+      if (proxied == null) {
+        usage("Cannot proxy " + binding.getValue() + " as stream " + binding.getKey());
+      }
+      targets.put(binding.getKey(), proxied);
+      built.add(proxied);
+    }
+
+    CallReplay replay = new CallReplay(speed, direct, targets);
+    List<Thread> threads = new ArrayList<>();
+    List<CallReplay> workers = new ArrayList<>();
+    // Captured offsets count from agent start; replay from the first captured call.
+    long first = roots.isEmpty() ? 0L : roots.get(0).offsetNanos;
+    // Paced replays start shortly after every thread is up, so none begins already late.
+    replay.startNanos = System.nanoTime() + (speed > 0.0 ? 50_000_000L : 0L);
+    for (Map.Entry<Long, List<CallJournal.Call>> entry : byThread.entrySet()) {
+      CallReplay worker = new CallReplay(speed, direct, targets);
+      worker.startNanos = replay.startNanos;
+      worker.firstOffset = first;
+      workers.add(worker);
+      Thread thread = new Thread(() -> worker.playAll(entry.getValue()), "replay-" + entry.getKey());
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    long wallNanos = System.nanoTime() - replay.startNanos;
+    for (CallReplay worker : workers) {
+      replay.merge(worker);
+    }
+    replay.report(journal, roots, byThread.size(), wallNanos);
+  }
+
+  private void playAll(List<CallJournal.Call> calls) {
+    for (CallJournal.Call call : calls) {
+      long due = scheduled(startNanos, call.offsetNanos - firstOffset);
+      waitUntil(due);
+      lag.add(Math.max(0L, System.nanoTime() - due), 0L, false);
+      play(call);
+    }
+  }
+
+  private void play(CallJournal.Call call) {
+    long captured = Math.max(0L, call.elapsedNanos);
+    long began = System.nanoTime();
+    boolean failed;
+    Object target = targets.get(call.stream);
+    if (target != null) {
+      failed = invoke(target, call);
+    } else {
+      long start = direct ? 0L : ProxyCalls.enter(call.stream, call.method, call.descriptor, call.args);
+      for (CallJournal.Call child : call.children) {
+        waitUntil(scheduled(began, child.offsetNanos - call.offsetNanos));
+        play(child);
+      }
+      waitUntil(scheduled(began, captured));
+      failed = call.failed;
+      if (!direct) {
+        ProxyCalls.exit(call.stream, call.method, start, null, failed ? CAPTURED_FAILURE : null);
+      }
+    }
+    stats.computeIfAbsent(call.stream, key -> new Stats()).add(System.nanoTime() - began, captured, failed);
+  }
+
+  private boolean invoke(Object target, CallJournal.Call call) {
+    Object[] args = null;
+    Method method = null;
+    for (Method candidate : methods(target, call)) {
+      args = arguments(candidate.getParameterTypes(), call.args);
+      if (args != null) {
+        method = candidate;
+        break;
+      }
+    }
+    if (method == null) {
+      return true;
+    }
+    try {
+      method.invoke(target, args);
+      return false;
+    } catch (InvocationTargetException | IllegalAccessException | IllegalArgumentException ex) {
+      return true;
+    }
+  }
+
+  /**
+   * The target's interface methods the call can be replayed on: the one with the captured
+   * descriptor, or for journals that predate descriptors every method with the captured
+   * name and parameter count, the last declared first.
+   */
+  private Method[] methods(Object target, CallJournal.Call call) {
+    String key = call.descriptor != null
+        ? call.stream + '.' + call.method + call.descriptor
+        : call.stream + '.' + call.method + '/' + call.args.length;
+    Method[] found = methods.get(key);
+    if (found != null) {
+      return found;
+    }
+    List<Method> matches = new ArrayList<>();
+    for (Class<?> iface : target.getClass().getInterfaces()) {
+      for (Method candidate : iface.getMethods()) {
+        if (!candidate.getName().equals(call.method) || candidate.getParameterCount() != call.args.length) {
+          continue;
+        }
+        if (call.descriptor == null || call.descriptor.equals(CallJournal.descriptor(candidate))) {
+          matches.add(0, candidate);
+        }
+      }
+    }
+    found = matches.toArray(new Method[0]);
+    methods.put(key, found);
+    return found;
+  }
+
+  /** The captured values for {@code types}, or null when one of them does not fit its parameter. */
+  private static Object[] arguments(Class<?>[] types, Object[] values) {
+    Object[] args = new Object[types.length];
+    for (int i = 0; i < types.length; i++) {
+      args[i] = argument(types[i], values[i]);
+      if (args[i] == MISMATCH) {
+        return null;
+      }
+    }
+    return args;
+  }
+
+  /**
+   * The captured value when it fits the parameter, null for an argument that could not be
+   * restored, and MISMATCH otherwise. Numbers are converted to the primitive parameter's
+   * own wrapper, since Method.invoke only widens and journals before version 2 kept short
+   * and byte as int and float as double.
+   */
+  private static Object argument(Class<?> type, Object value) {
+    if (!type.isPrimitive()) {
+      return type.isInstance(value) ? value : value == null || value instanceof CallJournal.Opaque ? null : MISMATCH;
+    }
+    if (type == boolean.class) {
+      return value instanceof Boolean ? value : MISMATCH;
+    }
+    Number number;
+    if (value instanceof Number) {
+      number = (Number) value;
+    } else if (value instanceof Character) {
+      number = (int) (Character) value;
+    } else {
+      return MISMATCH;
+    }
+    if (type == int.class) {
+      return number.intValue();
+    } else if (type == long.class) {
+      return number.longValue();
+    } else if (type == double.class) {
+      return number.doubleValue();
+    } else if (type == float.class) {
+      return number.floatValue();
+    } else if (type == short.class) {
+      return number.shortValue();
+    } else if (type == byte.class) {
+      return number.byteValue();
+    }
+    return value instanceof Character ? value : (Object) (char) number.intValue();
+  }
+
+  private long scheduled(long origin, long offsetNanos) {
+    return speed <= 0.0 ? origin : origin + (long) (offsetNanos / speed);
+  }
+
+  private void waitUntil(long deadline) {
+    if (speed <= 0.0) {
+      return;
+    }
+    long remaining = deadline - System.nanoTime();
+    while (remaining > 0L) {
+      LockSupport.parkNanos(remaining);
+      remaining = deadline - System.nanoTime();
+    }
+  }
+
+  private void merge(CallReplay worker) {
+    for (Map.Entry<String, Stats> entry : worker.stats.entrySet()) {
+      stats.computeIfAbsent(entry.getKey(), key -> new Stats()).addAll(entry.getValue());
+    }
+    lag.addAll(worker.lag);
+  }
+
+  private void report(Path journal, List<CallJournal.Call> roots, int threads, long wallNanos) {
+    long capturedNanos = 0L;
+    for (CallJournal.Call root : roots) {
+      capturedNanos = Math.max(capturedNanos, root.offsetNanos - roots.get(0).offsetNanos + Math.max(0L, root.elapsedNanos));
+    }
+    long total = 0L;
+    for (Stats stream : stats.values()) {
+      total += stream.count;
+    }
+    double seconds = wallNanos / 1e9;
+    System.out.printf("Replayed %d calls (%d top-level, %d threads) from %s in %.2f s at %s%s; captured span %.2f s%n",
+        total, roots.size(), threads, journal, seconds, speed <= 0.0 ? "max speed" : speed + "x",
+        direct ? " without the relay" : "", capturedNanos / 1e9);
+    System.out.printf("%-16s %9s %10s %9s %9s %9s %14s %7s%n",
+        "stream", "calls", "calls/s", "p50 ms", "p99 ms", "max ms", "captured p99", "failed");
+    for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+      Stats stream = entry.getValue();
+      System.out.printf("%-16s %9d %10.1f %9.3f %9.3f %9.3f %14.3f %7d%n",
+          entry.getKey(), stream.count, stream.count / seconds, millis(stream.percentile(stream.latency, 0.50)),
+          millis(stream.percentile(stream.latency, 0.99)), millis(stream.percentile(stream.latency, 1.0)),
+          millis(stream.percentile(stream.captured, 0.99)), stream.failed);
+    }
+    if (speed > 0.0 && lag.count > 0) {
+      System.out.printf("Top-level start lag p50 %.3f ms, p99 %.3f ms%n",
+          millis(lag.percentile(lag.latency, 0.50)), millis(lag.percentile(lag.latency, 0.99)));
+    }
+  }
+
+  private static double millis(long nanos) {
+    return nanos / 1_000_000.0;
+  }
+
+  private static Object wrap(String stream, Object target) {
+    switch (stream) {
+      case ProxyCalls.OMS_CONTROLLER:
+        return OmsControllerProxy.wrap(target);
+      case ProxyCalls.OMS_SERVICE:
+        return OmsServiceProxy.wrap(target);
+      case ProxyCalls.JMS:
+        return MessageListenerProxy.wrap(target);
+      default:
+        return null;
+    }
+  }
+
+  private static Object instantiate(Class<?> type, List<Object> built) throws ReflectiveOperationException {
+    for (Constructor<?> constructor : type.getConstructors()) {
+      Class<?>[] parameters = constructor.getParameterTypes();
+      Object[] values = new Object[parameters.length];
+      boolean satisfied = true;
+      for (int i = 0; i < parameters.length && satisfied; i++) {
+        values[i] = parameter(parameters[i], built);
+        satisfied = values[i] != null;
+      }
+      if (satisfied) {
+        return constructor.newInstance(values);
+      }
+    }
+    throw new NoSuchMethodException("no usable public constructor on " + type.getName()
+        + " " + Arrays.toString(type.getConstructors()));
+  }
+
+  private static Object parameter(Class<?> type, List<Object> built) {
+    for (Object candidate : built) {
+      if (type.isInstance(candidate)) {
+        return candidate;
+      }
+    }
+    if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+      return null;
+    }
+    try {
+      return type.getConstructor().newInstance();
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      return null;
+    }
+  }
+
+  private static double parseSpeed(String value) {
+    if ("max".equalsIgnoreCase(value)) {
+      return 0.0;
+    }
+    try {
+      double parsed = Double.parseDouble(value.endsWith("x") ? value.substring(0, value.length() - 1) : value);
+      if (parsed > 0.0) {
+        return parsed;
+      }
+    } catch (NumberFormatException ignored) {
+      // Reported below.
+    }
+    usage("Speed must be a positive number or max: " + value);
+    return 1.0;
+  }
+
+  private static void usage(String problem) {
+    System.err.println(problem);
+    System.err.println("Usage: CallReplay [--speed 1|N|max] [--target STREAM=CLASS]... [--direct] JOURNAL");
+    System.exit(2);
+  }
+
+  /** Latencies of one stream on one replay thread, merged after the run. */
+  private static final class Stats {
+    long[] latency = new long[256];
+    long[] captured = new long[256];
+    int count;
+    long failed;
+
+    void add(long nanos, long capturedNanos, boolean failure) {
+      if (count == latency.length) {
+        latency = Arrays.copyOf(latency, count * 2);
+        captured = Arrays.copyOf(captured, count * 2);
+      }
+      latency[count] = nanos;
+      captured[count] = capturedNanos;
+      count++;
+      if (failure) {
+        failed++;
+      }
+    }
+
+    void addAll(Stats other) {
+      for (int i = 0; i < other.count; i++) {
+        add(other.latency[i], other.captured[i], false);
+      }
+      failed += other.failed;
+    }
+
+    long percentile(long[] values, double fraction) {
+      if (count == 0) {
+        return 0L;
+      }
+      long[] sorted = Arrays.copyOf(values, count);
+      Arrays.sort(sorted);
+      int index = (int) Math.ceil(fraction * count) - 1;
+      return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+  }
+}
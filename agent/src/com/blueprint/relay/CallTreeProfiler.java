@@ -0,0 +1,284 @@
+package com.blueprint.relay;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deterministic call-tree profile of the package advice ({@code -Drelay.pkg.mode=profile}).
+ * Instead of a log line per enter and exit, every thread keeps a shadow stack into its
+ * own tree of call paths with call counts, inclusive time and time spent in children,
+ * so the hot path is a child lookup and a few adds under an uncontended lock.
+ *
+ * Trees are merged across threads when dumped: in collapsed-stack form (each path
+ * weighted by its exclusive time in microseconds, ready for flamegraph.pl or
+ * speedscope) or as an indented tree with counts and inclusive/exclusive milliseconds.
+ * The trees of threads that have ended are folded into one retired aggregate and
+ * dropped, at each dump and whenever a new thread starts profiling.
+ * Dumps are served at {@code GET /profile[?format=tree][&reset=true]} on the local
+ * report server and written every {@code relay.pkg.profile.intervalSec} seconds
+ * (default 60, 0 disables) and at shutdown to {@code BlueprintRelay.log.profile.collapsed}
+ * and {@code .txt} next to the relay log.
+ */
+public final class CallTreeProfiler {
+  private static final boolean ENABLED = "profile".equalsIgnoreCase(System.getProperty("relay.pkg.mode"));
+  private static final List<ThreadTree> TREES = new CopyOnWriteArrayList<>();
+  private static final ThreadLocal<ThreadTree> TREE = ThreadLocal.withInitial(() -> {
+    ThreadTree tree = new ThreadTree(Thread.currentThread());
+    retireDead();
+    TREES.add(tree);
+    return tree;
+  });
+  /** Counts of the threads that have ended; guarded by the class lock, as is retiring. */
+  private static Merged retired = new Merged();
+
+  private CallTreeProfiler() {
+  }
+
+  public static boolean enabled() {
+    return ENABLED;
+  }
+
+  public static void enter(String method) {
+    TREE.get().enter(method);
+  }
+
+  public static void exit(String method, long elapsedNanos) {
+    TREE.get().exit(method, elapsedNanos);
+  }
+
+  /**
+   * Starts the periodic and shutdown dumps; called once from premain in profile mode.
+   */
+  static void startDumps() {
+    long intervalSeconds = Long.getLong("relay.pkg.profile.intervalSec", 60L);
+    if (intervalSeconds > 0) {
+      ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "BlueprintRelay-Profiler");
+        thread.setDaemon(true);
+        return thread;
+      });
+      scheduler.scheduleWithFixedDelay(CallTreeProfiler::dumpToFiles, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+    Runtime.getRuntime().addShutdownHook(new Thread(CallTreeProfiler::dumpToFiles, "BlueprintRelay-ProfilerDump"));
+  }
+
+  static String render(boolean tree, boolean reset) {
+    Merged root = merge(reset);
+    StringWriter out = new StringWriter();
+    try {
+      if (tree) {
+        writeTree(root, out);
+      } else {
+        writeCollapsed(root, out);
+      }
+    } catch (IOException impossible) {
+      throw new IllegalStateException(impossible);
+    }
+    return out.toString();
+  }
+
+  private static void dumpToFiles() {
+    Merged root = merge(false);
+    Path log = RelayLogger.logPath();
+    Path collapsed = log.resolveSibling(log.getFileName() + ".profile.collapsed");
+    Path text = log.resolveSibling(log.getFileName() + ".profile.txt");
+    try {
+      try (BufferedWriter out = Files.newBufferedWriter(collapsed, StandardCharsets.UTF_8)) {
+        writeCollapsed(root, out);
+      }
+      try (BufferedWriter out = Files.newBufferedWriter(text, StandardCharsets.UTF_8)) {
+        writeTree(root, out);
+      }
+    } catch (IOException ex) {
+      Agent.log("Profile dump failed: %s", ex.toString());
+    }
+  }
+
+  private static synchronized Merged merge(boolean reset) {
+    retireDead();
+    Merged root = new Merged();
+    for (ThreadTree tree : TREES) {
+      tree.mergeInto(root, reset);
+    }
+    retired.addTo(root);
+    if (reset) {
+      retired = new Merged();
+    }
+    return root;
+  }
+
+  private static synchronized void retireDead() {
+    for (ThreadTree tree : TREES) {
+      if (!tree.ownerAlive()) {
+        tree.mergeInto(retired, false);
+        TREES.remove(tree);
+      }
+    }
+  }
+
+  private static void writeCollapsed(Merged root, Writer out) throws IOException {
+    CollapsedStacks stacks = new CollapsedStacks();
+    for (Map.Entry<String, Merged> child : root.children.entrySet()) {
+      fold(child.getKey(), child.getValue(), stacks);
+    }
+    for (Map.Entry<String, long[]> entry : stacks.entries()) {
+      out.write(entry.getKey());
+      out.write(' ');
+      out.write(Long.toString(entry.getValue()[0]));
+      out.write('\n');
+    }
+  }
+
+  private static void fold(String path, Merged node, CollapsedStacks stacks) {
+    long selfMicros = node.exclusiveNanos() / 1_000L;
+    if (selfMicros > 0) {
+      stacks.add(path, selfMicros);
+    }
+    for (Map.Entry<String, Merged> child : node.children.entrySet()) {
+      fold(path + ';' + child.getKey(), child.getValue(), stacks);
+    }
+  }
+
+  private static void writeTree(Merged root, Writer out) throws IOException {
+    out.write(String.format("%10s %12s %12s  %s%n", "calls", "incl(ms)", "excl(ms)", "method"));
+    for (Map.Entry<String, Merged> child : root.children.entrySet()) {
+      writeTree(child.getKey(), child.getValue(), "", out);
+    }
+  }
+
+  private static void writeTree(String name, Merged node, String indent, Writer out) throws IOException {
+    out.write(String.format("%10d %12.3f %12.3f  %s%s%n", node.calls, node.inclusiveNanos / 1e6,
+        node.exclusiveNanos() / 1e6, indent, name));
+    List<Map.Entry<String, Merged>> children = new ArrayList<>(node.children.entrySet());
+    children.sort((a, b) -> Long.compare(b.getValue().inclusiveNanos, a.getValue().inclusiveNanos));
+    for (Map.Entry<String, Merged> child : children) {
+      writeTree(child.getKey(), child.getValue(), indent + "  ", out);
+    }
+  }
+
+  /**
+   * One thread's call tree. Only its owner mutates the structure; the lock makes the
+   * counts consistent for the dump that reads them from another thread.
+   */
+  private static final class ThreadTree {
+    private final WeakReference<Thread> owner;
+    private final Node root = new Node(null, "");
+    private Node current = root;
+    private int nodes;
+    /** Calls entered after the node limit was reached; they are timed by their parent only. */
+    private int untracked;
+
+    ThreadTree(Thread owner) {
+      this.owner = new WeakReference<>(owner);
+    }
+
+    boolean ownerAlive() {
+      Thread thread = owner.get();
+      return thread != null && thread.isAlive();
+    }
+
+    synchronized void enter(String method) {
+      if (untracked > 0) {
+        untracked++;
+        return;
+      }
+      Node child = current.children.get(method);
+      if (child == null) {
+        if (nodes >= CaptureLimits.profileNodes()) {
+          untracked = 1;
+          return;
+        }
+        child = new Node(current, method);
+        current.children.put(method, child);
+        nodes++;
+      }
+      current = child;
+    }
+
+    synchronized void exit(String method, long elapsedNanos) {
+      if (untracked > 0) {
+        untracked--;
+        return;
+      }
+      // An exit with no matching enter unwinds to the nearest frame that does match.
+      Node node = current;
+      while (node != root && !node.name.equals(method)) {
+        node = node.parent;
+      }
+      if (node == root) {
+        return;
+      }
+      node.calls++;
+      node.inclusiveNanos += elapsedNanos;
+      node.parent.childNanos += elapsedNanos;
+      current = node.parent;
+    }
+
+    synchronized void mergeInto(Merged target, boolean reset) {
+      merge(root, target, reset);
+    }
+
+    private static void merge(Node node, Merged target, boolean reset) {
+      target.calls += node.calls;
+      target.inclusiveNanos += node.inclusiveNanos;
+      target.childNanos += node.childNanos;
+      if (reset) {
+        node.calls = 0L;
+        node.inclusiveNanos = 0L;
+        node.childNanos = 0L;
+      }
+      for (Node child : node.children.values()) {
+        merge(child, target.children.computeIfAbsent(child.name, ignored -> new Merged()), reset);
+      }
+    }
+  }
+
+  private static final class Node {
+    final Node parent;
+    final String name;
+    final Map<String, Node> children = new HashMap<>(4);
+    long calls;
+    long inclusiveNanos;
+    long childNanos;
+
+    Node(Node parent, String name) {
+      this.parent = parent;
+      this.name = name;
+    }
+  }
+
+  private static final class Merged {
+    final Map<String, Merged> children = new TreeMap<>();
+    long calls;
+    long inclusiveNanos;
+    long childNanos;
+
+    long exclusiveNanos() {
+      return Math.max(0L, inclusiveNanos - childNanos);
+    }
+
+    void addTo(Merged target) {
+      target.calls += calls;
+      target.inclusiveNanos += inclusiveNanos;
+      target.childNanos += childNanos;
+      for (Map.Entry<String, Merged> child : children.entrySet()) {
+        child.getValue().addTo(target.children.computeIfAbsent(child.getKey(), ignored -> new Merged()));
+      }
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package com.blueprint.relay;
+
+/**
+ * Sizes of what the agent copies out of the OMS heap (argument and result strings,
+ * JMS text, recall collections) and of the buffers and tables it keeps. Everything the
+ * agent captures becomes garbage in the client's fixed heap, so MemoryPressureMonitor
+ * lowers these while the old generation is filling up and restores them once a
+ * collection has brought it back down.
+ *
+ * At {@link #CRITICAL} arbitrary {@code toString} output is not captured at all.
+ */
+final class CaptureLimits {
+  static final int NORMAL = 0;
+  static final int PRESSURE = 1;
+  static final int CRITICAL = 2;
+
+  private static final String[] NAMES = {"normal", "pressure", "critical"};
+  private static final int[] VALUE_CHARS = {200, 100, 40};
+  private static final int[] JMS_TEXT_CHARS = {20_000, 2_000, 200};
+  private static final int[] COLLECTION_ITEMS = {Integer.MAX_VALUE, 100, 10};
+  private static final int[] PROFILE_NODES = {20_000, 5_000, 1_000};
+  private static final int[] EDT_SAMPLES = {20_000, 2_000, 200};
+  private static final int[] HTTP_ENDPOINTS = {256, 64, 16};
+  private static final int[] ENCODER_BUFFER_BYTES = {Integer.MAX_VALUE, 16_384, 4_096};
+
+  private static volatile int state = NORMAL;
+
+  private CaptureLimits() {
+  }
+
+  static int state() {
+    return state;
+  }
+
+  static String name(int state) {
+    return NAMES[state];
+  }
+
+  static void set(int next) {
+    state = next;
+  }
+
+  /** Characters kept of one formatted argument or result. */
+  static int valueChars() {
+    return VALUE_CHARS[state];
+  }
+
+  static int jmsTextChars() {
+    return JMS_TEXT_CHARS[state];
+  }
+
+  /** Elements of a recall collection copied for its log line; the rest are only counted. */
+  static int collectionItems() {
+    return COLLECTION_ITEMS[state];
+  }
+
+  /** Call-tree nodes per thread before CallTreeProfiler stops adding paths. */
+  static int profileNodes() {
+    return PROFILE_NODES[state];
+  }
+
+  /** Stack samples kept for one EDT stall. */
+  static int edtSamples() {
+    return EDT_SAMPLES[state];
+  }
+
+  /** Distinct HTTP endpoints tracked before new ones fold into {@code other}. */
+  static int httpEndpoints() {
+    return HTTP_ENDPOINTS[state];
+  }
+
+  /** Capacity above which the JSON encoder drops its grown buffer before the next line. */
+  static int encoderBufferBytes() {
+    return ENCODER_BUFFER_BYTES[state];
+  }
+
+  static boolean captureToString() {
+    return state < CRITICAL;
+  }
+}
@@ -0,0 +1,76 @@
+package com.blueprint.relay;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stack samples folded into the "collapsed" format flamegraph.pl, speedscope and
+ * async-profiler's converters read: one line per distinct stack, frames root first
+ * separated by ';', then a space and the sample count. Not thread-safe.
+ */
+final class CollapsedStacks {
+  private final Map<String, long[]> counts = new HashMap<>();
+  private long samples;
+
+  /**
+   * Adds one sample; {@code stack} is leaf first, as Thread.getStackTrace returns it.
+   */
+  void add(StackTraceElement[] stack) {
+    if (stack == null || stack.length == 0) {
+      return;
+    }
+    StringBuilder folded = new StringBuilder(stack.length * 48);
+    for (int i = stack.length - 1; i >= 0; i--) {
+      StackTraceElement frame = stack[i];
+      folded.append(frame.getClassName()).append('.').append(frame.getMethodName());
+      if (i > 0) {
+        folded.append(';');
+      }
+    }
+    add(folded.toString(), 1L);
+  }
+
+  /**
+   * Adds {@code count} samples of an already folded stack.
+   */
+  void add(String folded, long count) {
+    long[] total = counts.get(folded);
+    if (total == null) {
+      counts.put(folded, new long[] {count});
+    } else {
+      total[0] += count;
+    }
+    samples += count;
+  }
+
+  long samples() {
+    return samples;
+  }
+
+  /**
+   * Folded stacks, most sampled first.
+   */
+  List<Map.Entry<String, long[]>> entries() {
+    List<Map.Entry<String, long[]>> entries = new ArrayList<>(counts.entrySet());
+    entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+    return entries;
+  }
+
+  void write(Path file) throws IOException {
+    try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      for (Map.Entry<String, long[]> entry : entries()) {
+        out.write(entry.getKey());
+        out.write(' ');
+        out.write(Long.toString(entry.getValue()[0]));
+        out.write('\n');
+      }
+    }
+  }
+}
@@ -1,14 +1,16 @@
 package com.blueprint.relay;
 
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Waits for the Blueprint OMS Spring context to appear, watches for it to finish
- * refreshing, and then installs the controller proxy.
+ * refreshing, and then installs the controller proxy and the local control transports.
  */
 final class ContextWatcher {
   private final AtomicBoolean started = new AtomicBoolean(false);
@@ -154,13 +156,52 @@ final class ContextWatcher {
       locateOmsController(context);
       BeanProxyInstaller.install(context);
       ServiceProxyInstaller.install(context);
+      if (Boolean.parseBoolean(System.getProperty("relay.gui.proxy", "true"))) {
+        GuiControllerCglibProxyInstaller.install(context);
+      }
       MessageListenerProxyInstaller.install(context);
       MessageListenerFieldInstaller.install(context);
+      startLocalTransports(context);
     } catch (Throwable throwable) {
       Agent.log("Context ready handler failed: %s", throwable.toString());
     }
   }
 
+  /**
+   * Starts the HTTP server and the mapped control channel. Each is optional and a
+   * failure in one (e.g. port 7777 already taken) leaves the other running.
+   */
+  private void startLocalTransports(Object context) {
+    Object controller;
+    try {
+      controller = ContextUtils.getBean(context, "omsController");
+    } catch (ReflectiveOperationException ex) {
+      Throwable cause = ContextUtils.unwrapInvocationTarget(ex);
+      Agent.log("Local transports not started, omsController unavailable: %s", cause.toString());
+      return;
+    }
+    ReportInvoker reports = new ReportInvoker(controller);
+
+    int port = Integer.getInteger("relay.http.port", LocalReportServer.PORT);
+    if (port > 0) {
+      try {
+        new LocalReportServer(reports, port).start();
+        Agent.log("LocalReportServer listening on 127.0.0.1:%d", port);
+      } catch (IOException ex) {
+        Agent.log("LocalReportServer unavailable on port %d: %s", port, ex.toString());
+      }
+    }
+
+    Path controlPath = MappedControlChannel.configuredPath();
+    if (controlPath != null) {
+      try {
+        new MappedControlChannel(controlPath, reports).start();
+      } catch (IOException | RuntimeException ex) {
+        Agent.log("Mapped control channel unavailable at %s: %s", controlPath, ex.toString());
+      }
+    }
+  }
+
   private void emitContextSummary(Object context) {
     try {
       Method beanNames = context.getClass().getMethod("getBeanDefinitionNames");
@@ -0,0 +1,209 @@
+package com.blueprint.relay;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.awt.event.InvocationEvent;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Swing EDT stall detector ({@code -Drelay.edt.watchdog=true}). Once the OMS client has
+ * an event dispatch thread, an EventQueue is pushed whose dispatchEvent marks when the
+ * EDT starts and finishes each event. A watchdog thread polls those marks; when one
+ * event has run longer than {@code relay.edt.thresholdMs} (default 250) it samples the
+ * EDT stack every {@code relay.edt.sampleMs} (default 5) until the event finishes, then
+ * writes the samples as collapsed stacks next to the relay log and logs one
+ * {@code edt.stall} line pointing at the file.
+ *
+ * Nested dispatch (a modal dialog's secondary loop) counts as the EDT making progress:
+ * while the inner loop waits in getNextEvent the outer event's clock is stopped, and it
+ * restarts once an event arrives, so a dialog waiting for input is not a stall.
+ */
+final class EdtWatchdog implements Runnable {
+  private static final AtomicLong STALLS = new AtomicLong();
+  private static final AtomicLong LONGEST_STALL_MILLIS = new AtomicLong();
+
+  private final long thresholdNanos = Long.getLong("relay.edt.thresholdMs", 250L) * 1_000_000L;
+  private final long sampleMillis = Math.max(1L, Long.getLong("relay.edt.sampleMs", 5L));
+  private final int maxReports = Integer.getInteger("relay.edt.maxReports", 50);
+
+  // Written by the EDT only, read by the watchdog.
+  private volatile long dispatchStartNanos;
+  private volatile long dispatchSeq;
+  private volatile Thread edt;
+  private volatile AWTEvent current;
+  private int depth;
+
+  private int reports;
+
+  private EdtWatchdog() {
+  }
+
+  static boolean enabled() {
+    return "true".equalsIgnoreCase(System.getProperty("relay.edt.watchdog"));
+  }
+
+  static void start() {
+    EdtWatchdog watchdog = new EdtWatchdog();
+    RelayMetrics.registerGauge("relay_edt_stalls", "EDT events that ran past relay.edt.thresholdMs", STALLS::get);
+    RelayMetrics.registerGauge("relay_edt_longest_stall_ms", "Longest EDT stall seen", LONGEST_STALL_MILLIS::get);
+    Thread thread = new Thread(watchdog, "BlueprintRelay-EdtWatchdog");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @Override
+  public void run() {
+    try {
+      // Pushing a queue initialises AWT, so wait for the client to start its EDT first.
+      while (!edtRunning()) {
+        Thread.sleep(1_000L);
+      }
+      Toolkit.getDefaultToolkit().getSystemEventQueue().push(new MonitoringQueue());
+      Agent.log("EDT watchdog installed (threshold %dms, sampling every %dms)",
+          thresholdNanos / 1_000_000L, sampleMillis);
+      watch();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } catch (Throwable ex) {
+      Agent.log("EDT watchdog stopped: %s", ex.toString());
+    }
+  }
+
+  private void watch() throws InterruptedException {
+    long pollMillis = Math.max(1L, Math.min(25L, thresholdNanos / 10_000_000L));
+    while (true) {
+      long start = dispatchStartNanos;
+      long seq = dispatchSeq;
+      if (start != 0L && System.nanoTime() - start >= thresholdNanos) {
+        sample(start, seq);
+      } else {
+        Thread.sleep(pollMillis);
+      }
+    }
+  }
+
+  private void sample(long start, long seq) throws InterruptedException {
+    Thread thread = edt;
+    AWTEvent event = current;
+    CollapsedStacks stacks = new CollapsedStacks();
+    while (dispatchSeq == seq && thread != null) {
+      if (stacks.samples() < CaptureLimits.edtSamples()) {
+        stacks.add(thread.getStackTrace());
+      }
+      Thread.sleep(sampleMillis);
+    }
+    long stalledNanos = System.nanoTime() - start;
+    long stalledMillis = stalledNanos / 1_000_000L;
+    STALLS.incrementAndGet();
+    long longest = LONGEST_STALL_MILLIS.get();
+    while (stalledMillis > longest && !LONGEST_STALL_MILLIS.compareAndSet(longest, stalledMillis)) {
+      longest = LONGEST_STALL_MILLIS.get();
+    }
+
+    String report = "-";
+    if (stacks.samples() > 0 && reports < maxReports) {
+      Path file = reportPath();
+      try {
+        stacks.write(file);
+        reports++;
+        report = file.toString();
+      } catch (IOException ex) {
+        report = "failed: " + ex.getMessage();
+      }
+    }
+    RelayLogger.logExit("edt", "stall", stalledNanos, "stalled=" + stalledMillis + "ms event=" + describe(event)
+        + " samples=" + stacks.samples() + " report=" + report);
+  }
+
+  private Path reportPath() {
+    Path log = RelayLogger.logPath();
+    String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date());
+    return log.resolveSibling(log.getFileName() + ".edt-" + stamp + ".collapsed");
+  }
+
+  private static String describe(AWTEvent event) {
+    if (event == null) {
+      return "-";
+    }
+    if (event instanceof InvocationEvent) {
+      // paramString names the Runnable, which is what identifies invokeLater work.
+      String params = event.paramString();
+      int start = params.indexOf("runnable=");
+      int end = start < 0 ? -1 : params.indexOf(',', start);
+      String runnable = start < 0 ? params : end < 0 ? params.substring(start) : params.substring(start, end);
+      return "InvocationEvent[" + ArgumentFormatter.abbreviate(runnable) + "]";
+    }
+    return event.getClass().getSimpleName() + "[" + event.getID() + "]";
+  }
+
+  private static boolean edtRunning() {
+    ThreadGroup root = Thread.currentThread().getThreadGroup();
+    while (root.getParent() != null) {
+      root = root.getParent();
+    }
+    Thread[] threads = new Thread[root.activeCount() + 16];
+    int count = root.enumerate(threads, true);
+    for (int i = 0; i < count; i++) {
+      if (threads[i].getName().startsWith("AWT-EventQueue-")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void started(AWTEvent event) {
+    edt = Thread.currentThread();
+    current = event;
+    depth++;
+    dispatchSeq++;
+    dispatchStartNanos = System.nanoTime();
+  }
+
+  private void finished() {
+    depth--;
+    current = null;
+    dispatchSeq++;
+    dispatchStartNanos = depth > 0 ? System.nanoTime() : 0L;
+  }
+
+  private void waiting() {
+    if (depth > 0 && Thread.currentThread() == edt) {
+      dispatchSeq++;
+      dispatchStartNanos = 0L;
+    }
+  }
+
+  private void resumed() {
+    if (depth > 0 && Thread.currentThread() == edt) {
+      dispatchSeq++;
+      dispatchStartNanos = System.nanoTime();
+    }
+  }
+
+  private final class MonitoringQueue extends EventQueue {
+    @Override
+    public AWTEvent getNextEvent() throws InterruptedException {
+      waiting();
+      try {
+        return super.getNextEvent();
+      } finally {
+        resumed();
+      }
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+      started(event);
+      try {
+        super.dispatchEvent(event);
+      } finally {
+        finished();
+      }
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package com.blueprint.relay;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.implementation.bytecode.assign.Assigner;
+
+/**
+ * Inlined around the direct delegate call in each generated proxy method. The stream
+ * name is bound as a constant per proxy class. Every read of {@code args} builds a new
+ * array and boxes the primitives, so it is only read when ProxyCalls needs it; counters,
+ * summaries and JFR run on the method name alone.
+ */
+final class GeneratedProxyAdvice {
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target(ElementType.PARAMETER)
+  @interface Stream {
+  }
+
+  @Advice.OnMethodEnter
+  static long onEnter(@Stream String stream,
+                      @Advice.Origin("#m") String method,
+                      @Advice.Origin("#d") String descriptor,
+                      @Advice.AllArguments Object[] args) {
+    if (ProxyCalls.needsArguments(stream, method)) {
+      return ProxyCalls.enter(stream, method, descriptor, args);
+    }
+    return ProxyCalls.enter(stream, method, descriptor, null);
+  }
+
+  @Advice.OnMethodExit(onThrowable = Throwable.class)
+  static void onExit(@Stream String stream,
+                     @Advice.Origin("#m") String method,
+                     @Advice.Enter long startNanos,
+                     @Advice.Return(typing = Assigner.Typing.DYNAMIC) Object returned,
+                     @Advice.Thrown Throwable thrown) {
+    ProxyCalls.exit(stream, method, startNanos, returned, thrown);
+  }
+}
@@ -0,0 +1,133 @@
+package com.blueprint.relay;
+
+import static net.bytebuddy.matcher.ElementMatchers.isAbstract;
+import static net.bytebuddy.matcher.ElementMatchers.isDefaultMethod;
+import static net.bytebuddy.matcher.ElementMatchers.isEquals;
+import static net.bytebuddy.matcher.ElementMatchers.isHashCode;
+import static net.bytebuddy.matcher.ElementMatchers.isToString;
+import static net.bytebuddy.matcher.ElementMatchers.namedOneOf;
+import static net.bytebuddy.matcher.ElementMatchers.not;
+import static net.bytebuddy.matcher.ElementMatchers.returns;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Proxy;
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.description.modifier.Visibility;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.dynamic.scaffold.subclass.ConstructorStrategy;
+import net.bytebuddy.implementation.FieldAccessor;
+import net.bytebuddy.implementation.Implementation;
+import net.bytebuddy.implementation.MethodCall;
+import net.bytebuddy.implementation.bytecode.assign.Assigner;
+
+/**
+ * Builds a proxy class per target class that implements the target's interfaces and
+ * calls the target directly through a field typed as its concrete class, with
+ * GeneratedProxyAdvice inlined around the call. Compared with java.lang.reflect.Proxy
+ * there is no InvocationHandler hop and no Method.invoke, so the JIT can inline the
+ * target. Returns null when a class cannot be generated, and callers fall back to the
+ * JDK proxy; {@code -Drelay.proxy.generated=false} forces that fallback. OMSService
+ * proxies also get MemoizingProxyAdvice while ServiceMemo is configured.
+ */
+final class GeneratedProxyFactory {
+  private static final String TARGET_FIELD = "relayTarget";
+  private static final String NAME_MARKER = "$RelayProxy$";
+  private static final boolean ENABLED =
+      !"false".equalsIgnoreCase(System.getProperty("relay.proxy.generated", "true"));
+
+  static final GeneratedProxyFactory OMS_CONTROLLER = new GeneratedProxyFactory(ProxyCalls.OMS_CONTROLLER);
+  static final GeneratedProxyFactory OMS_SERVICE = new GeneratedProxyFactory(ProxyCalls.OMS_SERVICE);
+  static final GeneratedProxyFactory JMS = new GeneratedProxyFactory(ProxyCalls.JMS);
+
+  private final String stream;
+  private final ClassValue<Constructor<?>> constructors = new ClassValue<Constructor<?>>() {
+    @Override
+    protected Constructor<?> computeValue(Class<?> type) {
+      try {
+        return generate(type);
+      } catch (Throwable throwable) {
+        Agent.log("Generated %s proxy unavailable for %s: %s", stream, type.getName(), throwable.toString());
+        return null;
+      }
+    }
+  };
+
+  private GeneratedProxyFactory(String stream) {
+    this.stream = stream;
+  }
+
+  static boolean isGenerated(Class<?> type) {
+    return type.getName().contains(NAME_MARKER);
+  }
+
+  Object wrap(Object target) {
+    if (!ENABLED || target == null) {
+      return null;
+    }
+    Constructor<?> constructor = constructors.get(target.getClass());
+    if (constructor == null) {
+      return null;
+    }
+    try {
+      return constructor.newInstance(target);
+    } catch (ReflectiveOperationException ex) {
+      Agent.log("Generated %s proxy instantiation failed: %s", stream, ContextUtils.unwrapInvocationTarget(ex).toString());
+      return null;
+    }
+  }
+
+  private synchronized Constructor<?> generate(Class<?> type) throws ReflectiveOperationException {
+    Class<?>[] interfaces = type.getInterfaces();
+    if (interfaces.length == 0 || Proxy.isProxyClass(type) || type.getClassLoader() == null) {
+      return null;
+    }
+
+    // Same package and loader as the target, so package-private implementations work.
+    String name = type.getName() + NAME_MARKER + stream;
+    Class<?> proxyType;
+    try {
+      // ClassValue may compute twice under a race; reuse a class the first pass defined.
+      proxyType = Class.forName(name, false, type.getClassLoader());
+    } catch (ClassNotFoundException notYetDefined) {
+      Implementation traced = Advice.withCustomMapping()
+          .bind(GeneratedProxyAdvice.Stream.class, stream)
+          .to(GeneratedProxyAdvice.class)
+          .wrap(delegateToTarget());
+      boolean memo = ProxyCalls.OMS_SERVICE.equals(stream) && ServiceMemo.enabled();
+      DynamicType.Builder<Object> builder = new ByteBuddy()
+          .subclass(Object.class, ConstructorStrategy.Default.NO_CONSTRUCTORS)
+          .name(name)
+          .implement(interfaces)
+          .defineField(TARGET_FIELD, type, Visibility.PRIVATE)
+          .defineConstructor(Visibility.PUBLIC)
+          .withParameters(type)
+          .intercept(MethodCall.invoke(Object.class.getConstructor())
+              .andThen(FieldAccessor.ofField(TARGET_FIELD).setsArgumentAt(0)))
+          .method(isAbstract().or(isDefaultMethod()))
+          .intercept(memo ? Advice.to(MemoizingProxyAdvice.Mutations.class).wrap(traced) : traced);
+      if (memo) {
+        // Registered later, so it takes precedence over the catch-all above.
+        builder = builder
+            .method(isAbstract().or(isDefaultMethod()).and(namedOneOf(ServiceMemo.methods())).and(not(returns(void.class))))
+            .intercept(Advice.to(MemoizingProxyAdvice.class).wrap(traced));
+      }
+      proxyType = builder
+          .method(isEquals().or(isHashCode()).or(isToString()))
+          .intercept(delegateToTarget())
+          .make()
+          .load(type.getClassLoader(), ClassLoadingStrategy.Default.INJECTION)
+          .getLoaded();
+      Agent.log("Generated %s proxy class %s", stream, name);
+    }
+    return proxyType.getConstructor(type);
+  }
+
+  private static Implementation delegateToTarget() {
+    return MethodCall.invokeSelf()
+        .onField(TARGET_FIELD)
+        .withAllArguments()
+        .withAssigner(Assigner.DEFAULT, Assigner.Typing.DYNAMIC);
+  }
+}
@@ -1,8 +1,13 @@
 package com.blueprint.relay;
 
+import static net.bytebuddy.matcher.ElementMatchers.named;
+
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.implementation.MethodDelegation;
 
 final class GuiControllerCglibProxyInstaller {
   private static final String TARGET_BEAN_NAME = "guiController";
@@ -41,53 +46,33 @@ final class GuiControllerCglibProxyInstaller {
 
   private static Object wrapWithCglib(Object target) {
     try {
-      Class<?> enhancerClass = Class.forName("org.springframework.cglib.proxy.Enhancer");
-      Class<?> interceptorClass = Class.forName("org.springframework.cglib.proxy.MethodInterceptor");
-      Class<?> methodProxyClass = Class.forName("org.springframework.cglib.proxy.MethodProxy");
-
-      Object interceptor = java.lang.reflect.Proxy.newProxyInstance(
-          interceptorClass.getClassLoader(),
-          new Class<?>[] {interceptorClass},
-          (proxy, method, args) -> {
-            String name = method.getName();
-            if ("intercept".equals(name) && args != null && args.length == 4) {
-              Object obj = args[0];
-              Method invoked = (Method) args[1];
-              Object[] mArgs = (Object[]) args[2];
-              Object methodProxy = args[3];
-
-              if (invoked.getDeclaringClass() == Object.class) {
-                return invoked.invoke(target, mArgs);
-              }
-
-              boolean reportRelated = isReportRelated(invoked, mArgs);
-              if (reportRelated) {
-                RelayLogger.log("guiController.%s args=%s",
-                    invoked.getName(),
-                    ArgumentFormatter.summarizeArgs(mArgs));
-              }
-
-              Method invokeMethod = methodProxyClass.getMethod("invoke", Object.class, Object[].class);
-              Object result = invokeMethod.invoke(methodProxy, target, mArgs);
-
-              if (reportRelated) {
-                RelayLogger.log("guiController.%s -> %s",
-                    invoked.getName(),
-                    ArgumentFormatter.summarizeValue(result));
-              }
-              return result;
-            }
-            return null;
-          });
+      ClassLoader loader = target.getClass().getClassLoader();
+      Class<?> enhancerClass = Class.forName("org.springframework.cglib.proxy.Enhancer", false, loader);
+      Class<?> interceptorClass = Class.forName("org.springframework.cglib.proxy.MethodInterceptor", false, loader);
+      Class<?> methodProxyClass = Class.forName("org.springframework.cglib.proxy.MethodProxy", false, loader);
+
+      // Built once: intercept(obj, method, args, methodProxy) delegates directly to the
+      // handler, with no reflective dispatch on the call path.
+      GuiControllerInterceptor handler = new GuiControllerInterceptor(target, methodProxyClass);
+      Class<?> interceptorType = new ByteBuddy()
+          .subclass(Object.class)
+          .name(target.getClass().getName() + "$RelayInterceptor")
+          .implement(interceptorClass)
+          .method(named("intercept"))
+          .intercept(MethodDelegation.withDefaultConfiguration().filter(named("intercept")).to(handler))
+          .make()
+          .load(loader, ClassLoadingStrategy.Default.INJECTION)
+          .getLoaded();
+      Object interceptor = interceptorType.getDeclaredConstructor().newInstance();
 
       Object enhancer = enhancerClass.getDeclaredConstructor().newInstance();
       Method setSuperclass = enhancerClass.getMethod("setSuperclass", Class.class);
       Method setClassLoader = enhancerClass.getMethod("setClassLoader", ClassLoader.class);
-      Method setCallback = enhancerClass.getMethod("setCallback", Class.forName("org.springframework.cglib.proxy.Callback"));
+      Method setCallback = enhancerClass.getMethod("setCallback", Class.forName("org.springframework.cglib.proxy.Callback", false, loader));
       Method create = enhancerClass.getMethod("create");
 
       setSuperclass.invoke(enhancer, target.getClass());
-      setClassLoader.invoke(enhancer, target.getClass().getClassLoader());
+      setClassLoader.invoke(enhancer, loader);
       setCallback.invoke(enhancer, interceptor);
 
       Agent.log("Creating CGLIB proxy for guiController: %s", target.getClass().getName());
@@ -95,32 +80,12 @@ final class GuiControllerCglibProxyInstaller {
     } catch (ClassNotFoundException ex) {
       Agent.log("CGLIB not available on classpath: %s", ex.getMessage());
       return null;
-    } catch (ReflectiveOperationException ex) {
-      Agent.log("Failed to build CGLIB proxy for guiController: %s", ex.getMessage());
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      Agent.log("Failed to build CGLIB proxy for guiController: %s", ContextUtils.unwrapInvocationTarget(ex).toString());
       return null;
     }
   }
 
-  private static boolean isReportRelated(Method method, Object[] args) {
-    String name = method.getName().toLowerCase();
-    if (name.contains("report")) {
-      return true;
-    }
-    if (args == null) {
-      return false;
-    }
-    for (Object arg : args) {
-      if (arg == null) {
-        continue;
-      }
-      String typeName = arg.getClass().getName().toLowerCase();
-      if (typeName.contains("report")) {
-        return true;
-      }
-    }
-    return false;
-  }
-
   private static boolean replaceSingleton(Object context, Object proxy) {
     try {
       Method getBeanFactory = findMethod(context.getClass(), "getBeanFactory");
@@ -0,0 +1,128 @@
+package com.blueprint.relay;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import net.bytebuddy.implementation.bind.annotation.Argument;
+import net.bytebuddy.implementation.bind.annotation.RuntimeType;
+
+/**
+ * Call-time half of the guiController CGLIB proxy. The installer generates a tiny
+ * MethodInterceptor class that delegates straight to {@link #intercept}; whether a
+ * method is report-related is decided once per Method, and MethodProxy.invoke is
+ * resolved once into a MethodHandle. Public because the generated class lives in the
+ * GUI controller's package.
+ */
+public final class GuiControllerInterceptor {
+  private static final String STREAM = "guiController";
+  private static final MethodType INVOKE_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+  private static final ClassValue<Boolean> REPORT_TYPES = new ClassValue<Boolean>() {
+    @Override
+    protected Boolean computeValue(Class<?> type) {
+      return type.getName().toLowerCase().contains("report");
+    }
+  };
+
+  private enum Decision {
+    /** Object methods: delegate untouched. */
+    PASS_THROUGH,
+    /** Timed, never logged: no argument can be report-related. */
+    QUIET,
+    /** Timed and logged: the method name mentions reports. */
+    LOG,
+    /** Timed; logged only if a runtime argument type is report-related. */
+    CHECK_ARGS
+  }
+
+  private final Object target;
+  private final MethodHandle invoke;
+  private final ConcurrentMap<Method, Decision> decisions = new ConcurrentHashMap<>();
+
+  GuiControllerInterceptor(Object target, Class<?> methodProxyClass) throws ReflectiveOperationException {
+    this.target = target;
+    // (MethodProxy, Object, Object[])Object so invokeExact works with untyped arguments.
+    this.invoke = MethodHandles.publicLookup()
+        .findVirtual(methodProxyClass, "invoke", INVOKE_TYPE)
+        .asType(MethodType.methodType(Object.class, Object.class, Object.class, Object[].class));
+  }
+
+  @RuntimeType
+  public Object intercept(@Argument(1) Method method,
+                          @Argument(2) Object[] args,
+                          @Argument(3) Object methodProxy) throws Throwable {
+    Decision decision = decisions.get(method);
+    if (decision == null) {
+      decision = decisions.computeIfAbsent(method, GuiControllerInterceptor::decide);
+    }
+    if (decision == Decision.PASS_THROUGH) {
+      return (Object) invoke.invokeExact(methodProxy, target, args);
+    }
+
+    long work = TracingGovernor.beginWork();
+    String name = method.getName();
+    int level = TracingGovernor.level();
+    boolean logged = level >= TracingGovernor.SUMMARY
+        && (decision == Decision.LOG || (decision == Decision.CHECK_ARGS && hasReportArgument(args)));
+    if (logged && level == TracingGovernor.FULL) {
+      RelayLogger.logEnter(STREAM, name, ArgumentFormatter.summarizeArgs(args));
+    }
+    TracingGovernor.endWork(work);
+    long start = System.nanoTime();
+    Object result;
+    try {
+      result = (Object) invoke.invokeExact(methodProxy, target, args);
+    } catch (Throwable thrown) {
+      if (level >= TracingGovernor.COUNTERS) {
+        RelayMetrics.recordCall(STREAM, name, System.nanoTime() - start, true);
+      }
+      throw thrown;
+    }
+    long elapsedNanos = System.nanoTime() - start;
+    work = TracingGovernor.beginWork();
+    if (level >= TracingGovernor.COUNTERS) {
+      RelayMetrics.recordCall(STREAM, name, elapsedNanos, false);
+    }
+    if (logged) {
+      String detail = level == TracingGovernor.FULL
+          ? ArgumentFormatter.summarizeValue(result)
+          : TracingGovernor.summary(elapsedNanos);
+      RelayLogger.logExit(STREAM, name, elapsedNanos, detail);
+    }
+    TracingGovernor.endWork(work);
+    return result;
+  }
+
+  private static Decision decide(Method method) {
+    if (method.getDeclaringClass() == Object.class) {
+      return Decision.PASS_THROUGH;
+    }
+    if (method.getName().toLowerCase().contains("report")) {
+      return Decision.LOG;
+    }
+    for (Class<?> type : method.getParameterTypes()) {
+      // Only a final, non-array parameter type pins the runtime class of its argument.
+      boolean pinned = type.isPrimitive() || (Modifier.isFinal(type.getModifiers()) && !type.isArray());
+      if (!pinned || REPORT_TYPES.get(type)) {
+        return Decision.CHECK_ARGS;
+      }
+    }
+    return Decision.QUIET;
+  }
+
+  private static boolean hasReportArgument(Object[] args) {
+    if (args == null) {
+      return false;
+    }
+    for (Object arg : args) {
+      if (arg != null && REPORT_TYPES.get(arg.getClass())) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -1,20 +1,23 @@
 package com.blueprint.relay;
 
 import net.bytebuddy.asm.Advice;
+import net.bytebuddy.implementation.bytecode.assign.Assigner;
 
 public final class HttpRequestAdvice {
   private HttpRequestAdvice() {
   }
 
-  @Advice.OnMethodEnter
-  public static void onEnter(@Advice.AllArguments Object[] args) {
-    if (args == null || args.length == 0) {
-      return;
-    }
-    for (Object arg : args) {
-      if (arg != null) {
-        HttpRequestLogUtil.logHttpRequest(arg);
-      }
+  @Advice.OnMethodEnter(suppress = Throwable.class)
+  public static HttpRequestLogUtil.Call onEnter(@Advice.AllArguments Object[] args) {
+    return HttpRequestLogUtil.begin(args);
+  }
+
+  @Advice.OnMethodExit(onThrowable = Throwable.class, suppress = Throwable.class)
+  public static void onExit(@Advice.Enter HttpRequestLogUtil.Call call,
+                            @Advice.Return(typing = Assigner.Typing.DYNAMIC) Object response,
+                            @Advice.Thrown Throwable thrown) {
+    if (call != null) {
+      HttpRequestLogUtil.end(call, response, thrown);
     }
   }
 }
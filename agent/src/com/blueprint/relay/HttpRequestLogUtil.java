@@ -4,73 +4,383 @@ import java.lang.reflect.Method;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Request/response side of HttpRequestAdvice. Apache HttpClient types are reached
+ * reflectively (the agent does not compile against them) through accessors cached per
+ * class, so arguments that are not requests, such as an HttpContext, cost one
+ * ClassValue lookup. Each completed call is aggregated per host and path template
+ * ({@code /recalls/123} becomes {@code /recalls/{id}}) into a latency histogram,
+ * status counts and response bytes, rendered by RelayMetrics.
+ *
+ * HttpClient delegates between its own {@code execute} overloads, so one request can
+ * pass through several instrumented methods. A per-thread depth keeps only the
+ * outermost call: nested ones get {@link Call#NESTED} and record nothing.
+ */
 public final class HttpRequestLogUtil {
+  private static final String OTHER = "(other)";
+  private static final ConcurrentMap<String, Endpoint> ENDPOINTS = new ConcurrentHashMap<>();
+  private static final ThreadLocal<int[]> DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+
+  private static final ClassValue<RequestAccessor> REQUESTS = new ClassValue<RequestAccessor>() {
+    @Override
+    protected RequestAccessor computeValue(Class<?> type) {
+      return RequestAccessor.of(type);
+    }
+  };
+
+  private static final ClassValue<Method[]> RESPONSES = new ClassValue<Method[]>() {
+    @Override
+    protected Method[] computeValue(Class<?> type) {
+      Method statusLine = publicMethod(type, "getStatusLine");
+      Method entity = publicMethod(type, "getEntity");
+      return statusLine == null && entity == null ? null : new Method[] {statusLine, entity};
+    }
+  };
+
+  private static final ClassValue<Method> STATUS_CODES = new ClassValue<Method>() {
+    @Override
+    protected Method computeValue(Class<?> type) {
+      return publicMethod(type, "getStatusCode");
+    }
+  };
+
+  private static final ClassValue<Method> CONTENT_LENGTHS = new ClassValue<Method>() {
+    @Override
+    protected Method computeValue(Class<?> type) {
+      return publicMethod(type, "getContentLength");
+    }
+  };
+
+  private static final ClassValue<Method> HEADER_NAMES = new ClassValue<Method>() {
+    @Override
+    protected Method computeValue(Class<?> type) {
+      return publicMethod(type, "getName");
+    }
+  };
+
   private HttpRequestLogUtil() {
   }
 
-  public static void logHttpRequest(Object request) {
+  /**
+   * What the enter advice hands to the exit advice.
+   */
+  public static final class Call {
+    static final Call NESTED = new Call(null, 0L);
+
+    final String url;
+    final long startNanos;
+
+    Call(String url, long startNanos) {
+      this.url = url;
+      this.startNanos = startNanos;
+    }
+  }
+
+  static final class Endpoint {
+    final String host;
+    final String path;
+    final LatencyHistogram latency = new LatencyHistogram();
+    final ConcurrentMap<String, LongAdder> statuses = new ConcurrentHashMap<>();
+    final LongAdder responseBytes = new LongAdder();
+    final LongAdder sizedResponses = new LongAdder();
+
+    Endpoint(String host, String path) {
+      this.host = host;
+      this.path = path;
+    }
+
+    void record(long elapsedNanos, String status, long contentLength) {
+      latency.record(elapsedNanos);
+      LongAdder counter = statuses.get(status);
+      if (counter == null) {
+        counter = statuses.computeIfAbsent(status, key -> new LongAdder());
+      }
+      counter.increment();
+      if (contentLength >= 0) {
+        responseBytes.add(contentLength);
+        sizedResponses.increment();
+      }
+    }
+  }
+
+  /**
+   * Logs the request among {@code args} and returns the state for {@link #end}, or
+   * null when no argument is an HTTP request. Every non-null result must be passed to
+   * {@link #end} on the same thread.
+   */
+  public static Call begin(Object[] args) {
+    int[] depth = DEPTH.get();
+    if (depth[0] > 0) {
+      depth[0]++;
+      return Call.NESTED;
+    }
+    if (args == null) {
+      return null;
+    }
+    String hostPrefix = null;
+    Object request = null;
+    RequestAccessor requestAccessor = null;
+    for (Object arg : args) {
+      if (arg == null) {
+        continue;
+      }
+      RequestAccessor accessor = REQUESTS.get(arg.getClass());
+      if (accessor == null) {
+        continue;
+      }
+      if (accessor.getUri == null) {
+        hostPrefix = accessor.hostUri(arg);
+      } else if (request == null) {
+        request = arg;
+        requestAccessor = accessor;
+      }
+    }
     if (request == null) {
+      return null;
+    }
+
+    String url = requestAccessor.url(request);
+    if (url != null && url.startsWith("/") && hostPrefix != null) {
+      url = hostPrefix + url;
+    }
+    if (TracingGovernor.level() == TracingGovernor.FULL) {
+      List<String> headers = requestAccessor.headerNames(request);
+      if (url != null || !headers.isEmpty()) {
+        logRequest(url == null ? "(unknown)" : url, headers);
+      }
+    }
+    depth[0]++;
+    return new Call(url == null ? "(unknown)" : url, System.nanoTime());
+  }
+
+  /**
+   * Records latency, status line and entity length for a call started by {@link #begin}.
+   */
+  public static void end(Call call, Object response, Throwable thrown) {
+    long elapsedNanos = System.nanoTime() - call.startNanos;
+    DEPTH.get()[0]--;
+    if (call == Call.NESTED) {
       return;
     }
+    int statusCode = -1;
+    long contentLength = -1L;
+    if (thrown == null && response != null) {
+      Method[] accessors = RESPONSES.get(response.getClass());
+      if (accessors != null) {
+        statusCode = statusCode(invoke(accessors[0], response));
+        contentLength = contentLength(invoke(accessors[1], response));
+      }
+    }
+    String status = thrown != null ? "error" : statusCode >= 0 ? Integer.toString(statusCode) : "unknown";
+    int level = TracingGovernor.level();
+    if (level >= TracingGovernor.COUNTERS) {
+      endpoint(call.url).record(elapsedNanos, status, contentLength);
+    }
+    if (level < TracingGovernor.SUMMARY) {
+      return;
+    }
+
+    String outcome = thrown != null
+        ? "threw " + thrown.getClass().getName() + ": " + thrown.getMessage()
+        : "status=" + status + " bytes=" + (contentLength >= 0 ? Long.toString(contentLength) : "-");
+    if (RelayLogger.structured()) {
+      RelayLogger.event("http", call.url, thrown != null ? RelayEvent.Phase.THROW : RelayEvent.Phase.EXIT,
+          elapsedNanos, outcome);
+    } else {
+      Agent.log("HTTP response: %s %s %dus", call.url, outcome, elapsedNanos / 1_000L);
+    }
+  }
 
-    String url = extractUrl(request);
-    List<String> headers = extractHeaderNames(request);
+  static Map<String, Endpoint> endpoints() {
+    return ENDPOINTS;
+  }
 
-    if (url != null || !headers.isEmpty()) {
-      Agent.log("HTTP request: %s headers=%s", url == null ? "(unknown)" : url, headers);
+  private static void logRequest(String url, List<String> headers) {
+    if (RelayLogger.structured()) {
+      RelayLogger.event("http", url, RelayEvent.Phase.ENTER, -1L, "headers=" + headers);
+    } else {
+      Agent.log("HTTP request: %s headers=%s", url, headers);
     }
   }
 
-  private static String extractUrl(Object request) {
-    try {
-      Method getUri = request.getClass().getMethod("getURI");
-      Object uriObj = getUri.invoke(request);
-      if (uriObj instanceof URI) {
-        URI uri = (URI) uriObj;
-        StringBuilder sb = new StringBuilder();
-        if (uri.getScheme() != null) {
-          sb.append(uri.getScheme()).append("://");
-        }
-        if (uri.getHost() != null) {
-          sb.append(uri.getHost());
-        }
-        if (uri.getPort() != -1) {
-          sb.append(":").append(uri.getPort());
+  private static Endpoint endpoint(String url) {
+    int schemeEnd = url.indexOf("://");
+    int hostStart = schemeEnd < 0 ? 0 : schemeEnd + 3;
+    int pathStart = url.indexOf('/', hostStart);
+    String host = pathStart < 0 ? url.substring(hostStart) : url.substring(hostStart, pathStart);
+    String path = pathStart < 0 ? "/" : pathTemplate(url.substring(pathStart));
+    String key = host + path;
+    Endpoint endpoint = ENDPOINTS.get(key);
+    if (endpoint != null) {
+      return endpoint;
+    }
+    if (ENDPOINTS.size() >= CaptureLimits.httpEndpoints()) {
+      // Keep label cardinality bounded if templating misses an id-like segment.
+      return ENDPOINTS.computeIfAbsent(OTHER, other -> new Endpoint(OTHER, OTHER));
+    }
+    return ENDPOINTS.computeIfAbsent(key, ignored -> new Endpoint(host, path));
+  }
+
+  /**
+   * Replaces numeric and id-like (hex, UUID) path segments with {@code {id}}.
+   */
+  static String pathTemplate(String path) {
+    StringBuilder template = null;
+    int segmentStart = 1;
+    for (int i = 1; i <= path.length(); i++) {
+      if (i < path.length() && path.charAt(i) != '/') {
+        continue;
+      }
+      boolean id = isIdSegment(path, segmentStart, i);
+      if (id && template == null) {
+        template = new StringBuilder(path.length()).append(path, 0, segmentStart);
+      }
+      if (template != null) {
+        if (id) {
+          template.append("{id}");
+        } else {
+          template.append(path, segmentStart, i);
         }
-        if (uri.getPath() != null) {
-          sb.append(uri.getPath());
+        if (i < path.length()) {
+          template.append('/');
         }
-        return sb.toString();
       }
+      segmentStart = i + 1;
+    }
+    return template == null ? path : template.toString();
+  }
+
+  private static boolean isIdSegment(String path, int start, int end) {
+    if (end <= start) {
+      return false;
+    }
+    boolean digits = true;
+    boolean hex = end - start >= 8;
+    boolean anyDigit = false;
+    for (int i = start; i < end; i++) {
+      char c = path.charAt(i);
+      boolean digit = c >= '0' && c <= '9';
+      anyDigit |= digit;
+      digits &= digit;
+      hex &= digit || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F') || c == '-';
+    }
+    return digits || (hex && anyDigit);
+  }
+
+  private static int statusCode(Object statusLine) {
+    if (statusLine == null) {
+      return -1;
+    }
+    Object code = invoke(STATUS_CODES.get(statusLine.getClass()), statusLine);
+    return code instanceof Integer ? (Integer) code : -1;
+  }
+
+  private static long contentLength(Object entity) {
+    if (entity == null) {
+      return -1L;
+    }
+    Object length = invoke(CONTENT_LENGTHS.get(entity.getClass()), entity);
+    return length instanceof Long ? (Long) length : -1L;
+  }
+
+  private static Object invoke(Method method, Object target) {
+    if (method == null) {
+      return null;
+    }
+    try {
+      return method.invoke(target);
     } catch (Exception ignore) {
+      return null;
     }
-    return null;
   }
 
-  private static List<String> extractHeaderNames(Object request) {
-    List<String> names = new ArrayList<>();
+  /**
+   * Public no-arg method, made accessible so implementation classes that are not
+   * public themselves can still be called through it.
+   */
+  private static Method publicMethod(Class<?> type, String name) {
     try {
-      Method getAllHeaders = request.getClass().getMethod("getAllHeaders");
-      Object headersObj = getAllHeaders.invoke(request);
-      if (headersObj != null && headersObj.getClass().isArray()) {
-        Object[] headers = (Object[]) headersObj;
-        for (Object header : headers) {
+      Method method = type.getMethod(name);
+      method.setAccessible(true);
+      return method;
+    } catch (NoSuchMethodException | RuntimeException ex) {
+      return null;
+    }
+  }
+
+  /**
+   * Reflective view of an HttpRequest (getURI, getAllHeaders) or an HttpHost (toURI).
+   */
+  private static final class RequestAccessor {
+    final Method getUri;
+    final Method getAllHeaders;
+    final Method toUri;
+
+    private RequestAccessor(Method getUri, Method getAllHeaders, Method toUri) {
+      this.getUri = getUri;
+      this.getAllHeaders = getAllHeaders;
+      this.toUri = toUri;
+    }
+
+    static RequestAccessor of(Class<?> type) {
+      Method getUri = publicMethod(type, "getURI");
+      if (getUri != null) {
+        return new RequestAccessor(getUri, publicMethod(type, "getAllHeaders"), null);
+      }
+      Method toUri = publicMethod(type, "toURI");
+      if (toUri != null && publicMethod(type, "getSchemeName") != null) {
+        return new RequestAccessor(null, null, toUri);
+      }
+      return null;
+    }
+
+    String hostUri(Object host) {
+      Object uri = invoke(toUri, host);
+      return uri == null ? null : uri.toString();
+    }
+
+    String url(Object request) {
+      Object uriObj = invoke(getUri, request);
+      if (!(uriObj instanceof URI)) {
+        return null;
+      }
+      URI uri = (URI) uriObj;
+      StringBuilder sb = new StringBuilder();
+      if (uri.getScheme() != null) {
+        sb.append(uri.getScheme()).append("://");
+      }
+      if (uri.getHost() != null) {
+        sb.append(uri.getHost());
+      }
+      if (uri.getPort() != -1) {
+        sb.append(":").append(uri.getPort());
+      }
+      if (uri.getPath() != null) {
+        sb.append(uri.getPath());
+      }
+      return sb.toString();
+    }
+
+    List<String> headerNames(Object request) {
+      List<String> names = new ArrayList<>();
+      Object headersObj = invoke(getAllHeaders, request);
+      if (headersObj instanceof Object[]) {
+        for (Object header : (Object[]) headersObj) {
           if (header == null) {
             continue;
           }
-          try {
-            Method getName = header.getClass().getMethod("getName");
-            Object nameObj = getName.invoke(header);
-            if (nameObj instanceof String) {
-              names.add((String) nameObj);
-            }
-          } catch (Exception ignore) {
+          Object nameObj = invoke(HEADER_NAMES.get(header.getClass()), header);
+          if (nameObj instanceof String) {
+            names.add((String) nameObj);
           }
         }
       }
-    } catch (Exception ignore) {
+      return names;
     }
-    return names;
   }
 }
@@ -4,19 +4,42 @@ import java.lang.instrument.Instrumentation;
 import java.security.ProtectionDomain;
 import net.bytebuddy.agent.builder.AgentBuilder;
 import net.bytebuddy.asm.Advice;
+import net.bytebuddy.description.method.MethodDescription;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.matcher.ElementMatcher;
 import net.bytebuddy.matcher.ElementMatchers;
 import net.bytebuddy.utility.JavaModule;
 
 final class HttpRequestLoggerInstaller {
+  private static final ElementMatcher.Junction<TypeDescription> HTTP_REQUEST =
+      ElementMatchers.hasSuperType(ElementMatchers.named("org.apache.http.HttpRequest"));
+  private static final ElementMatcher.Junction<TypeDescription> RESPONSE_HANDLER =
+      ElementMatchers.named("org.apache.http.client.ResponseHandler");
+
+  /**
+   * Public, concrete execute overloads that take the request itself: first for
+   * execute(HttpUriRequest, ...), second for execute(HttpHost, HttpRequest, ...).
+   * Overloads taking only a host or a context are delegation plumbing. The
+   * ResponseHandler overloads return the handler's result rather than the response,
+   * so they are left out and the execute they delegate to is the one recorded.
+   */
+  private static final ElementMatcher.Junction<MethodDescription> EXECUTE = ElementMatchers.named("execute")
+      .and(ElementMatchers.isMethod())
+      .and(ElementMatchers.isPublic())
+      .and(ElementMatchers.not(ElementMatchers.isAbstract()))
+      .and(ElementMatchers.takesArgument(0, HTTP_REQUEST).or(ElementMatchers.takesArgument(1, HTTP_REQUEST)))
+      .and(ElementMatchers.not(ElementMatchers.takesArgument(1, RESPONSE_HANDLER)
+          .or(ElementMatchers.takesArgument(2, RESPONSE_HANDLER))));
+
   private HttpRequestLoggerInstaller() {
   }
 
   static void install(Instrumentation instrumentation) {
     new AgentBuilder.Default()
         .ignore(ElementMatchers.none())
-        .type(ElementMatchers.nameStartsWith("org.apache.http.impl.client"))
+        .type(ElementMatchers.nameStartsWith("org.apache.http.impl.client")
+            .and(ElementMatchers.declaresMethod(EXECUTE)))
         .transform(new AgentBuilder.Transformer() {
           @Override
           public DynamicType.Builder<?> transform(DynamicType.Builder<?> builder,
@@ -24,10 +47,7 @@ final class HttpRequestLoggerInstaller {
                                                   ClassLoader classLoader,
                                                   JavaModule module,
                                                   ProtectionDomain protectionDomain) {
-            return builder.visit(Advice.to(HttpRequestAdvice.class).on(
-                ElementMatchers.named("execute")
-                    .and(ElementMatchers.isMethod())
-            ));
+            return builder.visit(Advice.to(HttpRequestAdvice.class).on(EXECUTE));
           }
         })
         .with(new AgentBuilder.Listener() {
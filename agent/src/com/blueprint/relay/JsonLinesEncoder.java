@@ -0,0 +1,175 @@
+package com.blueprint.relay;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes {@link RelayEvent}s as one JSON object per line straight into a reusable
+ * byte buffer: strings are escaped and UTF-8 encoded char by char and numbers written
+ * digit by digit, so no intermediate String or byte[] is built per event. Not thread
+ * safe; RelayLogger uses one instance under its write lock.
+ *
+ * <pre>
+ * {"ts":1760853839408,"thread":"pool-2-thread-1","trace":"harness-0","span":"3","stream":"omsService",
+ *  "method":"getRecallList","phase":"exit","durationMicros":812,"result":"List(size=200)"}
+ * </pre>
+ *
+ * {@code trace}/{@code span} appear only inside a span and {@code durationMicros} only
+ * on exit and throw events. The detail key follows the phase: {@code args},
+ * {@code result}, {@code error} or {@code msg}.
+ */
+final class JsonLinesEncoder {
+  private static final byte[] TS = ascii("{\"ts\":");
+  private static final byte[] THREAD = ascii(",\"thread\":");
+  private static final byte[] TRACE = ascii(",\"trace\":");
+  private static final byte[] SPAN = ascii(",\"span\":");
+  private static final byte[] STREAM = ascii(",\"stream\":");
+  private static final byte[] METHOD = ascii(",\"method\":");
+  private static final byte[] PHASE = ascii(",\"phase\":");
+  private static final byte[] DURATION = ascii(",\"durationMicros\":");
+  private static final byte[] END = ascii("}\n");
+  private static final byte[] NULL = ascii("null");
+  private static final byte[] HEX = ascii("0123456789abcdef");
+  private static final byte[][] DETAIL_KEYS = new byte[RelayEvent.Phase.values().length][];
+  private static final byte[][] PHASE_NAMES = new byte[RelayEvent.Phase.values().length][];
+
+  static {
+    for (RelayEvent.Phase phase : RelayEvent.Phase.values()) {
+      DETAIL_KEYS[phase.ordinal()] = ascii(",\"" + phase.detailKey + "\":");
+      PHASE_NAMES[phase.ordinal()] = ascii("\"" + phase.jsonName + "\"");
+    }
+  }
+
+  private ByteBuffer buffer = ByteBuffer.allocate(4096);
+  private final byte[] digits = new byte[20];
+
+  /**
+   * Returns the encoded line (ending in '\n') as a flipped view of the internal
+   * buffer, valid until the next call.
+   */
+  ByteBuffer encode(RelayEvent event) {
+    if (buffer.capacity() > CaptureLimits.encoderBufferBytes()) {
+      buffer = ByteBuffer.allocate(4096);
+    }
+    buffer.clear();
+    raw(TS);
+    number(event.timeMillis);
+    raw(THREAD);
+    string(event.thread);
+    if (event.traceId != null) {
+      raw(TRACE);
+      string(event.traceId);
+      raw(SPAN);
+      string(event.spanId);
+    }
+    raw(STREAM);
+    string(event.stream);
+    if (event.method != null) {
+      raw(METHOD);
+      string(event.method);
+    }
+    raw(PHASE);
+    raw(PHASE_NAMES[event.phase.ordinal()]);
+    if (event.durationNanos >= 0) {
+      raw(DURATION);
+      number(event.durationNanos / 1_000L);
+    }
+    if (event.detail != null) {
+      raw(DETAIL_KEYS[event.phase.ordinal()]);
+      string(event.detail);
+    }
+    raw(END);
+    buffer.flip();
+    return buffer;
+  }
+
+  private void raw(byte[] bytes) {
+    ensure(bytes.length);
+    buffer.put(bytes);
+  }
+
+  private void number(long value) {
+    ensure(20);
+    if (value < 0) {
+      buffer.put((byte) '-');
+      value = -value;
+    }
+    int count = 0;
+    do {
+      digits[count++] = (byte) ('0' + (value % 10));
+      value /= 10;
+    } while (value > 0);
+    while (count > 0) {
+      buffer.put(digits[--count]);
+    }
+  }
+
+  private void string(String value) {
+    if (value == null) {
+      raw(NULL);
+      return;
+    }
+    // Worst case per char is a six byte escape for a control character.
+    ensure(value.length() * 6 + 2);
+    buffer.put((byte) '"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        buffer.put((byte) '\\').put((byte) c);
+      } else if (c >= 0x20 && c < 0x80) {
+        buffer.put((byte) c);
+      } else if (c < 0x20) {
+        escapeControl(c);
+      } else if (c < 0x800) {
+        buffer.put((byte) (0xC0 | (c >> 6))).put((byte) (0x80 | (c & 0x3F)));
+      } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        buffer.put((byte) (0xF0 | (codePoint >> 18)))
+            .put((byte) (0x80 | ((codePoint >> 12) & 0x3F)))
+            .put((byte) (0x80 | ((codePoint >> 6) & 0x3F)))
+            .put((byte) (0x80 | (codePoint & 0x3F)));
+      } else if (Character.isSurrogate(c)) {
+        buffer.put((byte) '?');
+      } else {
+        buffer.put((byte) (0xE0 | (c >> 12)))
+            .put((byte) (0x80 | ((c >> 6) & 0x3F)))
+            .put((byte) (0x80 | (c & 0x3F)));
+      }
+    }
+    buffer.put((byte) '"');
+  }
+
+  private void escapeControl(char c) {
+    buffer.put((byte) '\\');
+    switch (c) {
+      case '\n':
+        buffer.put((byte) 'n');
+        break;
+      case '\r':
+        buffer.put((byte) 'r');
+        break;
+      case '\t':
+        buffer.put((byte) 't');
+        break;
+      default:
+        buffer.put((byte) 'u').put((byte) '0').put((byte) '0')
+            .put(HEX[c >> 4]).put(HEX[c & 0xF]);
+    }
+  }
+
+  private void ensure(int needed) {
+    if (buffer.remaining() >= needed) {
+      return;
+    }
+    int capacity = Math.max(buffer.capacity() * 2, buffer.position() + needed);
+    ByteBuffer grown = ByteBuffer.allocate(capacity);
+    buffer.flip();
+    grown.put(buffer);
+    buffer = grown;
+  }
+
+  private static byte[] ascii(String text) {
+    return text.getBytes(StandardCharsets.US_ASCII);
+  }
+}
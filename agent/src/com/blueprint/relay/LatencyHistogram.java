@@ -0,0 +1,61 @@
+package com.blueprint.relay;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-bucket latency histogram with Prometheus-style upper bounds, cheap enough to
+ * update on every call: one bucket scan over a dozen bounds and three atomic adds.
+ */
+final class LatencyHistogram {
+  /** Upper bounds in nanoseconds; the last bucket (+Inf) is implicit. */
+  static final long[] BOUNDS_NANOS = {
+      1_000_000L, 2_500_000L, 5_000_000L, 10_000_000L, 25_000_000L, 50_000_000L, 100_000_000L,
+      250_000_000L, 500_000_000L, 1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L,
+      30_000_000_000L
+  };
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_NANOS.length + 1);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sumNanos = new LongAdder();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  void record(long nanos) {
+    int bucket = 0;
+    while (bucket < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[bucket]) {
+      bucket++;
+    }
+    buckets.incrementAndGet(bucket);
+    count.increment();
+    sumNanos.add(nanos);
+    long current = maxNanos.get();
+    while (nanos > current && !maxNanos.compareAndSet(current, nanos)) {
+      current = maxNanos.get();
+    }
+  }
+
+  long count() {
+    return count.sum();
+  }
+
+  long sumNanos() {
+    return sumNanos.sum();
+  }
+
+  long maxNanos() {
+    return maxNanos.get();
+  }
+
+  /**
+   * Observations at or below {@code BOUNDS_NANOS[bucket]}; pass
+   * {@code BOUNDS_NANOS.length} for the +Inf bucket.
+   */
+  long cumulativeCount(int bucket) {
+    long total = 0L;
+    for (int i = 0; i <= bucket; i++) {
+      total += buckets.get(i);
+    }
+    return total;
+  }
+}
@@ -4,10 +4,18 @@ import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.InetSocketAddress;
 import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Local HTTP server for triggering reports via the OMS controller bean.
@@ -15,31 +23,68 @@ import java.util.*;
  * Accepts requests like:
  *   GET /report?name=Daily%20Cash%20Report
  *   GET /health
+ *   GET /metrics   (Prometheus text format, see {@link RelayMetrics})
+ *   GET /profile   (call-tree profile when relay.pkg.mode=profile, see {@link CallTreeProfiler})
+ *
+ * Concurrent /report calls with identical parameters share a single omsController
+ * invocation; see {@link ReportInvoker}. Each /report request opens a trace span and
+ * returns its id in the X-Relay-Trace header.
+ *
+ * Every response carries an exact Content-Length and the request body is drained
+ * before the exchange closes, so HTTP/1.1 clients can keep their connections open
+ * across calls (see the pooled client under agent/client).
  */
 public class LocalReportServer {
-    private static final int PORT = 7777;
+    static final int PORT = 7777;
     private static final String BIND_ADDRESS = "127.0.0.1";
+    private static final int WORKER_THREADS = 8;
+    private final ReportInvoker reports;
+    private final int port;
     private HttpServer server;
-    private Object omsController;
+    private ThreadPoolExecutor executor;
 
     public LocalReportServer(Object omsController) {
-        this.omsController = omsController;
+        this(new ReportInvoker(omsController), PORT);
+    }
+
+    LocalReportServer(ReportInvoker reports, int port) {
+        this.reports = reports;
+        this.port = port;
     }
 
     public void start() throws IOException {
-        server = HttpServer.create(new InetSocketAddress(BIND_ADDRESS, PORT), 0);
+        // The JDK server writes headers and body separately; without TCP_NODELAY a reused
+        // connection stalls on Nagle + delayed ACK (~40ms per response). Read once, when
+        // the first server is created.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        server = HttpServer.create(new InetSocketAddress(BIND_ADDRESS, port), 0);
 
         server.createContext("/report", new ReportHandler());
-        server.createContext("/health", exchange -> {
-            String response = "OK";
-            exchange.sendResponseHeaders(200, response.getBytes().length);
-            exchange.getResponseBody().write(response.getBytes());
-            exchange.close();
-        });
-
-        server.setExecutor(null); // Default executor (creates new thread per request)
+        server.createContext("/health", exchange -> sendResponse(exchange, 200, "OK"));
+        server.createContext("/metrics", exchange -> sendResponse(
+            exchange, 200, RelayMetrics.renderPrometheus(), "text/plain; version=0.0.4; charset=utf-8"));
+        server.createContext("/profile", new ProfileHandler());
+
+        // The default executor runs every exchange on the dispatcher thread, which would
+        // serialise requests and leave nothing to coalesce.
+        executor = new ThreadPoolExecutor(
+            WORKER_THREADS,
+            WORKER_THREADS,
+            60L,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new WorkerThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+        final ThreadPoolExecutor pool = executor;
+        RelayMetrics.registerGauge("relay_http_queue_depth", "HTTP exchanges waiting for a worker",
+            () -> pool.getQueue().size());
+        RelayMetrics.registerGauge("relay_http_active_workers", "HTTP workers currently handling an exchange",
+            pool::getActiveCount);
+        server.setExecutor(executor);
         server.start();
-        System.out.println("[RELAY] LocalReportServer started on http://" + BIND_ADDRESS + ":" + PORT);
+        System.out.println("[RELAY] LocalReportServer started on http://" + BIND_ADDRESS + ":" + port);
     }
 
     public void stop() {
@@ -47,6 +92,57 @@ public class LocalReportServer {
             server.stop(0);
             System.out.println("[RELAY] LocalReportServer stopped");
         }
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "BlueprintRelay-ReportServer-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Write a complete text response and release the exchange. The request body is
+     * consumed first and the length is always declared up front; the JDK server only
+     * returns a connection to its idle pool when both hold.
+     */
+    static void sendResponse(HttpExchange exchange, int code, String body) throws IOException {
+        sendResponse(exchange, code, body, "text/plain; charset=UTF-8");
+    }
+
+    static void sendResponse(HttpExchange exchange, int code, String body, String contentType) throws IOException {
+        try {
+            drain(exchange.getRequestBody());
+            byte[] bytes = String.valueOf(body).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            String connection = exchange.getRequestHeaders().getFirst("Connection");
+            if (connection == null || !connection.equalsIgnoreCase("close")) {
+                exchange.getResponseHeaders().set("Connection", "keep-alive");
+            }
+            // -1 tells the JDK server there is no body; 0 would switch to chunked encoding.
+            exchange.sendResponseHeaders(code, bytes.length == 0 ? -1 : bytes.length);
+            if (bytes.length > 0) {
+                OutputStream out = exchange.getResponseBody();
+                out.write(bytes);
+                out.flush();
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] scratch = new byte[1024];
+        while (in.read(scratch) != -1) {
+            // discard
+        }
     }
 
     /**
@@ -78,10 +174,29 @@ public class LocalReportServer {
         return params;
     }
 
-    private class ReportHandler implements HttpHandler {
+    private class ProfileHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             try {
+                if (!CallTreeProfiler.enabled()) {
+                    sendResponse(exchange, 404, "Profiling is off; start with -Drelay.pkg.mode=profile");
+                    return;
+                }
+                Map<String, String> params = parseQueryString(exchange.getRequestURI().getQuery());
+                boolean tree = "tree".equals(params.get("format"));
+                boolean reset = "true".equals(params.get("reset"));
+                sendResponse(exchange, 200, CallTreeProfiler.render(tree, reset));
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    private class ReportHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try (TraceContext.Scope trace = TraceContext.open("http.report")) {
+                exchange.getResponseHeaders().set("X-Relay-Trace", trace.traceId());
                 String method = exchange.getRequestMethod();
                 if (!method.equals("GET")) {
                     sendError(exchange, 405, "Method not allowed");
@@ -99,12 +214,11 @@ public class LocalReportServer {
 
                 System.out.println("[RELAY] Report request received: " + reportName);
 
-                // Try to invoke the report method
-                Object result = invokeReport(reportName, params);
+                // Try to invoke the report method, sharing any identical call already running
+                Object result = reports.invoke(reportName, params);
 
                 String response = "Report triggered: " + reportName + "\nResult: " + (result != null ? result.toString() : "null");
-                exchange.sendResponseHeaders(200, response.getBytes().length);
-                exchange.getResponseBody().write(response.getBytes());
+                sendResponse(exchange, 200, response);
 
             } catch (Exception e) {
                 System.err.println("[RELAY] Error in report handler: " + e.getMessage());
@@ -122,60 +236,7 @@ public class LocalReportServer {
         }
 
         private void sendError(HttpExchange exchange, int code, String message) throws IOException {
-            exchange.sendResponseHeaders(code, message.getBytes().length);
-            exchange.getResponseBody().write(message.getBytes());
-            exchange.close();
-        }
-    }
-
-    /**
-     * Dynamically invoke report method on omsController
-     */
-    private Object invokeReport(String reportName, Map<String, String> params) throws Exception {
-        Class<?> controllerClass = omsController.getClass();
-
-        // Try common method signatures
-        String[] methodNames = {
-            "handleReportRequest",
-            "submitReport",
-            "generateReport",
-            "requestReport",
-            "runReport",
-            "triggerReport",
-            "exportReport",
-            "createReport"
-        };
-
-        for (String methodName : methodNames) {
-            try {
-                // Try with String parameter
-                java.lang.reflect.Method m = controllerClass.getMethod(methodName, String.class);
-                System.out.println("[RELAY] Invoking: " + methodName + "(\"" + reportName + "\")");
-                Object result = m.invoke(omsController, reportName);
-                System.out.println("[RELAY]   -> Success: " + (result != null ? result.toString() : "null"));
-                return result;
-            } catch (NoSuchMethodException e) {
-                // Try next
-            }
-
-            try {
-                // Try with Map parameter (for parameters)
-                java.lang.reflect.Method m = controllerClass.getMethod(methodName, Map.class);
-                Map<String, Object> reportParams = new HashMap<>();
-                reportParams.put("reportName", reportName);
-                reportParams.putAll(params);
-                System.out.println("[RELAY] Invoking: " + methodName + "(Map)");
-                Object result = m.invoke(omsController, reportParams);
-                System.out.println("[RELAY]   -> Success: " + (result != null ? result.toString() : "null"));
-                return result;
-            } catch (NoSuchMethodException e) {
-                // Try next
-            }
+            sendResponse(exchange, code, message);
         }
-
-        throw new NoSuchMethodException(
-            "Could not find report method on " + controllerClass.getName() +
-            ". Tried: " + Arrays.toString(methodNames)
-        );
     }
 }
@@ -0,0 +1,275 @@
+package com.blueprint.relay;
+
+import com.blueprint.relay.client.MappedFences;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Port-free local control transport: a memory-mapped file split into fixed request /
+ * response slots. Clients (see {@code MappedControlClient} under agent/client) claim a
+ * slot with a byte-range file lock, write a binary request and flip the slot state;
+ * this side polls the slot states and writes the response back in place. No sockets,
+ * no HTTP parsing and no port to collide with. After a request the poller spins briefly,
+ * then parks for up to 1 ms; once idle for {@code relay.control.idleMs} (default 1000)
+ * it backs off to one poll every 50 ms, so a quiet client is not woken constantly.
+ *
+ * <pre>
+ * header (64 bytes): int magic | int version | int slotCount | int slotSize | long heartbeatMillis
+ * slot:              int state | int sequence | int length | int reserved | payload...
+ * request payload:   byte op | u16 fieldCount | (u16 len, utf8)* -- REPORT fields: name, key, value, key, value...
+ * response payload:  byte status | (u16 len, utf8)... truncated to fit the slot
+ * </pre>
+ */
+final class MappedControlChannel {
+  static final int MAGIC = 0x42524331; // "BRC1"
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 64;
+  static final int SLOT_HEADER_SIZE = 16;
+
+  static final int OFFSET_MAGIC = 0;
+  static final int OFFSET_VERSION = 4;
+  static final int OFFSET_SLOT_COUNT = 8;
+  static final int OFFSET_SLOT_SIZE = 12;
+  static final int OFFSET_HEARTBEAT = 16;
+
+  static final int SLOT_STATE = 0;
+  static final int SLOT_SEQUENCE = 4;
+  static final int SLOT_LENGTH = 8;
+
+  static final int STATE_FREE = 0;
+  static final int STATE_REQUEST = 1;
+  static final int STATE_BUSY = 2;
+  static final int STATE_RESPONSE = 3;
+
+  static final byte OP_PING = 1;
+  static final byte OP_REPORT = 2;
+  static final byte STATUS_OK = 0;
+  static final byte STATUS_ERROR = 1;
+
+  private static final int DEFAULT_SLOTS = 8;
+  private static final int DEFAULT_SLOT_SIZE = 16 * 1024;
+  // Keep spinning this long after the last request before backing off to parking.
+  private static final long SPIN_NANOS = 200_000L;
+  private static final long MAX_PARK_NANOS = 1_000_000L;
+  private static final long MAX_IDLE_PARK_NANOS = 50_000_000L;
+  private static final long HEARTBEAT_INTERVAL_MS = 100L;
+
+  private final Path path;
+  private final ReportInvoker reports;
+  private final int slotCount;
+  private final int slotSize;
+  private final long idleNanos = Long.getLong("relay.control.idleMs", 1_000L) * 1_000_000L;
+  private final ExecutorService workers;
+  private MappedByteBuffer buffer;
+  private volatile boolean running;
+
+  MappedControlChannel(Path path, ReportInvoker reports) {
+    this.path = path;
+    this.reports = reports;
+    this.slotCount = Integer.getInteger("relay.control.slots", DEFAULT_SLOTS);
+    this.slotSize = Integer.getInteger("relay.control.slotSize", DEFAULT_SLOT_SIZE);
+    AtomicInteger counter = new AtomicInteger();
+    this.workers = Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "BlueprintRelay-Control-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Returns the configured control file, or null when the channel is switched off with
+   * {@code -Drelay.control=off}.
+   */
+  static Path configuredPath() {
+    String configured = System.getProperty("relay.control", "");
+    if ("off".equalsIgnoreCase(configured.trim()) || "false".equalsIgnoreCase(configured.trim())) {
+      return null;
+    }
+    if (configured.trim().isEmpty() || "on".equalsIgnoreCase(configured.trim())) {
+      configured = System.getProperty("user.home", ".") + "/BlueprintRelay.ctl";
+    }
+    return Paths.get(configured).toAbsolutePath();
+  }
+
+  void start() throws IOException {
+    long size = HEADER_SIZE + (long) slotCount * slotSize;
+    try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+      file.setLength(size);
+      buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+    // Requests left over from a previous process are meaningless now.
+    for (int slot = 0; slot < slotCount; slot++) {
+      int base = slotBase(slot);
+      buffer.putInt(base + SLOT_STATE, STATE_FREE);
+      buffer.putInt(base + SLOT_LENGTH, 0);
+    }
+    buffer.putInt(OFFSET_VERSION, VERSION);
+    buffer.putInt(OFFSET_SLOT_COUNT, slotCount);
+    buffer.putInt(OFFSET_SLOT_SIZE, slotSize);
+    buffer.putLong(OFFSET_HEARTBEAT, System.currentTimeMillis());
+    MappedFences.storeFence();
+    // Magic last: clients treat the file as usable only once it is set.
+    buffer.putInt(OFFSET_MAGIC, MAGIC);
+
+    running = true;
+    Thread poller = new Thread(this::pollLoop, "BlueprintRelay-ControlChannel");
+    poller.setDaemon(true);
+    poller.start();
+    Agent.log("Mapped control channel listening on %s (%d slots x %d bytes)", path, slotCount, slotSize);
+  }
+
+  void stop() {
+    running = false;
+    workers.shutdown();
+  }
+
+  private void pollLoop() {
+    long lastActivity = System.nanoTime();
+    long lastHeartbeat = 0L;
+    long parkNanos = 1_000L;
+    while (running) {
+      boolean found = false;
+      MappedFences.loadFence();
+      for (int slot = 0; slot < slotCount; slot++) {
+        int base = slotBase(slot);
+        if (buffer.getInt(base + SLOT_STATE) == STATE_REQUEST) {
+          buffer.putInt(base + SLOT_STATE, STATE_BUSY);
+          dispatch(slot);
+          found = true;
+        }
+      }
+
+      long now = System.nanoTime();
+      if (found) {
+        lastActivity = now;
+        parkNanos = 1_000L;
+        continue;
+      }
+      long nowMillis = System.currentTimeMillis();
+      if (nowMillis - lastHeartbeat >= HEARTBEAT_INTERVAL_MS) {
+        buffer.putLong(OFFSET_HEARTBEAT, nowMillis);
+        lastHeartbeat = nowMillis;
+      }
+      if (now - lastActivity < SPIN_NANOS) {
+        Thread.yield();
+        continue;
+      }
+      LockSupport.parkNanos(parkNanos);
+      parkNanos = Math.min(parkNanos * 2, now - lastActivity < idleNanos ? MAX_PARK_NANOS : MAX_IDLE_PARK_NANOS);
+    }
+  }
+
+  private void dispatch(int slot) {
+    ByteBuffer payload = slotPayload(slot);
+    int length = buffer.getInt(slotBase(slot) + SLOT_LENGTH);
+    payload.limit(Math.max(0, Math.min(length, payload.capacity())));
+    byte op = payload.remaining() > 0 ? payload.get() : 0;
+
+    if (op == OP_PING) {
+      respond(slot, STATUS_OK, "PONG");
+      return;
+    }
+    if (op != OP_REPORT) {
+      respond(slot, STATUS_ERROR, "Unknown op " + op);
+      return;
+    }
+
+    final String[] fields;
+    try {
+      fields = readFields(payload);
+    } catch (RuntimeException ex) {
+      respond(slot, STATUS_ERROR, "Malformed request: " + ex);
+      return;
+    }
+    if (fields.length == 0 || fields[0].isEmpty()) {
+      respond(slot, STATUS_ERROR, "Missing report name");
+      return;
+    }
+    // Reports can run for seconds; keep the poller free for other slots. The dispatch
+    // span ends here; the worker's child span shows the queue wait and the run itself.
+    TraceContext.Scope scope = TraceContext.open("control.dispatch");
+    try {
+      workers.execute(TraceContext.wrap(() -> runReport(slot, fields)));
+    } catch (RejectedExecutionException ex) {
+      respond(slot, STATUS_ERROR, "Control channel stopping");
+    } finally {
+      scope.close();
+    }
+  }
+
+  private void runReport(int slot, String[] fields) {
+    String reportName = fields[0];
+    Map<String, String> params = new LinkedHashMap<>();
+    params.put("name", reportName);
+    for (int i = 1; i + 1 < fields.length; i += 2) {
+      params.put(fields[i], fields[i + 1]);
+    }
+    TraceContext.Scope scope = TraceContext.open("control.report");
+    try {
+      Object result = reports.invoke(reportName, params);
+      respond(slot, STATUS_OK, "Report triggered: " + reportName + "\nResult: " + result);
+    } catch (Exception ex) {
+      Throwable cause = ContextUtils.unwrapInvocationTarget(ex);
+      Agent.log("Control channel report '%s' failed: %s", reportName, cause.toString());
+      respond(slot, STATUS_ERROR, cause.getClass().getName() + ": " + cause.getMessage());
+    } finally {
+      scope.close();
+    }
+  }
+
+  private void respond(int slot, byte status, String message) {
+    ByteBuffer payload = slotPayload(slot);
+    byte[] text = message.getBytes(StandardCharsets.UTF_8);
+    int room = Math.min(text.length, Math.min(0xFFFF, payload.capacity() - 3));
+    if (room < text.length) {
+      // Cut before a continuation byte, never inside a multi-byte character.
+      while (room > 0 && (text[room] & 0xC0) == 0x80) {
+        room--;
+      }
+    }
+    payload.put(status);
+    payload.putShort((short) room);
+    payload.put(text, 0, room);
+    int base = slotBase(slot);
+    buffer.putInt(base + SLOT_LENGTH, payload.position());
+    MappedFences.storeFence();
+    buffer.putInt(base + SLOT_STATE, STATE_RESPONSE);
+  }
+
+  private static String[] readFields(ByteBuffer payload) {
+    int count = payload.getShort() & 0xFFFF;
+    String[] fields = new String[count];
+    for (int i = 0; i < count; i++) {
+      int length = payload.getShort() & 0xFFFF;
+      byte[] bytes = new byte[length];
+      payload.get(bytes);
+      fields[i] = new String(bytes, StandardCharsets.UTF_8);
+    }
+    return fields;
+  }
+
+  private int slotBase(int slot) {
+    return HEADER_SIZE + slot * slotSize;
+  }
+
+  private ByteBuffer slotPayload(int slot) {
+    ByteBuffer view = buffer.duplicate();
+    int start = slotBase(slot) + SLOT_HEADER_SIZE;
+    view.limit(start + slotSize - SLOT_HEADER_SIZE);
+    view.position(start);
+    return view.slice();
+  }
+}
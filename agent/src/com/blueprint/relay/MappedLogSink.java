@@ -0,0 +1,468 @@
+package com.blueprint.relay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Crash-safe log sink ({@code -Drelay.log.sink=mmap}). Lines are copied into a ring of
+ * pre-allocated, memory-mapped segment files next to the log ({@code BlueprintRelay.log.seg0}
+ * ...); once a line is in the mapping it survives the JVM being killed or crashing,
+ * because the pages belong to the kernel's page cache rather than the process. A drain
+ * thread appends the segments to the text log and its index every
+ * {@code relay.log.drainMs} (default 100), so tools that read the log see lines that
+ * much later, and records how far it got in each segment's header. A segment is only
+ * reused once everything in it has reached the log; if the ring is full and the drain
+ * cannot write, lines go straight to the log, and are counted in
+ * {@code relay_log_sink_dropped_lines} if that fails as well.
+ *
+ * <pre>
+ * segment header (64 bytes): int magic | int version | long sequence | long drained
+ * record:                    int length | int crc32 | long timeMillis | line bytes
+ * </pre>
+ *
+ * A record's length is written last, so a record torn by process death reads as the
+ * end of the segment. The CRC covers the segment's sequence number, which changes each
+ * time a segment is reused, so records left over from an earlier lap fail it too.
+ *
+ * On start, {@link #open} recovers: it appends every valid record past each segment's
+ * drained mark to the log, oldest segment first, then starts a fresh lap. A process
+ * killed between a drain and its header update repeats those lines after restart. To
+ * read segments without starting the OMS client:
+ * <pre>
+ * java -cp blueprint-relay-agent.jar com.blueprint.relay.MappedLogSink [--all] BlueprintRelay.log
+ * </pre>
+ * prints the records not yet in the log ({@code --all}: every valid record).
+ */
+final class MappedLogSink {
+  static final int MAGIC = 0x42524c31; // "BRL1"
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 64;
+  static final int RECORD_HEADER_SIZE = 16;
+
+  static final int OFFSET_MAGIC = 0;
+  static final int OFFSET_VERSION = 4;
+  static final int OFFSET_SEQUENCE = 8;
+  static final int OFFSET_DRAINED = 16;
+
+  static final int RECORD_LENGTH = 0;
+  static final int RECORD_CRC = 4;
+  static final int RECORD_TIME = 8;
+
+  private static final String SEGMENT_SUFFIX = ".seg";
+  private static final long UNUSED = -1L;
+
+  private final Path logPath;
+  private final RelayLogIndex index;
+  private final Segment[] segments;
+  private final int segmentSize;
+  private final long drainMillis = Math.max(10L, Long.getLong("relay.log.drainMs", 100L));
+  private final Object drainLock = new Object();
+  // Writer state, guarded by RelayLogger's lock.
+  private final CRC32 crc = new CRC32();
+  private final byte[] crcPrefix = new byte[16];
+  private Segment current;
+  // Drain state, guarded by drainLock.
+  private int draining;
+  private long recoveredLines;
+  private final AtomicLong droppedLines = new AtomicLong();
+  private volatile boolean closed;
+
+  private MappedLogSink(Path logPath, RelayLogIndex index, int segmentCount, int segmentSize) {
+    this.logPath = logPath;
+    this.index = index;
+    this.segments = new Segment[segmentCount];
+    this.segmentSize = segmentSize;
+  }
+
+  static boolean enabled() {
+    return "mmap".equalsIgnoreCase(System.getProperty("relay.log.sink"));
+  }
+
+  /**
+   * Recovers what an earlier process left in the segments, maps a fresh lap and starts
+   * the drain thread. Returns null (the caller keeps writing the log directly) when the
+   * segments cannot be mapped.
+   */
+  static MappedLogSink open(Path logPath, RelayLogIndex index) {
+    int segmentCount = Math.max(2, Integer.getInteger("relay.log.segments", 4));
+    int segmentSize = (int) Math.min(1024L, Math.max(1L, Long.getLong("relay.log.segmentMB", 8L))) << 20;
+    MappedLogSink sink = new MappedLogSink(logPath, index, segmentCount, segmentSize);
+    try {
+      long sequence = sink.recover();
+      sink.map(sequence);
+    } catch (IOException | RuntimeException ex) {
+      // RelayLogger is still being constructed, so Agent.log is not available yet.
+      System.out.println("[RelayAgent] Mapped log sink unavailable, writing the log directly: " + ex);
+      return null;
+    }
+    Thread drainer = new Thread(sink::drainLoop, "BlueprintRelay-LogDrain");
+    drainer.setDaemon(true);
+    drainer.start();
+    RelayMetrics.registerGauge("relay_log_sink_undrained_bytes", "Mapped log bytes not yet appended to the log",
+        sink::undrainedBytes);
+    RelayMetrics.registerGauge("relay_log_sink_dropped_lines", "Lines lost because neither the ring nor the log took them",
+        sink.droppedLines::get);
+    return sink;
+  }
+
+  /** Lines found in the segments at start that had not reached the log. */
+  long recoveredLines() {
+    return recoveredLines;
+  }
+
+  long undrainedBytes() {
+    long total = 0L;
+    for (Segment segment : segments) {
+      if (segment.sequence != UNUSED) {
+        total += Math.max(0, segment.committed - segment.drained);
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Copies one line (terminator included) into the current segment. Called with
+   * RelayLogger's lock held.
+   */
+  void append(long timeMillis, byte[] bytes, int offset, int length) {
+    int size = Math.min(length, segmentSize - HEADER_SIZE - RECORD_HEADER_SIZE);
+    if (current.committed + RECORD_HEADER_SIZE + size > segmentSize && !rotate()) {
+      writeDirect(timeMillis, bytes, offset, size);
+      return;
+    }
+    int position = current.committed;
+    ByteBuffer out = current.writer;
+    out.position(position + RECORD_HEADER_SIZE);
+    out.put(bytes, offset, size);
+    out.putLong(position + RECORD_TIME, timeMillis);
+    out.putInt(position + RECORD_CRC, checksum(crc, crcPrefix, current.sequence, timeMillis, bytes, offset, size));
+    // Last: until the length is there, the record reads as the end of the segment.
+    out.putInt(position + RECORD_LENGTH, size);
+    current.committed = position + RECORD_HEADER_SIZE + size;
+  }
+
+  /** Drains what is left; called from RelayLogger's shutdown hook with its lock held. */
+  void close() {
+    closed = true;
+    synchronized (drainLock) {
+      drainAvailable();
+    }
+  }
+
+  /**
+   * Moves the writer to the next segment. Returns false, leaving the writer where it is,
+   * when that segment still holds records the drain could not get into the log.
+   */
+  private boolean rotate() {
+    Segment next = segments[(current.slot + 1) % segments.length];
+    synchronized (drainLock) {
+      // A full ring is waiting: the drainer has to catch up before the oldest segment is reused.
+      if (next.sequence != UNUSED) {
+        current.sealed = true;
+        drainAvailable();
+        if (next.sequence != UNUSED) {
+          current.sealed = false;
+          return false;
+        }
+      }
+      current.sealed = true;
+      next.reset(current.sequence + 1);
+    }
+    current = next;
+    return true;
+  }
+
+  /**
+   * Writes a line that found no room in the ring straight to the log; the draining
+   * segments are behind it, so it lands ahead of them. Counted as dropped if that fails too.
+   */
+  private void writeDirect(long timeMillis, byte[] bytes, int offset, int length) {
+    ByteArrayOutputStream line = new ByteArrayOutputStream(length);
+    line.write(bytes, offset, length);
+    List<long[]> records = new ArrayList<>(1);
+    records.add(new long[] {timeMillis, length});
+    synchronized (drainLock) {
+      try {
+        writeToLog(line, records);
+      } catch (IOException ex) {
+        droppedLines.incrementAndGet();
+        System.out.println("[RelayAgent:FALLBACK] Mapped log ring full and log not writable, line dropped: "
+            + ex.getMessage());
+      }
+    }
+  }
+
+  private void drainLoop() {
+    while (!closed) {
+      try {
+        Thread.sleep(drainMillis);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      synchronized (drainLock) {
+        drainAvailable();
+      }
+    }
+  }
+
+  /** Appends committed records to the log, segment by segment in sequence order. */
+  private void drainAvailable() {
+    while (true) {
+      Segment segment = segments[draining];
+      boolean sealed = segment.sealed;
+      int end = segment.committed;
+      if (segment.drained < end) {
+        List<long[]> records = new ArrayList<>();
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(end - segment.drained);
+        ByteBuffer in = segment.buffer.duplicate();
+        int position = segment.drained;
+        while (position < end) {
+          int length = in.getInt(position + RECORD_LENGTH);
+          byte[] line = new byte[length];
+          in.position(position + RECORD_HEADER_SIZE);
+          in.get(line);
+          batch.write(line, 0, length);
+          records.add(new long[] {in.getLong(position + RECORD_TIME), length});
+          position += RECORD_HEADER_SIZE + length;
+        }
+        try {
+          writeToLog(batch, records);
+        } catch (IOException ex) {
+          // The records stay in the segment; the next drain retries them.
+          System.out.println("[RelayAgent:FALLBACK] Failed to drain mapped log: " + ex.getMessage());
+          return;
+        }
+        segment.drained = end;
+        segment.buffer.putLong(OFFSET_DRAINED, end);
+      }
+      Segment next = segments[(segment.slot + 1) % segments.length];
+      if (!sealed || segment.drained < segment.committed || next.sequence != segment.sequence + 1) {
+        return;
+      }
+      // Everything in it is in the log: the writer may reuse it without draining inline.
+      segment.reset(UNUSED);
+      draining = next.slot;
+    }
+  }
+
+  private void writeToLog(ByteArrayOutputStream batch, List<long[]> records) throws IOException {
+    long offset = Files.exists(logPath) ? Files.size(logPath) : 0L;
+    try (OutputStream out = Files.newOutputStream(logPath, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+      batch.writeTo(out);
+    }
+    if (index == null) {
+      return;
+    }
+    byte[] bytes = batch.toByteArray();
+    int start = 0;
+    for (long[] record : records) {
+      int length = (int) record[1];
+      int textEnd = start + length;
+      while (textEnd > start && (bytes[textEnd - 1] == '\n' || bytes[textEnd - 1] == '\r')) {
+        textEnd--;
+      }
+      String line = new String(bytes, start, textEnd - start, StandardCharsets.UTF_8);
+      index.append(record[0], offset + start, length, RelayLogIndex.messageOf(line));
+      start += length;
+    }
+    // Batches are already 100ms apart; flushing each keeps the index as complete as the log.
+    index.flush();
+  }
+
+  /**
+   * Appends the undrained records of every segment an earlier process left behind and
+   * returns the sequence number for the new lap.
+   */
+  private long recover() throws IOException {
+    List<Recovered> found = new ArrayList<>();
+    for (Path file : segmentFiles(logPath)) {
+      Recovered recovered = Recovered.read(file, false);
+      if (recovered != null) {
+        found.add(recovered);
+      }
+    }
+    found.sort((a, b) -> Long.compare(a.sequence, b.sequence));
+    long maxSequence = 0L;
+    for (Recovered recovered : found) {
+      maxSequence = Math.max(maxSequence, recovered.sequence);
+      if (!recovered.records.isEmpty()) {
+        writeToLog(recovered.lines, recovered.records);
+        recoveredLines += recovered.records.size();
+      }
+    }
+    for (Path file : segmentFiles(logPath)) {
+      if (slotOf(file) >= segments.length) {
+        Files.deleteIfExists(file);
+      }
+    }
+    return maxSequence + 1;
+  }
+
+  private void map(long sequence) throws IOException {
+    for (int slot = 0; slot < segments.length; slot++) {
+      Path file = segmentPath(logPath, slot);
+      try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+        raf.setLength(segmentSize);
+        segments[slot] = new Segment(slot, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+      }
+      segments[slot].buffer.putInt(OFFSET_MAGIC, MAGIC);
+      segments[slot].buffer.putInt(OFFSET_VERSION, VERSION);
+      segments[slot].reset(UNUSED);
+    }
+    current = segments[0];
+    current.reset(sequence);
+    draining = 0;
+  }
+
+  static int checksum(CRC32 crc, byte[] prefix, long sequence, long timeMillis, byte[] bytes, int offset, int length) {
+    ByteBuffer.wrap(prefix).putLong(sequence).putLong(timeMillis);
+    crc.reset();
+    crc.update(prefix, 0, prefix.length);
+    crc.update(bytes, offset, length);
+    return (int) crc.getValue();
+  }
+
+  static Path segmentPath(Path logPath, int slot) {
+    return logPath.resolveSibling(logPath.getFileName() + SEGMENT_SUFFIX + slot);
+  }
+
+  private static List<Path> segmentFiles(Path logPath) throws IOException {
+    List<Path> files = new ArrayList<>();
+    Path dir = logPath.toAbsolutePath().getParent();
+    if (dir == null || !Files.isDirectory(dir)) {
+      return files;
+    }
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, logPath.getFileName() + SEGMENT_SUFFIX + "*")) {
+      for (Path file : stream) {
+        if (slotOf(file) >= 0) {
+          files.add(file);
+        }
+      }
+    }
+    return files;
+  }
+
+  private static int slotOf(Path file) {
+    String name = file.getFileName().toString();
+    String digits = name.substring(name.lastIndexOf(SEGMENT_SUFFIX) + SEGMENT_SUFFIX.length());
+    try {
+      return Integer.parseInt(digits);
+    } catch (NumberFormatException ex) {
+      return -1;
+    }
+  }
+
+  private static final class Segment {
+    final int slot;
+    final MappedByteBuffer buffer;
+    /** Positioned copy for the writer's bulk puts; absolute access goes through either. */
+    final ByteBuffer writer;
+    // Set by the writer under drainLock; UNUSED until the segment joins the ring.
+    volatile long sequence;
+    volatile int committed;
+    volatile boolean sealed;
+    volatile int drained;
+
+    Segment(int slot, MappedByteBuffer buffer) {
+      this.slot = slot;
+      this.buffer = buffer;
+      this.writer = buffer.duplicate();
+    }
+
+    void reset(long newSequence) {
+      sealed = false;
+      committed = HEADER_SIZE;
+      drained = HEADER_SIZE;
+      buffer.putLong(OFFSET_DRAINED, HEADER_SIZE);
+      buffer.putLong(OFFSET_SEQUENCE, newSequence);
+      sequence = newSequence;
+    }
+  }
+
+  /** Valid records read back from a segment file. */
+  private static final class Recovered {
+    final long sequence;
+    final ByteArrayOutputStream lines = new ByteArrayOutputStream();
+    final List<long[]> records = new ArrayList<>();
+
+    private Recovered(long sequence) {
+      this.sequence = sequence;
+    }
+
+    /** Returns null for a file that is not a segment or never joined a ring. */
+    static Recovered read(Path file, boolean all) throws IOException {
+      ByteBuffer buffer;
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        if (channel.size() < HEADER_SIZE) {
+          return null;
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+      long sequence = buffer.getLong(OFFSET_SEQUENCE);
+      if (buffer.getInt(OFFSET_MAGIC) != MAGIC || buffer.getInt(OFFSET_VERSION) != VERSION || sequence == UNUSED) {
+        return null;
+      }
+      Recovered recovered = new Recovered(sequence);
+      long drained = buffer.getLong(OFFSET_DRAINED);
+      int position = all || drained < HEADER_SIZE || drained > buffer.limit() ? HEADER_SIZE : (int) drained;
+      CRC32 crc = new CRC32();
+      byte[] prefix = new byte[16];
+      while (position + RECORD_HEADER_SIZE <= buffer.limit()) {
+        int length = buffer.getInt(position + RECORD_LENGTH);
+        if (length <= 0 || position + RECORD_HEADER_SIZE + length > buffer.limit()) {
+          break;
+        }
+        long timeMillis = buffer.getLong(position + RECORD_TIME);
+        byte[] line = new byte[length];
+        buffer.position(position + RECORD_HEADER_SIZE);
+        buffer.get(line);
+        if (checksum(crc, prefix, sequence, timeMillis, line, 0, length) != buffer.getInt(position + RECORD_CRC)) {
+          break;
+        }
+        recovered.lines.write(line, 0, length);
+        recovered.records.add(new long[] {timeMillis, length});
+        position += RECORD_HEADER_SIZE + length;
+      }
+      return recovered;
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    boolean all = args.length == 2 && "--all".equals(args[0]);
+    if (args.length != (all ? 2 : 1)) {
+      System.err.println("usage: MappedLogSink [--all] <relay log path>");
+      System.exit(2);
+    }
+    Path logPath = Paths.get(args[args.length - 1]).toAbsolutePath();
+    List<Recovered> found = new ArrayList<>();
+    for (Path file : segmentFiles(logPath)) {
+      Recovered recovered = Recovered.read(file, all);
+      if (recovered != null) {
+        found.add(recovered);
+      }
+    }
+    found.sort((a, b) -> Long.compare(a.sequence, b.sequence));
+    PrintStream out = System.out;
+    for (Recovered recovered : found) {
+      recovered.lines.writeTo(out);
+    }
+    out.flush();
+  }
+}
@@ -0,0 +1,42 @@
+package com.blueprint.relay;
+
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.implementation.bytecode.assign.Assigner;
+
+/**
+ * Wraps GeneratedProxyAdvice around the memoized methods of OMSService proxies while
+ * ServiceMemo is configured. A memo hit skips the logging advice and the target call and
+ * returns the memoized value. The proxy's other methods get {@link Mutations}.
+ */
+final class MemoizingProxyAdvice {
+  @Advice.OnMethodEnter(skipOn = ServiceMemo.Hit.class)
+  static Object onEnter(@Advice.FieldValue("relayTarget") Object target,
+                        @Advice.Origin("#m") String method,
+                        @Advice.AllArguments Object[] args) {
+    return ServiceMemo.before(target, method, args);
+  }
+
+  @Advice.OnMethodExit(onThrowable = Throwable.class)
+  static void onExit(@Advice.FieldValue("relayTarget") Object target,
+                     @Advice.Origin("#m") String method,
+                     @Advice.AllArguments Object[] args,
+                     @Advice.Enter Object token,
+                     @Advice.Return(readOnly = false, typing = Assigner.Typing.DYNAMIC) Object returned,
+                     @Advice.Thrown Throwable thrown) {
+    if (token instanceof ServiceMemo.Hit) {
+      returned = ((ServiceMemo.Hit) token).value;
+    } else {
+      ServiceMemo.after(target, method, args, token, returned, thrown);
+    }
+  }
+
+  /** Lets ServiceMemo flush a service's memo after one of its mutating methods. */
+  static final class Mutations {
+    @Advice.OnMethodExit(onThrowable = Throwable.class)
+    static void onExit(@Advice.FieldValue("relayTarget") Object target,
+                       @Advice.Origin("#m") String method,
+                       @Advice.Thrown Throwable thrown) {
+      ServiceMemo.after(target, method, null, null, null, thrown);
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package com.blueprint.relay;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Steps {@link CaptureLimits} with old generation occupancy. The heap pools that support
+ * usage thresholds (the tenured ones on HotSpot) get usage and collection-usage
+ * thresholds at {@code relay.memory.pressurePercent} (default 75) of their maximum,
+ * unless something else already set one; crossing either moves the limits to
+ * PRESSURE. GC notifications then track occupancy after each collection: at
+ * {@code relay.memory.criticalPercent} (default 90) after a major collection the limits
+ * go to CRITICAL, and once a collection leaves the old generation under
+ * {@code relay.memory.restorePercent} (default 60) they are restored.
+ *
+ * On by default; {@code -Drelay.memory.monitor=off} keeps the limits fixed.
+ */
+final class MemoryPressureMonitor implements NotificationListener {
+  private static final AtomicLong TRANSITIONS = new AtomicLong();
+
+  private final double pressure = percent("relay.memory.pressurePercent", 75);
+  private final double critical = Math.max(pressure, percent("relay.memory.criticalPercent", 90));
+  private final double restore = Math.min(pressure, percent("relay.memory.restorePercent", 60));
+  private final List<MemoryPoolMXBean> tenured = new ArrayList<>();
+
+  private MemoryPressureMonitor() {
+  }
+
+  static boolean enabled() {
+    return !"off".equalsIgnoreCase(System.getProperty("relay.memory.monitor"));
+  }
+
+  static void start() {
+    MemoryPressureMonitor monitor = new MemoryPressureMonitor();
+    try {
+      monitor.install();
+    } catch (Throwable ex) {
+      Agent.log("Memory pressure monitor unavailable: %s", ex.toString());
+      return;
+    }
+    RelayMetrics.registerGauge("relay_capture_limits_state", "Capture limits: 0 normal, 1 pressure, 2 critical",
+        CaptureLimits::state);
+    RelayMetrics.registerGauge("relay_capture_limits_transitions", "Capture limit changes since start",
+        TRANSITIONS::get);
+  }
+
+  private void install() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() != MemoryType.HEAP || !pool.isUsageThresholdSupported()) {
+        continue;
+      }
+      long max = pool.getUsage().getMax();
+      if (max <= 0L) {
+        continue;
+      }
+      tenured.add(pool);
+      long threshold = (long) (max * pressure);
+      if (pool.getUsageThreshold() == 0L) {
+        pool.setUsageThreshold(threshold);
+      }
+      if (pool.isCollectionUsageThresholdSupported() && pool.getCollectionUsageThreshold() == 0L) {
+        pool.setCollectionUsageThreshold(threshold);
+      }
+    }
+    if (tenured.isEmpty()) {
+      Agent.log("Memory pressure monitor: no heap pool with a usage threshold and a fixed maximum");
+      return;
+    }
+    ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(this, null, null);
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      if (collector instanceof NotificationEmitter) {
+        ((NotificationEmitter) collector).addNotificationListener(this, null, null);
+      }
+    }
+    Agent.log("Memory pressure monitor watching %s (pressure %.0f%%, critical %.0f%%, restore %.0f%%)",
+        poolNames(), pressure * 100.0, critical * 100.0, restore * 100.0);
+  }
+
+  @Override
+  public void handleNotification(Notification notification, Object handback) {
+    try {
+      String type = notification.getType();
+      if (MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type)
+          || MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type)) {
+        MemoryNotificationInfo info = MemoryNotificationInfo.from((CompositeData) notification.getUserData());
+        // Usage before a collection includes garbage, so a crossing alone never means CRITICAL.
+        step(Math.max(CaptureLimits.state(), CaptureLimits.PRESSURE), info.getPoolName(), fraction(info.getUsage()));
+      } else if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(type)) {
+        GarbageCollectionNotificationInfo info =
+            GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        afterCollection(info);
+      }
+    } catch (RuntimeException ex) {
+      Agent.log("Memory pressure notification ignored: %s", ex.toString());
+    }
+  }
+
+  private void afterCollection(GarbageCollectionNotificationInfo info) {
+    Map<String, MemoryUsage> after = info.getGcInfo().getMemoryUsageAfterGc();
+    double occupancy = 0.0;
+    String fullest = null;
+    for (MemoryPoolMXBean pool : tenured) {
+      MemoryUsage usage = after.get(pool.getName());
+      if (usage != null && fraction(usage) >= occupancy) {
+        occupancy = fraction(usage);
+        fullest = pool.getName();
+      }
+    }
+    if (fullest == null) {
+      return;
+    }
+    int current = CaptureLimits.state();
+    boolean major = info.getGcAction() != null && info.getGcAction().contains("major");
+    int next = current;
+    if (occupancy >= critical && major) {
+      next = CaptureLimits.CRITICAL;
+    } else if (occupancy >= pressure) {
+      next = Math.max(current, CaptureLimits.PRESSURE);
+    } else if (occupancy < restore) {
+      next = CaptureLimits.NORMAL;
+    }
+    step(next, fullest + " after " + info.getGcName(), occupancy);
+  }
+
+  private static synchronized void step(int next, String source, double occupancy) {
+    int current = CaptureLimits.state();
+    if (next == current) {
+      return;
+    }
+    CaptureLimits.set(next);
+    TRANSITIONS.incrementAndGet();
+    Agent.log("Capture limits %s -> %s (%s at %.0f%% of max; values %d chars, JMS text %d chars, collections %s items)",
+        CaptureLimits.name(current), CaptureLimits.name(next), source, occupancy * 100.0,
+        CaptureLimits.valueChars(), CaptureLimits.jmsTextChars(),
+        CaptureLimits.collectionItems() == Integer.MAX_VALUE ? "all" : Integer.toString(CaptureLimits.collectionItems()));
+  }
+
+  private static double fraction(MemoryUsage usage) {
+    return usage.getMax() > 0L ? usage.getUsed() / (double) usage.getMax() : 0.0;
+  }
+
+  private String poolNames() {
+    List<String> names = new ArrayList<>();
+    for (MemoryPoolMXBean pool : tenured) {
+      names.add(pool.getName());
+    }
+    return names.toString();
+  }
+
+  private static double percent(String property, int defaultPercent) {
+    int value = Integer.getInteger(property, defaultPercent);
+    return Math.min(100, Math.max(1, value)) / 100.0;
+  }
+}
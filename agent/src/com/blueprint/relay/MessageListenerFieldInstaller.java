@@ -37,7 +37,8 @@ final class MessageListenerFieldInstaller {
               cause.getClass().getName());
           continue;
         }
-        if (bean == null) {
+        // A generated proxy's target field holds the listener it already wraps.
+        if (bean == null || GeneratedProxyFactory.isGenerated(bean.getClass())) {
           continue;
         }
 
@@ -17,6 +17,17 @@ final class MessageListenerProxy implements InvocationHandler {
     if (target == null) {
       return null;
     }
+    Object generated = GeneratedProxyFactory.JMS.wrap(target);
+    if (generated != null) {
+      return generated;
+    }
+    return wrapWithJdkProxy(target);
+  }
+
+  /**
+   * Reflective fallback used when a proxy class cannot be generated for the target.
+   */
+  static Object wrapWithJdkProxy(Object target) {
     Class<?>[] interfaces = target.getClass().getInterfaces();
     if (interfaces == null || interfaces.length == 0) {
       Agent.log("Cannot proxy MessageListener -- no interfaces exposed on %s", target.getClass().getName());
@@ -35,24 +46,14 @@ final class MessageListenerProxy implements InvocationHandler {
       return method.invoke(target, args);
     }
 
-    boolean isOnMessage = "onMessage".equals(method.getName());
-    if (isOnMessage) {
-      RelayLogger.log("jms.onMessage args=%s", ArgumentFormatter.summarizeArgs(args));
-    }
-
+    long start = ProxyCalls.enter(ProxyCalls.JMS, method, args);
     try {
       Object result = method.invoke(target, args);
-      if (isOnMessage) {
-        RelayLogger.log("jms.onMessage -> %s", ArgumentFormatter.summarizeValue(result));
-      }
+      ProxyCalls.exit(ProxyCalls.JMS, method.getName(), start, result, null);
       return result;
     } catch (InvocationTargetException ex) {
       Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
-      if (isOnMessage) {
-        RelayLogger.log("jms.onMessage threw %s: %s",
-            cause.getClass().getName(),
-            cause.getMessage());
-      }
+      ProxyCalls.exit(ProxyCalls.JMS, method.getName(), start, null, cause);
       throw cause;
     }
   }
@@ -0,0 +1,15 @@
+package com.blueprint.relay;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds an {@code int} advice parameter to the instrumented method's
+ * {@link MethodRegistry} id, inlined as a constant at transformation time.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface MethodId {
+}
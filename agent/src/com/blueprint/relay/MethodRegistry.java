@@ -0,0 +1,135 @@
+package com.blueprint.relay;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.description.annotation.AnnotationDescription;
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.description.method.ParameterDescription;
+import net.bytebuddy.implementation.bytecode.constant.IntegerConstant;
+
+/**
+ * Dense integer ids for methods carrying the package advice. Each method is
+ * registered while it is transformed and its id is inlined into the advice through
+ * {@link MethodId}, so per-method state on the hot path is an array index instead of
+ * a string hash. Ids are keyed by type, name and descriptor, so overloads get ids of
+ * their own, and survive retransformation. The signature each id reports is
+ * {@code Type.method}, as in the log lines.
+ */
+public final class MethodRegistry {
+  private static final Object LOCK = new Object();
+  private static final Map<String, Integer> IDS = new HashMap<>();
+  private static volatile Entry[] entries = new Entry[256];
+  private static volatile int size;
+
+  private MethodRegistry() {
+  }
+
+  /**
+   * Per-method state, indexed by id.
+   */
+  static final class Entry {
+    final int id;
+    final String signature;
+    final RelayMetrics.CallStats stats = new RelayMetrics.CallStats();
+    /** Time not spent in instrumented callees, counted during adaptive discovery. */
+    final LongAdder selfNanos = new LongAdder();
+
+    Entry(int id, String signature) {
+      this.id = id;
+      this.signature = signature;
+    }
+  }
+
+  static int register(String key, String signature) {
+    synchronized (LOCK) {
+      Integer existing = IDS.get(key);
+      if (existing != null) {
+        return existing;
+      }
+      int id = size;
+      Entry[] current = entries;
+      if (id == current.length) {
+        Entry[] grown = new Entry[current.length * 2];
+        System.arraycopy(current, 0, grown, 0, current.length);
+        current = grown;
+      }
+      current[id] = new Entry(id, signature);
+      entries = current;
+      size = id + 1;
+      IDS.put(key, id);
+      return id;
+    }
+  }
+
+  public static String signature(int id) {
+    return entries[id].signature;
+  }
+
+  public static void recordCall(int id, long elapsedNanos, boolean failed) {
+    entries[id].stats.record(elapsedNanos, failed);
+  }
+
+  static Entry entry(int id) {
+    return entries[id];
+  }
+
+  static int size() {
+    return size;
+  }
+
+  /**
+   * Stats of methods called at least once, by signature; overloads are reported together.
+   */
+  static Map<String, RelayMetrics.CallStats> callStats() {
+    Map<String, RelayMetrics.CallStats> stats = new TreeMap<>();
+    Entry[] current = entries;
+    int count = Math.min(size, current.length);
+    for (int i = 0; i < count; i++) {
+      if (current[i].stats.calls.sum() == 0) {
+        continue;
+      }
+      RelayMetrics.CallStats previous = stats.get(current[i].signature);
+      if (previous == null) {
+        stats.put(current[i].signature, current[i].stats);
+      } else {
+        RelayMetrics.CallStats combined = new RelayMetrics.CallStats();
+        combined.add(previous);
+        combined.add(current[i].stats);
+        stats.put(current[i].signature, combined);
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * Resolves {@link MethodId} parameters: registers the instrumented method and
+   * pushes its id as an int constant.
+   */
+  static final class IdMapping implements Advice.OffsetMapping.Factory<MethodId> {
+    @Override
+    public Class<MethodId> getAnnotationType() {
+      return MethodId.class;
+    }
+
+    @Override
+    public Advice.OffsetMapping make(ParameterDescription.InDefinedShape target,
+                                     AnnotationDescription.Loadable<MethodId> annotation,
+                                     AdviceType adviceType) {
+      if (!target.getType().represents(int.class)) {
+        throw new IllegalStateException("@MethodId must annotate an int parameter: " + target);
+      }
+      return (instrumentedType, instrumentedMethod, assigner, argumentHandler, sort) -> {
+        String signature = signatureOf(instrumentedMethod);
+        int id = register(signature + instrumentedMethod.getDescriptor(), signature);
+        return new Advice.OffsetMapping.Target.ForStackManipulation(IntegerConstant.forValue(id));
+      };
+    }
+
+    private static String signatureOf(MethodDescription method) {
+      return method.getDeclaringType().asErasure().getName() + "." + method.getInternalName();
+    }
+  }
+}
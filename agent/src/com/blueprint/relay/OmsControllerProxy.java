@@ -17,7 +17,17 @@ final class OmsControllerProxy implements InvocationHandler {
     if (target == null) {
       return null;
     }
+    Object generated = GeneratedProxyFactory.OMS_CONTROLLER.wrap(target);
+    if (generated != null) {
+      return generated;
+    }
+    return wrapWithJdkProxy(target);
+  }
 
+  /**
+   * Reflective fallback used when a proxy class cannot be generated for the target.
+   */
+  static Object wrapWithJdkProxy(Object target) {
     Class<?>[] interfaces = target.getClass().getInterfaces();
     if (interfaces == null || interfaces.length == 0) {
       Agent.log("Cannot proxy omsController -- no interfaces exposed on %s", target.getClass().getName());
@@ -37,17 +47,14 @@ final class OmsControllerProxy implements InvocationHandler {
       return method.invoke(target, args);
     }
 
-    RelayLogger.log("omsController.%s args=%s", method.getName(), ArgumentFormatter.summarizeArgs(args));
+    long start = ProxyCalls.enter(ProxyCalls.OMS_CONTROLLER, method, args);
     try {
       Object result = method.invoke(target, args);
-      RelayLogger.log("omsController.%s -> %s", method.getName(), ArgumentFormatter.summarizeValue(result));
+      ProxyCalls.exit(ProxyCalls.OMS_CONTROLLER, method.getName(), start, result, null);
       return result;
     } catch (InvocationTargetException ex) {
       Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
-      RelayLogger.log("omsController.%s threw %s: %s",
-          method.getName(),
-          cause.getClass().getName(),
-          cause.getMessage());
+      ProxyCalls.exit(ProxyCalls.OMS_CONTROLLER, method.getName(), start, null, cause);
       throw cause;
     }
   }
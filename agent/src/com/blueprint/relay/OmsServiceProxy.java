@@ -6,6 +6,8 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 
 final class OmsServiceProxy implements InvocationHandler {
+  private static final boolean MEMO = ServiceMemo.enabled();
+
   private final Object target;
 
   private OmsServiceProxy(Object target) {
@@ -16,6 +18,17 @@ final class OmsServiceProxy implements InvocationHandler {
     if (target == null) {
       return null;
     }
+    Object generated = GeneratedProxyFactory.OMS_SERVICE.wrap(target);
+    if (generated != null) {
+      return generated;
+    }
+    return wrapWithJdkProxy(target);
+  }
+
+  /**
+   * Reflective fallback used when a proxy class cannot be generated for the target.
+   */
+  static Object wrapWithJdkProxy(Object target) {
     Class<?>[] interfaces = target.getClass().getInterfaces();
     if (interfaces == null || interfaces.length == 0) {
       Agent.log("Cannot proxy OMSService -- no interfaces exposed on %s", target.getClass().getName());
@@ -30,19 +43,25 @@ final class OmsServiceProxy implements InvocationHandler {
     if (method.getDeclaringClass() == Object.class) {
       return method.invoke(target, args);
     }
-    Object[] loggedArgs = RecallFormatter.summarizeArgs(method.getName(), args);
-    RelayLogger.log("omsService.%s args=%s", method.getName(), ArgumentFormatter.summarizeArgs(loggedArgs));
+
+    Object memo = MEMO ? ServiceMemo.before(target, method.getName(), args) : null;
+    if (memo instanceof ServiceMemo.Hit) {
+      return ((ServiceMemo.Hit) memo).value;
+    }
+    long start = ProxyCalls.enter(ProxyCalls.OMS_SERVICE, method, args);
     try {
       Object result = method.invoke(target, args);
-      Object loggedResult = RecallFormatter.summarizeReturn(method.getName(), result);
-      RelayLogger.log("omsService.%s -> %s", method.getName(), ArgumentFormatter.summarizeValue(loggedResult));
+      ProxyCalls.exit(ProxyCalls.OMS_SERVICE, method.getName(), start, result, null);
+      if (MEMO) {
+        ServiceMemo.after(target, method.getName(), args, memo, result, null);
+      }
       return result;
     } catch (InvocationTargetException ex) {
       Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
-      RelayLogger.log("omsService.%s threw %s: %s",
-          method.getName(),
-          cause.getClass().getName(),
-          cause.getMessage());
+      ProxyCalls.exit(ProxyCalls.OMS_SERVICE, method.getName(), start, null, cause);
+      if (MEMO) {
+        ServiceMemo.after(target, method.getName(), args, memo, null, cause);
+      }
       throw cause;
     }
   }
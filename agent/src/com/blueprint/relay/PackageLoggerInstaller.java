@@ -16,7 +16,16 @@ final class PackageLoggerInstaller {
   }
 
   static void install(Instrumentation instrumentation) {
-    new AgentBuilder.Default()
+    PackageMethodFilter filter = PackageMethodFilter.load();
+    boolean adaptive = AdaptiveInstrumentation.enabled();
+    AgentBuilder builder = new AgentBuilder.Default();
+    if (adaptive) {
+      // Registers the transformer as retransformation-capable so discovery can later
+      // re-run it with a narrower method matcher.
+      builder = builder.disableClassFormatChanges()
+          .with(AgentBuilder.RedefinitionStrategy.RETRANSFORMATION);
+    }
+    builder
         .ignore(ElementMatchers.none())
         .type(ElementMatchers.nameStartsWith(TARGET_PREFIX))
         .transform(new AgentBuilder.Transformer() {
@@ -26,10 +35,13 @@ final class PackageLoggerInstaller {
                                                   ClassLoader classLoader,
                                                   JavaModule module,
                                                   ProtectionDomain protectionDomain) {
-            return builder.visit(Advice.to(PackageMethodAdvice.class).on(
+            return builder.visit(Advice.withCustomMapping()
+                .bind(new MethodRegistry.IdMapping())
+                .to(PackageMethodAdvice.class).on(
                 ElementMatchers.isMethod()
                     .and(ElementMatchers.not(ElementMatchers.isConstructor()))
                     .and(ElementMatchers.not(ElementMatchers.isTypeInitializer()))
+                    .and(ElementMatchers.not(filter))
             ));
           }
         })
@@ -65,5 +77,10 @@ final class PackageLoggerInstaller {
           }
         })
         .installOn(instrumentation);
+    RelayMetrics.registerGauge("relay_pkg_denied_methods", "Package methods left uninstrumented by the filter",
+        filter::deniedCount);
+    if (adaptive) {
+      AdaptiveInstrumentation.start(instrumentation, filter);
+    }
   }
 }
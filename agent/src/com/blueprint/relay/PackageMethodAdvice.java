@@ -3,21 +3,53 @@ package com.blueprint.relay;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.implementation.bytecode.assign.Assigner;
 
+/**
+ * Applied with {@link MethodRegistry.IdMapping} bound, so {@code methodId} is a
+ * constant per instrumented method and the signature is only looked up when needed.
+ */
 final class PackageMethodAdvice {
   @Advice.OnMethodEnter
-  static void onEnter(@Advice.Origin("#t.#m") String signature,
+  static long onEnter(@MethodId int methodId,
                       @Advice.AllArguments Object[] args) {
-    RelayLogger.log("pkg.%s args=%s", signature, ArgumentFormatter.summarizeArgs(args));
+    long work = TracingGovernor.beginWork();
+    if (AdaptiveInstrumentation.discovering()) {
+      AdaptiveInstrumentation.enter();
+    } else if (CallTreeProfiler.enabled()) {
+      CallTreeProfiler.enter(MethodRegistry.signature(methodId));
+    } else if (TracingGovernor.level() == TracingGovernor.FULL && RelayLogger.textEnabled()) {
+      RelayLogger.logEnter("pkg", MethodRegistry.signature(methodId), ArgumentFormatter.summarizeArgs(args));
+    }
+    long startNanos = RelayJfr.begin(RelayJfr.PACKAGE, MethodRegistry.signature(methodId));
+    TracingGovernor.endWork(work);
+    return startNanos;
   }
 
   @Advice.OnMethodExit(onThrowable = Throwable.class)
-  static void onExit(@Advice.Origin("#t.#m") String signature,
+  static void onExit(@MethodId int methodId,
+                     @Advice.Enter long startNanos,
                      @Advice.Return(readOnly = false, typing = Assigner.Typing.DYNAMIC) Object returned,
                      @Advice.Thrown Throwable thrown) {
-    if (thrown != null) {
-      RelayLogger.log("pkg.%s threw %s: %s", signature, thrown.getClass().getName(), thrown.getMessage());
-      return;
+    long elapsedNanos = System.nanoTime() - startNanos;
+    long work = TracingGovernor.beginWork();
+    int level = TracingGovernor.level();
+    if (level >= TracingGovernor.COUNTERS) {
+      MethodRegistry.recordCall(methodId, elapsedNanos, thrown != null);
+    }
+    RelayJfr.end(startNanos, thrown);
+    if (AdaptiveInstrumentation.discovering()) {
+      AdaptiveInstrumentation.exit(methodId, elapsedNanos);
+    } else if (CallTreeProfiler.enabled()) {
+      CallTreeProfiler.exit(MethodRegistry.signature(methodId), elapsedNanos);
+    } else if (level >= TracingGovernor.SUMMARY && RelayLogger.textEnabled()) {
+      String signature = MethodRegistry.signature(methodId);
+      if (thrown != null) {
+        RelayLogger.logThrow("pkg", signature, elapsedNanos, thrown);
+      } else if (level == TracingGovernor.SUMMARY) {
+        RelayLogger.logExit("pkg", signature, elapsedNanos, TracingGovernor.summary(elapsedNanos));
+      } else {
+        RelayLogger.logExit("pkg", signature, elapsedNanos, ArgumentFormatter.summarizeValue(returned));
+      }
     }
-    RelayLogger.log("pkg.%s -> %s", signature, ArgumentFormatter.summarizeValue(returned));
+    TracingGovernor.endWork(work);
   }
 }
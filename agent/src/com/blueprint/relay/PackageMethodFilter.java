@@ -0,0 +1,140 @@
+package com.blueprint.relay;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.matcher.ElementMatcher;
+
+/**
+ * Persisted allow/deny list for the package advice, keyed like its log lines
+ * ({@code Type.method}, so overloads share an entry). Denied methods are left
+ * uninstrumented; allowed ones are never denied by adaptive discovery. The file
+ * ({@code relay.pkg.filter}, default {@code BlueprintRelay.log.pkg-filter} next to the
+ * log) is applied on every start when present and may be edited by hand:
+ *
+ * <pre>
+ * deny com.blueprint.oms.a.a.RecallAssembler.isPageBoundary   # 21000 calls, 80ns self
+ * allow com.blueprint.oms.a.a.RecallAssembler.getPageSize
+ * </pre>
+ */
+final class PackageMethodFilter implements ElementMatcher<MethodDescription> {
+  private final Path file;
+  private final Set<String> denied = Collections.newSetFromMap(new ConcurrentHashMap<>());
+  private final Set<String> allowed = Collections.newSetFromMap(new ConcurrentHashMap<>());
+  private final Map<String, String> notes = new TreeMap<>();
+
+  private PackageMethodFilter(Path file) {
+    this.file = file;
+  }
+
+  static PackageMethodFilter load() {
+    String configured = System.getProperty("relay.pkg.filter");
+    Path log = RelayLogger.logPath();
+    Path path = configured != null && !configured.trim().isEmpty()
+        ? log.resolveSibling(configured.trim())
+        : log.resolveSibling(log.getFileName() + ".pkg-filter");
+    PackageMethodFilter filter = new PackageMethodFilter(path);
+    if (Files.isRegularFile(path)) {
+      try {
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+          filter.parse(line);
+        }
+        Agent.log("Loaded package filter %s (%d denied, %d allowed)", path, filter.denied.size(), filter.allowed.size());
+      } catch (IOException ex) {
+        Agent.log("Package filter %s unreadable: %s", path, ex.toString());
+      }
+    }
+    return filter;
+  }
+
+  /**
+   * True for methods whose advice should be left out.
+   */
+  @Override
+  public boolean matches(MethodDescription method) {
+    return !denied.isEmpty()
+        && denied.contains(method.getDeclaringType().asErasure().getName() + "." + method.getInternalName());
+  }
+
+  boolean isDenied(String signature) {
+    return denied.contains(signature);
+  }
+
+  boolean isAllowed(String signature) {
+    return allowed.contains(signature);
+  }
+
+  int deniedCount() {
+    return denied.size();
+  }
+
+  /**
+   * Denies {@code signature} unless it is allowed; allow entries win regardless of
+   * their order in the file.
+   */
+  void deny(String signature, String note) {
+    if (allowed.contains(signature)) {
+      return;
+    }
+    denied.add(signature);
+    synchronized (notes) {
+      notes.put(signature, note);
+    }
+  }
+
+  Path file() {
+    return file;
+  }
+
+  void save() throws IOException {
+    List<String> lines = new ArrayList<>();
+    lines.add("# Blueprint relay package advice filter: deny removes the advice from Type.method,");
+    lines.add("# allow keeps it even when adaptive discovery finds the method trivial.");
+    synchronized (notes) {
+      for (String signature : sorted(allowed)) {
+        lines.add("allow " + signature);
+      }
+      for (String signature : sorted(denied)) {
+        String note = notes.get(signature);
+        lines.add("deny " + signature + (note == null ? "" : "   # " + note));
+      }
+    }
+    Files.write(file, lines, StandardCharsets.UTF_8);
+  }
+
+  private void parse(String line) {
+    int comment = line.indexOf('#');
+    String note = comment < 0 ? null : line.substring(comment + 1).trim();
+    String entry = (comment < 0 ? line : line.substring(0, comment)).trim();
+    if (entry.isEmpty()) {
+      return;
+    }
+    int space = entry.indexOf(' ');
+    if (space < 0) {
+      return;
+    }
+    String verb = entry.substring(0, space);
+    String signature = entry.substring(space + 1).trim();
+    if ("deny".equals(verb)) {
+      deny(signature, note);
+    } else if ("allow".equals(verb)) {
+      allowed.add(signature);
+      denied.remove(signature);
+    }
+  }
+
+  private static List<String> sorted(Set<String> signatures) {
+    List<String> list = new ArrayList<>(signatures);
+    Collections.sort(list);
+    return list;
+  }
+}
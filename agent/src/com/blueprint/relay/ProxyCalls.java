@@ -0,0 +1,105 @@
+package com.blueprint.relay;
+
+import java.lang.reflect.Method;
+
+/**
+ * Logging and timing shared by every proxy flavour. The JDK proxy handlers call it
+ * directly; generated proxies inline GeneratedProxyAdvice into classes that live in
+ * OMS packages, which is why this is public.
+ */
+public final class ProxyCalls {
+  static final String OMS_CONTROLLER = "omsController";
+  static final String OMS_SERVICE = "omsService";
+  static final String JMS = "jms";
+
+  private ProxyCalls() {
+  }
+
+  /**
+   * Logs the call and returns its start time for {@link #exit}. Controller calls and
+   * JMS deliveries are trace entry points and open a span here that exit closes; spans
+   * are kept at every TracingGovernor level so enter and exit stay paired. With
+   * {@code relay.capture} on, the call is also written to the CallJournal, with the
+   * method's JVM {@code descriptor} (null if unknown) so replay can pick the overload.
+   */
+  public static long enter(String stream, String method, String descriptor, Object[] args) {
+    // Capture is outside the governor's bracket: stepping tracing down would not reduce it.
+    CallJournal.enter(stream, method, descriptor, args);
+    long work = TracingGovernor.beginWork();
+    if (OMS_CONTROLLER.equals(stream)) {
+      TraceContext.enter("omsController." + method, null);
+    } else if (JMS.equals(stream) && "onMessage".equals(method)) {
+      TraceContext.enter("jms.onMessage", args != null && args.length > 0 ? TraceContext.correlationId(args[0]) : null);
+    }
+    // Arguments are only formatted at FULL, and not while text logging is paused for a JFR recording.
+    boolean text = TracingGovernor.level() == TracingGovernor.FULL && RelayLogger.textEnabled();
+    if (text && OMS_SERVICE.equals(stream)) {
+      Object[] loggedArgs = RecallFormatter.summarizeArgs(method, args);
+      RelayLogger.logEnter(OMS_SERVICE, method, ArgumentFormatter.summarizeArgs(loggedArgs));
+    } else if (text && (!JMS.equals(stream) || "onMessage".equals(method))) {
+      RelayLogger.logEnter(stream, method, ArgumentFormatter.summarizeArgs(args));
+    }
+    long startNanos = RelayJfr.begin(jfrKind(stream, method), method);
+    TracingGovernor.endWork(work);
+    return startNanos;
+  }
+
+  /** For the JDK proxy handlers; the descriptor is only built while capturing. */
+  static long enter(String stream, Method method, Object[] args) {
+    String descriptor = CallJournal.capturing() ? CallJournal.descriptor(method) : null;
+    return enter(stream, method.getName(), descriptor, args);
+  }
+
+  /**
+   * Whether {@link #enter} would read the call's arguments: for capture, for the JMS
+   * correlation id, and for argument logging at FULL. Generated proxies build the
+   * argument array only when this is true and pass null otherwise.
+   */
+  public static boolean needsArguments(String stream, String method) {
+    if (CallJournal.capturing()) {
+      return true;
+    }
+    boolean onMessage = JMS.equals(stream) && "onMessage".equals(method);
+    if (onMessage) {
+      return true;
+    }
+    return !JMS.equals(stream) && TracingGovernor.level() == TracingGovernor.FULL && RelayLogger.textEnabled();
+  }
+
+  public static void exit(String stream, String method, long startNanos, Object result, Throwable thrown) {
+    long elapsedNanos = System.nanoTime() - startNanos;
+    CallJournal.exit(elapsedNanos, thrown);
+    long work = TracingGovernor.beginWork();
+    int level = TracingGovernor.level();
+    if (level >= TracingGovernor.COUNTERS) {
+      RelayMetrics.recordCall(stream, method, elapsedNanos, thrown != null);
+    }
+    RelayJfr.end(startNanos, thrown);
+    boolean onMessage = JMS.equals(stream) && "onMessage".equals(method);
+    boolean logged = !JMS.equals(stream) || onMessage;
+    if (logged && level >= TracingGovernor.SUMMARY && RelayLogger.textEnabled()) {
+      if (thrown != null) {
+        RelayLogger.logThrow(stream, method, elapsedNanos, thrown);
+      } else if (level == TracingGovernor.SUMMARY) {
+        RelayLogger.logExit(stream, method, elapsedNanos, TracingGovernor.summary(elapsedNanos));
+      } else {
+        Object loggedResult = OMS_SERVICE.equals(stream) ? RecallFormatter.summarizeReturn(method, result) : result;
+        RelayLogger.logExit(stream, method, elapsedNanos, ArgumentFormatter.summarizeValue(loggedResult));
+      }
+    }
+    if (onMessage || OMS_CONTROLLER.equals(stream)) {
+      TraceContext.exit();
+    }
+    TracingGovernor.endWork(work);
+  }
+
+  private static int jfrKind(String stream, String method) {
+    if (OMS_CONTROLLER.equals(stream)) {
+      return RelayJfr.CONTROLLER;
+    }
+    if (OMS_SERVICE.equals(stream)) {
+      return RelayJfr.SERVICE;
+    }
+    return JMS.equals(stream) && "onMessage".equals(method) ? RelayJfr.JMS : RelayJfr.NONE;
+  }
+}
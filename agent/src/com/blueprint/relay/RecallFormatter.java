@@ -47,15 +47,16 @@ final class RecallFormatter {
       return null;
     }
     if (value instanceof Iterable<?>) {
-      return new RecallCollectionDetails((Iterable<?>) value);
+      return new RecallCollectionDetails((Iterable<?>) value, 0);
     }
     if (value.getClass().isArray()) {
       int length = java.lang.reflect.Array.getLength(value);
-      List<Object> items = new ArrayList<>(length);
-      for (int i = 0; i < length; i++) {
+      int copied = Math.min(length, CaptureLimits.collectionItems());
+      List<Object> items = new ArrayList<>(copied);
+      for (int i = 0; i < copied; i++) {
         items.add(java.lang.reflect.Array.get(value, i));
       }
-      return new RecallCollectionDetails(items);
+      return new RecallCollectionDetails(items, length - copied);
     }
     return summarizeSingle(value);
   }
@@ -132,12 +133,24 @@ final class RecallFormatter {
 
   private static final class RecallCollectionDetails implements ArgumentFormatter.DetailedValue {
     private final List<Object> items;
+    /** Elements counted but not copied, see {@link CaptureLimits#collectionItems}. */
+    private final int omitted;
 
-    RecallCollectionDetails(Iterable<?> source) {
+    RecallCollectionDetails(Iterable<?> source, int alreadyOmitted) {
+      int limit = CaptureLimits.collectionItems();
       this.items = new ArrayList<>();
+      int skipped = alreadyOmitted;
       for (Object item : source) {
-        this.items.add(summarizeSingle(item));
+        if (items.size() < limit) {
+          items.add(summarizeSingle(item));
+        } else if (source instanceof java.util.Collection<?>) {
+          skipped += ((java.util.Collection<?>) source).size() - items.size();
+          break;
+        } else {
+          skipped++;
+        }
       }
+      this.omitted = skipped;
     }
 
     @Override
@@ -154,6 +167,9 @@ final class RecallFormatter {
           builder.append(String.valueOf(item));
         }
       }
+      if (omitted > 0) {
+        builder.append(items.isEmpty() ? "" : ", ").append("... ").append(omitted).append(" more");
+      }
       builder.append(']');
       return builder.toString();
     }
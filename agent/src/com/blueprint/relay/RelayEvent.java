@@ -0,0 +1,65 @@
+package com.blueprint.relay;
+
+/**
+ * One relay log event in structured form. Captured on the calling thread (thread name
+ * and trace ids are thread-local) and encoded by {@link JsonLinesEncoder} under the
+ * logger lock when {@code -Drelay.log.format=json}.
+ */
+final class RelayEvent {
+  enum Phase {
+    ENTER("enter", "args", " args="),
+    EXIT("exit", "result", " -> "),
+    THROW("throw", "error", " threw "),
+    LOG("log", "msg", "");
+
+    final String jsonName;
+    final String detailKey;
+    final String textSeparator;
+
+    Phase(String jsonName, String detailKey, String textSeparator) {
+      this.jsonName = jsonName;
+      this.detailKey = detailKey;
+      this.textSeparator = textSeparator;
+    }
+  }
+
+  /** Set by RelayLogger under its lock, so events are written and indexed in time order. */
+  long timeMillis;
+  final String thread;
+  final String traceId;
+  final String spanId;
+  final String stream;
+  final String method;
+  final Phase phase;
+  /** Negative when the event has no duration (enter, log). */
+  final long durationNanos;
+  final String detail;
+
+  private RelayEvent(String thread, String traceId, String spanId, String stream,
+                     String method, Phase phase, long durationNanos, String detail) {
+    this.thread = thread;
+    this.traceId = traceId;
+    this.spanId = spanId;
+    this.stream = stream;
+    this.method = method;
+    this.phase = phase;
+    this.durationNanos = durationNanos;
+    this.detail = detail;
+  }
+
+  static RelayEvent capture(String stream, String method, Phase phase, long durationNanos, String detail) {
+    return new RelayEvent(Thread.currentThread().getName(),
+        TraceContext.currentTraceId(), TraceContext.currentSpanId(), stream, method, phase, durationNanos, detail);
+  }
+
+  /**
+   * The same line the text format has always written for this event, without the
+   * timestamp and trace prefix.
+   */
+  String toText() {
+    if (phase == Phase.LOG) {
+      return detail;
+    }
+    return stream + "." + method + phase.textSeparator + detail;
+  }
+}
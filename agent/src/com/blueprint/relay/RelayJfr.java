@@ -0,0 +1,146 @@
+package com.blueprint.relay;
+
+import java.util.Arrays;
+
+/**
+ * JDK Flight Recorder events for traced calls, report jobs and installer phases. The
+ * OMS client's JDK ships JFR, whose thread-local event buffers are far cheaper than
+ * relay log lines, so a recording (e.g. {@code -XX:StartFlightRecording} or
+ * {@code jcmd <pid> JFR.start}) gives always-on call timing that opens in JMC.
+ *
+ * Events are only created while a recording is running. Callers pair
+ * {@link #begin} with {@link #end} on the same thread, passing back the start time
+ * begin returned; a per-thread stack keyed by that start time holds the open events,
+ * and an end whose begin was lost unwinds past the stale frames instead of
+ * mismatching them.
+ *
+ * {@code -Drelay.jfr=off} disables the events. With {@code -Drelay.jfr.text=off}
+ * RelayLogger writes nothing while a recording is running.
+ *
+ * Nothing here references jdk.jfr directly; {@link RelayJfrEvents} is only loaded
+ * once JFR is known to be present, so the agent still runs on a JDK without it.
+ */
+public final class RelayJfr {
+  public static final int CONTROLLER = 0;
+  public static final int SERVICE = 1;
+  public static final int JMS = 2;
+  public static final int PACKAGE = 3;
+  public static final int REPORT = 4;
+  public static final int INSTALLER = 5;
+  /** Pass to {@link #begin} for calls that are timed but have no event type. */
+  public static final int NONE = -1;
+
+  private static final int MAX_DEPTH = 64;
+  private static final boolean ENABLED = jfrEnabled();
+  private static final boolean TEXT_OFF_WHILE_RECORDING = "off".equalsIgnoreCase(System.getProperty("relay.jfr.text"));
+  private static final ThreadLocal<Frames> FRAMES = new ThreadLocal<>();
+  private static volatile boolean recording;
+
+  static {
+    if (ENABLED) {
+      try {
+        RelayJfrEvents.watchRecordings();
+      } catch (Throwable ex) {
+        Agent.log("JFR events unavailable: %s", ex.toString());
+      }
+    }
+  }
+
+  private RelayJfr() {
+  }
+
+  /**
+   * Starts an event of {@code kind} when a recording is running and returns the start
+   * time for {@link #end}.
+   */
+  public static long begin(int kind, String method) {
+    long startNanos = System.nanoTime();
+    if (recording && kind >= 0) {
+      Frames frames = FRAMES.get();
+      if (frames == null) {
+        frames = new Frames();
+        FRAMES.set(frames);
+      }
+      frames.push(startNanos, RelayJfrEvents.begin(kind, method));
+    }
+    return startNanos;
+  }
+
+  public static void end(long startNanos, Throwable thrown) {
+    if (!ENABLED) {
+      return;
+    }
+    Frames frames = FRAMES.get();
+    if (frames == null || frames.size == 0) {
+      return;
+    }
+    Object event = frames.pop(startNanos);
+    if (event != null) {
+      RelayJfrEvents.end(event, thrown);
+    }
+  }
+
+  /**
+   * True while text logging should be skipped in favour of the running recording.
+   */
+  static boolean textSuppressed() {
+    return TEXT_OFF_WHILE_RECORDING && recording;
+  }
+
+  static void recordingChanged(boolean running) {
+    if (running != recording) {
+      recording = running;
+      Agent.log("JFR recording %s; relay events %s", running ? "running" : "stopped",
+          running ? "enabled" + (TEXT_OFF_WHILE_RECORDING ? ", text log paused" : "") : "disabled");
+    }
+  }
+
+  private static boolean jfrEnabled() {
+    if ("off".equalsIgnoreCase(System.getProperty("relay.jfr"))) {
+      return false;
+    }
+    try {
+      Class.forName("jdk.jfr.FlightRecorder", false, RelayJfr.class.getClassLoader());
+      return true;
+    } catch (ClassNotFoundException | LinkageError ex) {
+      return false;
+    }
+  }
+
+  /**
+   * Open events of one thread, innermost last.
+   */
+  private static final class Frames {
+    final long[] starts = new long[MAX_DEPTH];
+    final Object[] events = new Object[MAX_DEPTH];
+    int size;
+
+    void push(long startNanos, Object event) {
+      if (size == MAX_DEPTH) {
+        // Runaway recursion or lost ends; drop the oldest half rather than grow.
+        int keep = MAX_DEPTH / 2;
+        System.arraycopy(starts, MAX_DEPTH - keep, starts, 0, keep);
+        System.arraycopy(events, MAX_DEPTH - keep, events, 0, keep);
+        Arrays.fill(events, keep, MAX_DEPTH, null);
+        size = keep;
+      }
+      starts[size] = startNanos;
+      events[size] = event;
+      size++;
+    }
+
+    Object pop(long startNanos) {
+      for (int i = size - 1; i >= 0; i--) {
+        if (starts[i] == startNanos) {
+          Object event = events[i];
+          for (int j = i; j < size; j++) {
+            events[j] = null;
+          }
+          size = i;
+          return event;
+        }
+      }
+      return null;
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package com.blueprint.relay;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.StackTrace;
+
+/**
+ * The jdk.jfr side of RelayJfr: event types and the recording-state listener. Only
+ * loaded when jdk.jfr is present.
+ */
+final class RelayJfrEvents {
+  private RelayJfrEvents() {
+  }
+
+  static void watchRecordings() {
+    FlightRecorder.addListener(new FlightRecorderListener() {
+      @Override
+      public void recorderInitialized(FlightRecorder recorder) {
+        RelayJfr.recordingChanged(anyRunning(recorder));
+      }
+
+      @Override
+      public void recordingStateChanged(Recording changed) {
+        RelayJfr.recordingChanged(anyRunning(FlightRecorder.getFlightRecorder()));
+      }
+    });
+  }
+
+  static Object begin(int kind, String method) {
+    RelayCallEvent event;
+    switch (kind) {
+      case RelayJfr.CONTROLLER:
+        event = new OmsControllerCall();
+        break;
+      case RelayJfr.SERVICE:
+        event = new OmsServiceCall();
+        break;
+      case RelayJfr.JMS:
+        event = new JmsDelivery();
+        break;
+      case RelayJfr.PACKAGE:
+        event = new PackageMethodCall();
+        break;
+      case RelayJfr.REPORT:
+        event = new ReportJob();
+        break;
+      default:
+        event = new InstallerPhase();
+        break;
+    }
+    event.method = method;
+    event.begin();
+    return event;
+  }
+
+  static void end(Object open, Throwable thrown) {
+    RelayCallEvent event = (RelayCallEvent) open;
+    event.end();
+    if (event.shouldCommit()) {
+      event.traceId = TraceContext.currentTraceId();
+      event.thrown = thrown == null ? null : thrown.getClass().getName();
+      event.commit();
+    }
+  }
+
+  private static boolean anyRunning(FlightRecorder recorder) {
+    for (Recording recording : recorder.getRecordings()) {
+      if (recording.getState() == RecordingState.RUNNING) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Category({"Blueprint Relay"})
+  @StackTrace(false)
+  abstract static class RelayCallEvent extends Event {
+    @Label("Method")
+    String method;
+
+    @Label("Trace Id")
+    String traceId;
+
+    @Label("Thrown")
+    @Description("Exception class when the call failed")
+    String thrown;
+  }
+
+  @Name("com.blueprint.relay.OmsControllerCall")
+  @Label("OMS Controller Call")
+  static final class OmsControllerCall extends RelayCallEvent {
+  }
+
+  @Name("com.blueprint.relay.OmsServiceCall")
+  @Label("OMS Service Call")
+  static final class OmsServiceCall extends RelayCallEvent {
+  }
+
+  @Name("com.blueprint.relay.JmsDelivery")
+  @Label("JMS Delivery")
+  @Description("MessageListener.onMessage")
+  static final class JmsDelivery extends RelayCallEvent {
+  }
+
+  @Name("com.blueprint.relay.PackageMethodCall")
+  @Label("OMS Package Method Call")
+  static final class PackageMethodCall extends RelayCallEvent {
+  }
+
+  @Name("com.blueprint.relay.ReportJob")
+  @Label("Report Job")
+  @Description("Report request from a local transport, method is the report name")
+  static final class ReportJob extends RelayCallEvent {
+  }
+
+  @Name("com.blueprint.relay.InstallerPhase")
+  @Label("Agent Installer Phase")
+  static final class InstallerPhase extends RelayCallEvent {
+  }
+}
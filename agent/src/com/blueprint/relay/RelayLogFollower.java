@@ -0,0 +1,243 @@
+package com.blueprint.relay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Follows the relay log from a remembered offset and prints new lines matching a
+ * pattern, so waiters (bin/1_harvest_keys.sh) react as soon as a line lands instead of
+ * re-grepping the whole file every couple of seconds. Each wake-up reads only the bytes
+ * appended since the last one.
+ *
+ * <pre>
+ * java -cp blueprint-relay-agent.jar com.blueprint.relay.RelayLogFollower \
+ *     [--log FILE] [--from-start | --offset-file FILE] [--count N] [--timeout SECONDS] [--poll-ms MS] REGEX
+ * </pre>
+ *
+ * A WatchService on the log's directory wakes the follower early where the platform
+ * delivers events promptly (inotify on Linux); the macOS implementation polls every few
+ * seconds, so the log size is also checked every {@code --poll-ms} (50 by default),
+ * which is a single stat. A log that shrinks was truncated and is followed from the
+ * start again. {@code --offset-file} stores the offset after each match so the next run
+ * resumes where this one stopped.
+ *
+ * Exit status: 0 once {@code --count} lines matched (1 by default), 3 on timeout,
+ * 2 on bad arguments or an unreadable log. Timeout is not 1 because the java launcher
+ * exits with 1 when the class cannot be loaded, and scripts treat that as "fall back".
+ */
+public final class RelayLogFollower {
+  private static final int READ_CHUNK = 64 * 1024;
+  private static final int EXIT_TIMEOUT = 3;
+
+  private final Path logPath;
+  private final Pattern pattern;
+  private final PrintStream out;
+  private final ByteArrayOutputStream partial = new ByteArrayOutputStream(256);
+  private final ByteBuffer chunk = ByteBuffer.allocate(READ_CHUNK);
+  private long offset;
+
+  RelayLogFollower(Path logPath, Pattern pattern, long offset, PrintStream out) {
+    this.logPath = logPath;
+    this.pattern = pattern;
+    this.offset = offset;
+    this.out = out;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Path logPath = Paths.get(System.getProperty("blueprint.relay.log",
+        System.getProperty("user.home", ".") + "/BlueprintRelay.log"));
+    Path offsetFile = null;
+    boolean fromStart = false;
+    int count = 1;
+    long timeoutMillis = 0L;
+    long pollMillis = 50L;
+    String regex = null;
+    try {
+      for (int i = 0; i < args.length; i++) {
+        String arg = args[i];
+        if ("--log".equals(arg) && i + 1 < args.length) {
+          logPath = Paths.get(args[++i]);
+        } else if ("--offset-file".equals(arg) && i + 1 < args.length) {
+          offsetFile = Paths.get(args[++i]);
+        } else if ("--from-start".equals(arg)) {
+          fromStart = true;
+        } else if ("--count".equals(arg) && i + 1 < args.length) {
+          count = Integer.parseInt(args[++i]);
+        } else if ("--timeout".equals(arg) && i + 1 < args.length) {
+          timeoutMillis = (long) (Double.parseDouble(args[++i]) * 1000L);
+        } else if ("--poll-ms".equals(arg) && i + 1 < args.length) {
+          pollMillis = Math.max(1L, Long.parseLong(args[++i]));
+        } else if (!arg.startsWith("--") && regex == null) {
+          regex = arg;
+        } else {
+          usage("Unknown argument: " + arg);
+        }
+      }
+    } catch (NumberFormatException ex) {
+      usage("Bad number: " + ex.getMessage());
+    }
+    if (regex == null) {
+      usage("Missing pattern");
+    }
+
+    long start = 0L;
+    if (offsetFile != null && Files.exists(offsetFile)) {
+      start = Long.parseLong(new String(Files.readAllBytes(offsetFile), StandardCharsets.US_ASCII).trim());
+    } else if (!fromStart && Files.exists(logPath)) {
+      start = Files.size(logPath);
+    }
+
+    RelayLogFollower follower = new RelayLogFollower(logPath, Pattern.compile(regex), start, System.out);
+    long deadline = timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis : Long.MAX_VALUE;
+    int matched;
+    try {
+      matched = follower.follow(count, deadline, pollMillis, offsetFile);
+    } catch (IOException ex) {
+      System.err.println("Cannot follow " + logPath + ": " + ex);
+      System.exit(2);
+      return;
+    }
+    System.exit(matched >= count ? 0 : EXIT_TIMEOUT);
+  }
+
+  private static void usage(String problem) {
+    System.err.println(problem);
+    System.err.println("Usage: RelayLogFollower [--log FILE] [--from-start | --offset-file FILE] [--count N]"
+        + " [--timeout SECONDS] [--poll-ms MS] REGEX");
+    System.exit(2);
+  }
+
+  /**
+   * Prints matching lines until {@code count} have matched or {@code deadline} passes;
+   * returns how many matched.
+   */
+  int follow(int count, long deadline, long pollMillis, Path offsetFile) throws IOException {
+    WatchService watcher = openWatcher();
+    int matched = 0;
+    try {
+      while (true) {
+        matched += readNew(count - matched);
+        if (matched > 0 && offsetFile != null) {
+          // Resume at the start of any line still being written.
+          long resume = offset - partial.size();
+          Files.write(offsetFile, Long.toString(resume).getBytes(StandardCharsets.US_ASCII));
+        }
+        long remaining = deadline - System.currentTimeMillis();
+        if (matched >= count || remaining <= 0) {
+          return matched;
+        }
+        await(watcher, Math.min(pollMillis, remaining));
+      }
+    } finally {
+      if (watcher != null) {
+        watcher.close();
+      }
+    }
+  }
+
+  /**
+   * Reads everything appended since the last call and prints up to {@code wanted}
+   * matching lines. A trailing line without its newline yet is kept for the next call.
+   */
+  int readNew(int wanted) throws IOException {
+    if (!Files.exists(logPath)) {
+      return 0;
+    }
+    int matched = 0;
+    try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < offset) {
+        offset = 0L;
+        partial.reset();
+      }
+      while (offset < size && matched < wanted) {
+        chunk.clear();
+        int read = channel.read(chunk, offset);
+        if (read <= 0) {
+          break;
+        }
+        byte[] bytes = chunk.array();
+        int lineStart = 0;
+        for (int i = 0; i < read && matched < wanted; i++) {
+          if (bytes[i] != '\n') {
+            continue;
+          }
+          partial.write(bytes, lineStart, i - lineStart);
+          String line = new String(partial.toByteArray(), StandardCharsets.UTF_8);
+          partial.reset();
+          lineStart = i + 1;
+          if (pattern.matcher(line).find()) {
+            out.println(line.endsWith("\r") ? line.substring(0, line.length() - 1) : line);
+            out.flush();
+            matched++;
+          }
+        }
+        if (matched >= wanted) {
+          // Stop right after the last match so a remembered offset resumes there.
+          offset += lineStart;
+          break;
+        }
+        partial.write(bytes, lineStart, read - lineStart);
+        offset += read;
+      }
+    }
+    return matched;
+  }
+
+  private WatchService openWatcher() {
+    Path directory = logPath.toAbsolutePath().getParent();
+    if (directory == null) {
+      return null;
+    }
+    try {
+      WatchService watcher = directory.getFileSystem().newWatchService();
+      directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+      return watcher;
+    } catch (IOException | UnsupportedOperationException ex) {
+      return null;
+    }
+  }
+
+  private static void await(WatchService watcher, long millis) throws IOException {
+    if (watcher == null) {
+      sleep(millis);
+      return;
+    }
+    try {
+      // Any event in the directory just triggers a size check; the key is not inspected.
+      WatchKey key = watcher.poll(millis, TimeUnit.MILLISECONDS);
+      if (key != null) {
+        key.pollEvents();
+        key.reset();
+      }
+    } catch (ClosedWatchServiceException ex) {
+      sleep(millis);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while following", ex);
+    }
+  }
+
+  private static void sleep(long millis) throws IOException {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while following", ex);
+    }
+  }
+}
@@ -0,0 +1,529 @@
+package com.blueprint.relay;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Sidecar index RelayLogger appends as it writes, so RelayLogQuery can jump to lines
+ * by time, stream and method instead of scanning the whole log.
+ *
+ * <pre>
+ * BlueprintRelay.log.idx      header: int magic | int version | long reserved
+ *                             record: long timeMillis | long offset | int length | int streamAndMethod
+ *                                     (stream in the top 8 bits, method id in the low 24)
+ * BlueprintRelay.log.methods  one "id TAB stream TAB method" line per method id
+ * </pre>
+ *
+ * Records are buffered and flushed every {@link #FLUSH_INTERVAL_MS} or when the buffer
+ * fills, so the newest lines may not be indexed yet; the query tool scans the log
+ * beyond the last indexed offset to cover them. If the log turns out shorter than the
+ * index claims (it was truncated), both sidecar files start over.
+ */
+final class RelayLogIndex {
+  static final int MAGIC = 0x42524958; // "BRIX"
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 16;
+  static final int RECORD_SIZE = 24;
+  static final int METHOD_MASK = 0xFFFFFF;
+
+  static final String[] STREAMS = {
+      "agent", "pkg", "omsService", "omsController", "guiController", "jms", "http", "aws.provider", "span", "aws.sdk", "edt"
+  };
+  static final int STREAM_AGENT = 0;
+  static final int STREAM_HTTP = 6;
+  static final int STREAM_SPAN = 8;
+
+  static final String TIMESTAMP_PATTERN = "yyyy-MM-dd HH:mm:ss.SSS";
+
+  private static final long FLUSH_INTERVAL_MS = 200L;
+  private static final int BUFFERED_RECORDS = 2048;
+  private static final String HTTP_PREFIX = "HTTP request: ";
+  private static final String HTTP_RESPONSE_PREFIX = "HTTP response: ";
+  private static final String SPAN_PREFIX = "span.end ";
+  private static final String JSON_TS = "{\"ts\":";
+
+  private final Path indexPath;
+  private final Path methodsPath;
+  private final ByteBuffer pending = ByteBuffer.allocate(BUFFERED_RECORDS * RECORD_SIZE);
+  private final MethodTable methodIds = new MethodTable();
+  private FileChannel channel;
+  private BufferedWriter methods;
+  private long lastFlushMillis;
+  private long indexedEnd;
+
+  private RelayLogIndex(Path logPath) {
+    this.indexPath = indexPath(logPath);
+    this.methodsPath = methodsPath(logPath);
+  }
+
+  static Path indexPath(Path logPath) {
+    return Paths.get(logPath.toString() + ".idx");
+  }
+
+  static Path methodsPath(Path logPath) {
+    return Paths.get(logPath.toString() + ".methods");
+  }
+
+  /**
+   * Opens (or starts) the index for a log currently {@code logSize} bytes long. Returns
+   * null when indexing is switched off with {@code -Drelay.log.index=false} or the
+   * sidecar files cannot be used; logging carries on without an index.
+   */
+  static RelayLogIndex open(Path logPath, long logSize) {
+    if ("false".equalsIgnoreCase(System.getProperty("relay.log.index", "true"))) {
+      return null;
+    }
+    RelayLogIndex index = new RelayLogIndex(logPath);
+    try {
+      index.openFiles(logPath, logSize);
+      return index;
+    } catch (IOException | RuntimeException ex) {
+      System.out.println("[RelayAgent:FALLBACK] Relay log index disabled: " + ex);
+      index.close();
+      return null;
+    }
+  }
+
+  private void openFiles(Path logPath, long logSize) throws IOException {
+    channel = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    boolean valid = channel.size() >= HEADER_SIZE && readHeaderMagic() == MAGIC;
+    if (valid) {
+      long records = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+      channel.truncate(HEADER_SIZE + records * RECORD_SIZE);
+      if (records > 0) {
+        ByteBuffer last = ByteBuffer.allocate(RECORD_SIZE);
+        channel.read(last, HEADER_SIZE + (records - 1) * RECORD_SIZE);
+        last.flip();
+        last.getLong();
+        long offset = last.getLong();
+        int length = last.getInt();
+        indexedEnd = offset + length;
+        valid = indexedEnd <= logSize && endsWithNewline(logPath, indexedEnd);
+      }
+    }
+    if (valid && Files.exists(methodsPath)) {
+      for (String line : Files.readAllLines(methodsPath, StandardCharsets.UTF_8)) {
+        String[] parts = line.split("\t", 3);
+        if (parts.length == 3) {
+          methodIds.put(streamId(parts[1]), parts[2], Integer.parseInt(parts[0]));
+        }
+      }
+    }
+    if (!valid) {
+      reset();
+    }
+    channel.position(channel.size());
+    methods = Files.newBufferedWriter(methodsPath, StandardCharsets.UTF_8,
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    lastFlushMillis = System.currentTimeMillis();
+  }
+
+  /**
+   * Called with the logger's lock held, once per line written.
+   */
+  void append(long timeMillis, long offset, int length, String message) {
+    int stream = streamOf(message);
+    if (stream == STREAM_AGENT) {
+      append(timeMillis, offset, length, stream, null, 0, 0);
+    } else {
+      int start = methodStart(message, stream);
+      append(timeMillis, offset, length, stream, message, start, methodEnd(message, stream, start));
+    }
+  }
+
+  /**
+   * JSON-format variant: the event already names its stream and method.
+   */
+  void append(long timeMillis, long offset, int length, RelayEvent event) {
+    if (event.phase == RelayEvent.Phase.LOG) {
+      append(timeMillis, offset, length, event.detail);
+    } else {
+      String method = event.method;
+      append(timeMillis, offset, length, streamId(event.stream), method, 0, method == null ? 0 : method.length());
+    }
+  }
+
+  /**
+   * The method is {@code text} from {@code start} to {@code end}, so no per-line string is
+   * cut out of the message to look it up.
+   */
+  private void append(long timeMillis, long offset, int length, int stream, String text, int start, int end) {
+    if (channel == null) {
+      return;
+    }
+    if (offset < indexedEnd) {
+      // The log shrank underneath us; earlier records point at bytes that are gone.
+      try {
+        pending.clear();
+        reset();
+      } catch (IOException ex) {
+        disable(ex);
+        return;
+      }
+    }
+    int methodId = stream == STREAM_AGENT || text == null ? 0 : methodId(stream, text, start, end);
+    pending.putLong(timeMillis).putLong(offset).putInt(length).putInt((stream << 24) | (methodId & METHOD_MASK));
+    indexedEnd = offset + length;
+    if (!pending.hasRemaining() || timeMillis - lastFlushMillis >= FLUSH_INTERVAL_MS) {
+      flush();
+    }
+  }
+
+  void flush() {
+    if (channel == null || pending.position() == 0) {
+      return;
+    }
+    pending.flip();
+    try {
+      // Dictionary first, so a reader never sees a record whose method id is unknown.
+      methods.flush();
+      while (pending.hasRemaining()) {
+        channel.write(pending);
+      }
+    } catch (IOException ex) {
+      disable(ex);
+    }
+    pending.clear();
+    lastFlushMillis = System.currentTimeMillis();
+  }
+
+  void close() {
+    flush();
+    try {
+      if (methods != null) {
+        methods.close();
+      }
+      if (channel != null) {
+        channel.close();
+      }
+    } catch (IOException ignored) {
+      // best effort on shutdown
+    }
+    channel = null;
+  }
+
+  private int methodId(int stream, String text, int start, int end) {
+    int id = methodIds.get(stream, text, start, end);
+    if (id != 0) {
+      return id;
+    }
+    int next = methodIds.size() + 1;
+    if (next > METHOD_MASK) {
+      return 0;
+    }
+    String method = text.substring(start, end);
+    methodIds.put(stream, method, next);
+    try {
+      methods.write(next + "\t" + STREAMS[stream] + '\t' + method + "\n");
+    } catch (IOException ex) {
+      disable(ex);
+    }
+    return next;
+  }
+
+  private void reset() throws IOException {
+    channel.truncate(0);
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(MAGIC).putInt(VERSION).putLong(0L).flip();
+    channel.write(header, 0);
+    channel.position(HEADER_SIZE);
+    methodIds.clear();
+    indexedEnd = 0L;
+    if (methods != null) {
+      methods.close();
+    }
+    Files.write(methodsPath, new byte[0]);
+    if (methods != null) {
+      methods = Files.newBufferedWriter(methodsPath, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+  }
+
+  private int readHeaderMagic() throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(8);
+    channel.read(header, 0);
+    header.flip();
+    return header.getInt() == MAGIC && header.getInt() == VERSION ? MAGIC : 0;
+  }
+
+  private static boolean endsWithNewline(Path logPath, long end) throws IOException {
+    if (end == 0) {
+      return true;
+    }
+    try (FileChannel log = FileChannel.open(logPath, StandardOpenOption.READ)) {
+      ByteBuffer last = ByteBuffer.allocate(1);
+      return log.read(last, end - 1) == 1 && last.get(0) == '\n';
+    }
+  }
+
+  private void disable(IOException ex) {
+    System.out.println("[RelayAgent:FALLBACK] Relay log index disabled: " + ex);
+    try {
+      channel.close();
+    } catch (IOException ignored) {
+      // already failing
+    }
+    channel = null;
+  }
+
+  static int streamId(String name) {
+    for (int stream = 1; stream < STREAMS.length; stream++) {
+      if (STREAMS[stream].equals(name)) {
+        return stream;
+      }
+    }
+    return STREAM_AGENT;
+  }
+
+  /**
+   * Stream of a log message (the text after the timestamp and trace prefix).
+   */
+  static int streamOf(String message) {
+    if (message.startsWith(HTTP_PREFIX) || message.startsWith(HTTP_RESPONSE_PREFIX)) {
+      return STREAM_HTTP;
+    }
+    if (message.startsWith(SPAN_PREFIX)) {
+      return STREAM_SPAN;
+    }
+    for (int stream = 1; stream < STREAMS.length; stream++) {
+      String name = STREAMS[stream];
+      if (message.startsWith(name) && message.length() > name.length() && message.charAt(name.length()) == '.') {
+        return stream;
+      }
+    }
+    return STREAM_AGENT;
+  }
+
+  /**
+   * Method part of a message: "omsService.getRecallList args=..." gives getRecallList,
+   * HTTP lines give the URL without its query, span lines the span name.
+   */
+  static String methodOf(String message, int stream) {
+    int start = methodStart(message, stream);
+    return message.substring(start, methodEnd(message, stream, start));
+  }
+
+  private static int methodStart(String message, int stream) {
+    if (stream == STREAM_HTTP) {
+      return message.startsWith(HTTP_PREFIX) ? HTTP_PREFIX.length() : HTTP_RESPONSE_PREFIX.length();
+    }
+    return stream == STREAM_SPAN ? SPAN_PREFIX.length() : STREAMS[stream].length() + 1;
+  }
+
+  private static int methodEnd(String message, int stream, int start) {
+    int end = start;
+    while (end < message.length()) {
+      char c = message.charAt(end);
+      if (c == ' ' || (stream == STREAM_HTTP && c == '?')) {
+        break;
+      }
+      end++;
+    }
+    return end;
+  }
+
+  /**
+   * Strips "yyyy-MM-dd HH:mm:ss.SSS | " and an optional "trace=... span=... | " from a
+   * raw log line; used when re-indexing an existing log. JSON lines are turned back
+   * into the equivalent text message so they classify the same way.
+   */
+  static String messageOf(String line) {
+    if (line.startsWith(JSON_TS)) {
+      String stream = jsonString(line, "\"stream\":\"");
+      String method = jsonString(line, "\"method\":\"");
+      if (stream == null || method == null) {
+        String msg = jsonString(line, "\"msg\":\"");
+        return msg != null ? msg : line;
+      }
+      int id = streamId(stream);
+      if (id == STREAM_HTTP) {
+        return HTTP_PREFIX + method;
+      }
+      return id == STREAM_SPAN ? SPAN_PREFIX + method : stream + "." + method;
+    }
+    int cut = line.indexOf(" | ");
+    if (cut < 0) {
+      return line;
+    }
+    String rest = line.substring(cut + 3);
+    if (rest.startsWith("trace=")) {
+      int traceEnd = rest.indexOf(" | ");
+      if (traceEnd >= 0) {
+        rest = rest.substring(traceEnd + 3);
+      }
+    }
+    return rest;
+  }
+
+  static String streamName(int streamAndMethod) {
+    int stream = streamAndMethod >>> 24;
+    return stream < STREAMS.length ? STREAMS[stream] : "agent";
+  }
+
+  /**
+   * Rebuilds the sidecar files from an existing log, for logs written before indexing
+   * existed or after the index was lost. Returns the number of lines indexed.
+   */
+  static long rebuild(Path logPath) throws IOException {
+    Files.deleteIfExists(indexPath(logPath));
+    Files.deleteIfExists(methodsPath(logPath));
+    RelayLogIndex index = new RelayLogIndex(logPath);
+    index.openFiles(logPath, 0L);
+    SimpleDateFormat format = new SimpleDateFormat(TIMESTAMP_PATTERN);
+    long lines = 0L;
+    long offset = 0L;
+    long lastTime = 0L;
+    byte[] line = new byte[8192];
+    int length = 0;
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(logPath), 1 << 16)) {
+      for (int b = in.read(); b >= 0; b = in.read()) {
+        if (length == line.length) {
+          line = Arrays.copyOf(line, line.length * 2);
+        }
+        line[length++] = (byte) b;
+        if (b != '\n') {
+          continue;
+        }
+        String text = new String(line, 0, length - 1, StandardCharsets.UTF_8);
+        long time = parseTimestamp(text, format);
+        if (time >= 0) {
+          lastTime = time;
+        }
+        index.append(lastTime, offset, length, messageOf(text));
+        offset += length;
+        length = 0;
+        lines++;
+      }
+    } finally {
+      index.close();
+    }
+    return lines;
+  }
+
+  /**
+   * Millisecond timestamp at the start of a log line, or -1 if it has none.
+   */
+  static long parseTimestamp(String line, SimpleDateFormat format) {
+    if (line.startsWith(JSON_TS)) {
+      long millis = 0L;
+      int i = JSON_TS.length();
+      for (; i < line.length() && Character.isDigit(line.charAt(i)); i++) {
+        millis = millis * 10 + (line.charAt(i) - '0');
+      }
+      return i > JSON_TS.length() ? millis : -1L;
+    }
+    if (line.length() < TIMESTAMP_PATTERN.length() || line.charAt(4) != '-') {
+      return -1L;
+    }
+    ParsePosition position = new ParsePosition(0);
+    Date parsed = format.parse(line.substring(0, TIMESTAMP_PATTERN.length()), position);
+    return parsed == null ? -1L : parsed.getTime();
+  }
+
+  /**
+   * Raw (still escaped) value of a string field, enough to classify a JSON line.
+   */
+  private static String jsonString(String line, String key) {
+    int start = line.indexOf(key);
+    if (start < 0) {
+      return null;
+    }
+    start += key.length();
+    for (int i = start; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (c == '"') {
+        return line.substring(start, i);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Method ids by stream and name, open addressing. Lookups hash and compare a range of
+   * the caller's string, so a known method costs no allocation.
+   */
+  private static final class MethodTable {
+    private String[] names = new String[256];
+    private int[] streams = new int[256];
+    private int[] ids = new int[256];
+    private int size;
+
+    /** Id of the method, or 0 when it has none yet. */
+    int get(int stream, String text, int start, int end) {
+      int mask = names.length - 1;
+      int length = end - start;
+      for (int slot = hash(stream, text, start, end) & mask; names[slot] != null; slot = (slot + 1) & mask) {
+        String name = names[slot];
+        if (streams[slot] == stream && name.length() == length && name.regionMatches(0, text, start, length)) {
+          return ids[slot];
+        }
+      }
+      return 0;
+    }
+
+    void put(int stream, String name, int id) {
+      if ((size + 1) * 2 > names.length) {
+        grow();
+      }
+      int mask = names.length - 1;
+      int slot = hash(stream, name, 0, name.length()) & mask;
+      while (names[slot] != null) {
+        if (streams[slot] == stream && names[slot].equals(name)) {
+          ids[slot] = id;
+          return;
+        }
+        slot = (slot + 1) & mask;
+      }
+      names[slot] = name;
+      streams[slot] = stream;
+      ids[slot] = id;
+      size++;
+    }
+
+    int size() {
+      return size;
+    }
+
+    void clear() {
+      Arrays.fill(names, null);
+      size = 0;
+    }
+
+    private void grow() {
+      String[] oldNames = names;
+      int[] oldStreams = streams;
+      int[] oldIds = ids;
+      names = new String[oldNames.length * 2];
+      streams = new int[names.length];
+      ids = new int[names.length];
+      size = 0;
+      for (int i = 0; i < oldNames.length; i++) {
+        if (oldNames[i] != null) {
+          put(oldStreams[i], oldNames[i], oldIds[i]);
+        }
+      }
+    }
+
+    private static int hash(int stream, String text, int start, int end) {
+      int h = stream;
+      for (int i = start; i < end; i++) {
+        h = 31 * h + text.charAt(i);
+      }
+      return h ^ (h >>> 16);
+    }
+  }
+}
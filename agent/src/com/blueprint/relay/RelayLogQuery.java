@@ -0,0 +1,477 @@
+package com.blueprint.relay;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Command-line query over the relay log using the sidecar {@link RelayLogIndex}. Time
+ * ranges are a binary search over the mapped index, stream and method filters compare
+ * record ids, and only matching lines are read from the (mapped) log. Lines written
+ * after the last flushed index record are scanned directly.
+ *
+ * <pre>
+ * java -cp blueprint-relay-agent.jar com.blueprint.relay.RelayLogQuery \
+ *     [--log FILE] [--from TIME] [--to TIME] [--trace ID] [--count | --stats] [--reindex] [PATTERN]
+ * </pre>
+ *
+ * TIME is {@code HH:mm[:ss]} (today) or {@code yyyy-MM-dd HH:mm[:ss]}. PATTERN is a
+ * stream, optionally followed by a method glob: {@code omsService.getRecall*},
+ * {@code jms}, {@code http./oms/api/*}, {@code span.http.report}.
+ */
+public final class RelayLogQuery {
+  private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+  private static final int MAX_LINE = 1024 * 1024;
+
+  private final Path logPath;
+  private long from = Long.MIN_VALUE;
+  private long to = Long.MAX_VALUE;
+  private String traceNeedle;
+  private String jsonTraceNeedle;
+  private Pattern methodPattern;
+  private int streamFilter = -1;
+  private boolean[] methodMatches;
+  private final Map<Integer, String> methodNames = new HashMap<>();
+
+  private FileChannel log;
+  private MappedByteBuffer window;
+  private long windowStart;
+  private long windowEnd;
+
+  private RelayLogQuery(Path logPath) {
+    this.logPath = logPath;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Path logPath = defaultLogPath();
+    String from = null;
+    String to = null;
+    String trace = null;
+    String pattern = null;
+    boolean count = false;
+    boolean stats = false;
+    boolean reindex = false;
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      if ("--log".equals(arg) && i + 1 < args.length) {
+        logPath = Paths.get(args[++i]);
+      } else if ("--from".equals(arg) && i + 1 < args.length) {
+        from = args[++i];
+      } else if ("--to".equals(arg) && i + 1 < args.length) {
+        to = args[++i];
+      } else if ("--trace".equals(arg) && i + 1 < args.length) {
+        trace = args[++i];
+      } else if ("--count".equals(arg)) {
+        count = true;
+      } else if ("--stats".equals(arg)) {
+        stats = true;
+      } else if ("--reindex".equals(arg)) {
+        reindex = true;
+      } else if (!arg.startsWith("--") && pattern == null) {
+        pattern = arg;
+      } else {
+        usage("Unknown argument: " + arg);
+      }
+    }
+    if (!Files.exists(logPath)) {
+      usage("No relay log at " + logPath);
+    }
+
+    long started = System.nanoTime();
+    if (reindex || !Files.exists(RelayLogIndex.indexPath(logPath))) {
+      long lines = RelayLogIndex.rebuild(logPath);
+      System.err.printf("Indexed %d lines of %s%n", lines, logPath);
+    }
+
+    RelayLogQuery query = new RelayLogQuery(logPath);
+    try {
+      if (from != null) {
+        query.from = parseTime(from, false);
+      }
+      if (to != null) {
+        query.to = parseTime(to, true);
+      }
+    } catch (ParseException ex) {
+      usage("Bad time (use HH:mm[:ss] or yyyy-MM-dd HH:mm[:ss]): " + ex.getMessage());
+    }
+    query.traceNeedle = trace == null ? null : "trace=" + trace + " ";
+    query.jsonTraceNeedle = trace == null ? null : "\"trace\":\"" + trace + "\"";
+    query.loadMethods();
+    if (pattern != null) {
+      query.compilePattern(pattern);
+    }
+
+    PrintStream out = new PrintStream(new BufferedOutputStream(System.out, 1 << 16), false);
+    Map<String, Long> tally = stats ? new TreeMap<>() : null;
+    long matched = query.run(count || stats ? null : out, tally);
+    if (stats) {
+      for (Map.Entry<String, Long> entry : tally.entrySet()) {
+        out.printf("%10d  %s%n", entry.getValue(), entry.getKey());
+      }
+    }
+    if (count) {
+      out.println(matched);
+    }
+    out.flush();
+    System.err.printf("%d matching lines in %.1f ms%n", matched, (System.nanoTime() - started) / 1_000_000.0);
+  }
+
+  private static Path defaultLogPath() {
+    String configured = System.getProperty("blueprint.relay.log");
+    if (configured == null || configured.trim().isEmpty()) {
+      configured = System.getProperty("user.home", ".") + "/BlueprintRelay.log";
+    }
+    return Paths.get(configured);
+  }
+
+  private static void usage(String problem) {
+    System.err.println(problem);
+    System.err.println("Usage: RelayLogQuery [--log FILE] [--from TIME] [--to TIME] [--trace ID]"
+        + " [--count | --stats] [--reindex] [stream[.methodGlob]]");
+    System.exit(2);
+  }
+
+  /**
+   * Parses a --from/--to bound. Upper bounds cover the whole last unit given, so
+   * {@code --to 10:15} includes 10:15:59.999.
+   */
+  static long parseTime(String text, boolean upper) throws ParseException {
+    String trimmed = text.trim();
+    boolean dated = trimmed.length() > 8 && trimmed.charAt(4) == '-';
+    String time = dated ? trimmed.substring(11) : trimmed;
+    boolean seconds = time.length() > 5;
+    String pattern = (dated ? "yyyy-MM-dd " : "") + (seconds ? "HH:mm:ss" : "HH:mm");
+    SimpleDateFormat format = new SimpleDateFormat(pattern);
+    format.setLenient(false);
+    Calendar parsed = Calendar.getInstance();
+    parsed.setTime(format.parse(trimmed));
+    if (!dated) {
+      Calendar today = Calendar.getInstance();
+      parsed.set(today.get(Calendar.YEAR), today.get(Calendar.MONTH), today.get(Calendar.DAY_OF_MONTH));
+    }
+    long millis = parsed.getTimeInMillis();
+    if (upper) {
+      millis += seconds ? 999L : 59_999L;
+    }
+    return millis;
+  }
+
+  private void loadMethods() throws IOException {
+    Path methods = RelayLogIndex.methodsPath(logPath);
+    if (!Files.exists(methods)) {
+      return;
+    }
+    for (String line : Files.readAllLines(methods, StandardCharsets.UTF_8)) {
+      String[] parts = line.split("\t", 3);
+      if (parts.length == 3) {
+        methodNames.put(Integer.parseInt(parts[0]), parts[1] + '.' + parts[2]);
+      }
+    }
+  }
+
+  /**
+   * Resolves "stream[.glob]" against the stream list (longest match, since aws.provider
+   * contains a dot) and precomputes which method ids it selects.
+   */
+  private void compilePattern(String pattern) {
+    String methodGlob = null;
+    for (int stream = 0; stream < RelayLogIndex.STREAMS.length; stream++) {
+      String name = RelayLogIndex.STREAMS[stream];
+      boolean longer = streamFilter < 0 || name.length() > RelayLogIndex.STREAMS[streamFilter].length();
+      if (pattern.equals(name) && longer) {
+        streamFilter = stream;
+        methodGlob = null;
+      } else if (pattern.startsWith(name + ".") && longer) {
+        streamFilter = stream;
+        methodGlob = pattern.substring(name.length() + 1);
+      }
+    }
+    if (streamFilter < 0) {
+      usage("Unknown stream in pattern " + pattern + "; streams are " + String.join(", ", RelayLogIndex.STREAMS));
+    }
+    if (methodGlob == null || "*".equals(methodGlob)) {
+      return;
+    }
+    methodPattern = globToRegex(methodGlob);
+    int maxId = 0;
+    for (Integer id : methodNames.keySet()) {
+      maxId = Math.max(maxId, id);
+    }
+    methodMatches = new boolean[maxId + 1];
+    String prefix = RelayLogIndex.STREAMS[streamFilter] + '.';
+    for (Map.Entry<Integer, String> entry : methodNames.entrySet()) {
+      String name = entry.getValue();
+      methodMatches[entry.getKey()] = name.startsWith(prefix)
+          && methodPattern.matcher(name.substring(prefix.length())).matches();
+    }
+  }
+
+  private static Pattern globToRegex(String glob) {
+    StringBuilder regex = new StringBuilder(glob.length() + 8);
+    for (int i = 0; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+      if (c == '*') {
+        regex.append(".*");
+      } else if (c == '?') {
+        regex.append('.');
+      } else {
+        regex.append(Pattern.quote(String.valueOf(c)));
+      }
+    }
+    return Pattern.compile(regex.toString());
+  }
+
+  private long run(PrintStream out, Map<String, Long> tally) throws IOException {
+    long matched = 0L;
+    long indexedEnd = 0L;
+    try (FileChannel index = FileChannel.open(RelayLogIndex.indexPath(logPath), StandardOpenOption.READ);
+        FileChannel logChannel = FileChannel.open(logPath, StandardOpenOption.READ)) {
+      this.log = logChannel;
+      long logSize = logChannel.size();
+      long records = Math.max(0L, (index.size() - RelayLogIndex.HEADER_SIZE) / RelayLogIndex.RECORD_SIZE);
+      if (records > 0) {
+        IndexRecords mapped = new IndexRecords(index, records, RelayLogIndex.indexPath(logPath));
+        for (long record = firstAtOrAfter(mapped, records, from); record < records; record++) {
+          long time = mapped.time(record);
+          if (time > to) {
+            break;
+          }
+          long offset = mapped.offset(record);
+          int length = mapped.length(record);
+          int streamAndMethod = mapped.streamAndMethod(record);
+          if (offset + length > logSize || !selects(streamAndMethod)) {
+            continue;
+          }
+          if (traceNeedle == null && out == null && tally == null) {
+            matched++;
+            continue;
+          }
+          byte[] line = read(offset, length);
+          if (traceNeedle != null && !contains(line, traceNeedle) && !contains(line, jsonTraceNeedle)) {
+            continue;
+          }
+          matched++;
+          emit(line, streamAndMethod, null, out, tally);
+        }
+        indexedEnd = Math.min(logSize, mapped.offset(records - 1) + mapped.length(records - 1));
+      }
+      if (indexedEnd < logSize) {
+        matched += scanTail(indexedEnd, logSize, out, tally);
+      }
+    }
+    return matched;
+  }
+
+  /**
+   * Lower-bound binary search; RelayLogger stamps lines under its lock, so records are in
+   * time order.
+   */
+  private static long firstAtOrAfter(IndexRecords mapped, long records, long time) throws IOException {
+    long low = 0L;
+    long high = records;
+    while (low < high) {
+      long mid = (low + high) >>> 1;
+      if (mapped.time(mid) < time) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private boolean selects(int streamAndMethod) {
+    if (streamFilter < 0) {
+      return true;
+    }
+    if (streamAndMethod >>> 24 != streamFilter) {
+      return false;
+    }
+    if (methodMatches == null) {
+      return true;
+    }
+    int id = streamAndMethod & RelayLogIndex.METHOD_MASK;
+    return id < methodMatches.length && methodMatches[id];
+  }
+
+  /**
+   * Lines past the last flushed index record: parse and filter them the slow way.
+   */
+  private long scanTail(long start, long end, PrintStream out, Map<String, Long> tally) throws IOException {
+    SimpleDateFormat format = new SimpleDateFormat(RelayLogIndex.TIMESTAMP_PATTERN);
+    long matched = 0L;
+    long offset = start;
+    long lastTime = 0L;
+    while (offset < end) {
+      int length = lineLength(offset, end);
+      if (length <= 0) {
+        break;
+      }
+      byte[] line = read(offset, length);
+      offset += length;
+      String text = new String(line, StandardCharsets.UTF_8).trim();
+      long time = RelayLogIndex.parseTimestamp(text, format);
+      if (time >= 0) {
+        lastTime = time;
+      }
+      if (lastTime < from || lastTime > to) {
+        continue;
+      }
+      String message = RelayLogIndex.messageOf(text);
+      int stream = RelayLogIndex.streamOf(message);
+      String method = stream == RelayLogIndex.STREAM_AGENT ? "" : RelayLogIndex.methodOf(message, stream);
+      if (streamFilter >= 0 && (stream != streamFilter
+          || (methodPattern != null && !methodPattern.matcher(method).matches()))) {
+        continue;
+      }
+      if (traceNeedle != null && !text.contains(traceNeedle) && !text.contains(jsonTraceNeedle)) {
+        continue;
+      }
+      matched++;
+      emit(line, stream << 24, RelayLogIndex.STREAMS[stream] + (method.isEmpty() ? "" : "." + method), out, tally);
+    }
+    return matched;
+  }
+
+  private void emit(byte[] line, int streamAndMethod, String name, OutputStream out, Map<String, Long> tally)
+      throws IOException {
+    if (tally != null) {
+      String key = name;
+      if (key == null) {
+        int id = streamAndMethod & RelayLogIndex.METHOD_MASK;
+        key = id == 0 ? RelayLogIndex.streamName(streamAndMethod) : methodNames.getOrDefault(id, "?");
+      }
+      tally.merge(key, 1L, Long::sum);
+    } else if (out != null) {
+      out.write(line);
+    }
+  }
+
+  /**
+   * Length of the complete line starting at {@code offset} including its newline, or
+   * 0 if the log ends mid-line (a write in progress).
+   */
+  private int lineLength(long offset, long end) throws IOException {
+    long limit = Math.min(end, offset + MAX_LINE);
+    for (long position = offset; position < limit; position++) {
+      if (byteAt(position) == '\n') {
+        return (int) (position - offset + 1);
+      }
+    }
+    return 0;
+  }
+
+  private byte byteAt(long position) throws IOException {
+    if (position < windowStart || position >= windowEnd) {
+      remap(position);
+    }
+    return window.get((int) (position - windowStart));
+  }
+
+  private byte[] read(long offset, int length) throws IOException {
+    byte[] bytes = new byte[length];
+    if (length > WINDOW_SIZE / 2) {
+      ByteBuffer target = ByteBuffer.wrap(bytes);
+      while (target.hasRemaining() && log.read(target, offset + target.position()) > 0) {
+        // keep reading
+      }
+      return bytes;
+    }
+    if (offset < windowStart || offset + length > windowEnd) {
+      remap(offset);
+    }
+    ByteBuffer view = window.duplicate();
+    view.position((int) (offset - windowStart));
+    view.get(bytes);
+    return bytes;
+  }
+
+  private void remap(long position) throws IOException {
+    windowStart = position;
+    windowEnd = Math.min(log.size(), position + WINDOW_SIZE);
+    window = log.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+  }
+
+  private static boolean contains(byte[] line, String needle) {
+    byte[] pattern = needle.getBytes(StandardCharsets.UTF_8);
+    outer:
+    for (int i = 0; i + pattern.length <= line.length; i++) {
+      for (int j = 0; j < pattern.length; j++) {
+        if (line[i + j] != pattern[j]) {
+          continue outer;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Index records read through a window the way the log is, so an index of any size maps
+   * in slices that int offsets can address.
+   */
+  private static final class IndexRecords {
+    private static final long WINDOW_RECORDS = WINDOW_SIZE / RelayLogIndex.RECORD_SIZE;
+
+    private final FileChannel channel;
+    private final long records;
+    private MappedByteBuffer window;
+    private long first = -1L;
+    private long end = -1L;
+
+    IndexRecords(FileChannel channel, long records, Path path) throws IOException {
+      this.channel = channel;
+      this.records = records;
+      MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, RelayLogIndex.HEADER_SIZE);
+      if (header.getInt(0) != RelayLogIndex.MAGIC || header.getInt(4) != RelayLogIndex.VERSION) {
+        throw new IOException("Not a relay log index: " + path + " (try --reindex)");
+      }
+    }
+
+    long time(long record) throws IOException {
+      return window(record).getLong(position(record));
+    }
+
+    long offset(long record) throws IOException {
+      return window(record).getLong(position(record) + 8);
+    }
+
+    int length(long record) throws IOException {
+      return window(record).getInt(position(record) + 16);
+    }
+
+    int streamAndMethod(long record) throws IOException {
+      return window(record).getInt(position(record) + 20);
+    }
+
+    private int position(long record) {
+      return (int) ((record - first) * RelayLogIndex.RECORD_SIZE);
+    }
+
+    private MappedByteBuffer window(long record) throws IOException {
+      if (record < first || record >= end) {
+        first = record - record % WINDOW_RECORDS;
+        end = Math.min(records, first + WINDOW_RECORDS);
+        window = channel.map(FileChannel.MapMode.READ_ONLY,
+            RelayLogIndex.HEADER_SIZE + first * RelayLogIndex.RECORD_SIZE, (end - first) * RelayLogIndex.RECORD_SIZE);
+      }
+      return window;
+    }
+  }
+}
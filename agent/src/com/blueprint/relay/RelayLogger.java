@@ -1,6 +1,8 @@
 package com.blueprint.relay;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -8,15 +10,39 @@ import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Minimal file logger so agent traces persist outside the JVM console.
+ * Minimal file logger so agent traces persist outside the JVM console. Each line is
+ * also recorded in a sidecar {@link RelayLogIndex} for RelayLogQuery.
+ *
+ * With {@code -Drelay.log.format=json} every line is a JSON object instead (see
+ * {@link JsonLinesEncoder}); call events from {@link #logEnter}, {@link #logExit} and
+ * {@link #logThrow} then carry stream, method, phase and duration as separate fields.
+ *
+ * With {@code -Drelay.log.sink=mmap} lines go through {@link MappedLogSink}, which
+ * survives the process being killed, instead of one file append per line.
+ *
+ * With {@code -Drelay.jfr.text=off} nothing is written while a JFR recording is
+ * running (see {@link RelayJfr}).
  */
 public final class RelayLogger {
+  private static final AtomicInteger waitingWriters = new AtomicInteger();
+  private static final AtomicLong writtenLines = new AtomicLong();
+  private static final AtomicLong droppedLines = new AtomicLong();
+  private static final boolean JSON = "json".equalsIgnoreCase(System.getProperty("relay.log.format", "text"));
   private static final RelayLogger INSTANCE = new RelayLogger();
   private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
   private final Object lock = new Object();
   private final Path logPath;
+  private final RelayLogIndex index;
+  private final MappedLogSink sink;
+  private final JsonLinesEncoder encoder = JSON ? new JsonLinesEncoder() : null;
+  // Length of the log, advanced by each write under the lock so indexing a line needs no
+  // stat; re-read once a second to notice a log truncated or replaced underneath us.
+  private long logEnd;
+  private long logEndCheckedMillis;
 
   private RelayLogger() {
     String configuredPath = System.getProperty("blueprint.relay.log");
@@ -35,31 +61,212 @@ public final class RelayLogger {
       path = Paths.get("BlueprintRelay.log").toAbsolutePath();
     }
     this.logPath = path;
-    writeRaw("=== Relay logger initialised at " + logPath + " ===");
+    this.logEnd = currentSize();
+    this.logEndCheckedMillis = System.currentTimeMillis();
+    this.index = RelayLogIndex.open(logPath, logEnd);
+    this.sink = MappedLogSink.enabled() ? MappedLogSink.open(logPath, index) : null;
+    if (index != null || sink != null) {
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        synchronized (lock) {
+          if (sink != null) {
+            sink.close();
+          }
+          if (index != null) {
+            index.close();
+          }
+        }
+      }, "relay-log-index-close"));
+    }
+    String banner = "=== Relay logger initialised at " + logPath + (sink != null ? " (mapped segments)" : "") + " ===";
+    if (JSON) {
+      writeEvent(RelayEvent.capture("agent", null, RelayEvent.Phase.LOG, -1L, banner));
+    } else {
+      writeRaw(System.currentTimeMillis(), banner, banner);
+    }
+    if (sink != null && sink.recoveredLines() > 0) {
+      String recovered = "Recovered " + sink.recoveredLines() + " lines from mapped log segments";
+      if (JSON) {
+        writeEvent(RelayEvent.capture("agent", null, RelayEvent.Phase.LOG, -1L, recovered));
+      } else {
+        writeRaw(System.currentTimeMillis(), recovered, recovered);
+      }
+    }
   }
 
   public static void log(String template, Object... args) {
+    if (RelayJfr.textSuppressed()) {
+      return;
+    }
     String message = String.format(template, args);
-    INSTANCE.write(message);
+    if (JSON) {
+      INSTANCE.writeEvent(RelayEvent.capture("agent", null, RelayEvent.Phase.LOG, -1L, message));
+    } else {
+      INSTANCE.write(message);
+    }
+  }
+
+  /**
+   * Logs a traced call starting; text form {@code stream.method args=...}.
+   */
+  public static void logEnter(String stream, String method, String args) {
+    event(stream, method, RelayEvent.Phase.ENTER, -1L, args);
+  }
+
+  /**
+   * Logs a traced call returning; text form {@code stream.method -> ...}.
+   */
+  public static void logExit(String stream, String method, long elapsedNanos, String result) {
+    event(stream, method, RelayEvent.Phase.EXIT, elapsedNanos, result);
+  }
+
+  /**
+   * Logs a traced call throwing; text form {@code stream.method threw Type: message}.
+   */
+  public static void logThrow(String stream, String method, long elapsedNanos, Throwable thrown) {
+    event(stream, method, RelayEvent.Phase.THROW, elapsedNanos, thrown.getClass().getName() + ": " + thrown.getMessage());
+  }
+
+  static void event(String stream, String method, RelayEvent.Phase phase, long elapsedNanos, String detail) {
+    if (RelayJfr.textSuppressed()) {
+      return;
+    }
+    if (JSON) {
+      INSTANCE.writeEvent(RelayEvent.capture(stream, method, phase, elapsedNanos, detail));
+    } else {
+      INSTANCE.write(stream + "." + method + phase.textSeparator + detail);
+    }
+  }
+
+  /**
+   * False while text logging is paused for a JFR recording; callers can then skip
+   * formatting arguments and results.
+   */
+  public static boolean textEnabled() {
+    return !RelayJfr.textSuppressed();
+  }
+
+  /**
+   * True when lines are written as JSON; emitters whose text form does not follow the
+   * stream.method pattern (HTTP requests, span ends) check this to pick a format.
+   */
+  static boolean structured() {
+    return JSON;
+  }
+
+  static Path logPath() {
+    return INSTANCE.logPath;
+  }
+
+  /**
+   * Writers are synchronous, so the "queue" is the threads blocked on the write lock.
+   */
+  static int queueDepth() {
+    return waitingWriters.get();
+  }
+
+  static long writtenLines() {
+    return writtenLines.get();
+  }
+
+  static long droppedLines() {
+    return droppedLines.get();
   }
 
   private void write(String message) {
-    String timestamped = dateFormat.format(new Date()) + " | " + message;
-    writeRaw(timestamped);
+    String prefix = TraceContext.linePrefix();
+    waitingWriters.incrementAndGet();
+    synchronized (lock) {
+      waitingWriters.decrementAndGet();
+      // Stamped under the lock, so lines and index records are in time order (the index
+      // binary-searches on it) and the shared SimpleDateFormat has one user at a time.
+      long now = System.currentTimeMillis();
+      appendLine(now, dateFormat.format(new Date(now)) + " | " + prefix + message, message);
+    }
+  }
+
+  private void writeRaw(long timeMillis, String line, String message) {
+    waitingWriters.incrementAndGet();
+    synchronized (lock) {
+      waitingWriters.decrementAndGet();
+      appendLine(timeMillis, line, message);
+    }
+  }
+
+  /**
+   * Called with the lock held.
+   *
+   * @param message the line without timestamp and trace prefix, which the index
+   *     classifies by stream and method
+   */
+  private void appendLine(long timeMillis, String line, String message) {
+    try {
+      byte[] bytes = (line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+      if (sink != null) {
+        // The drain thread writes it to the log and the index.
+        sink.append(timeMillis, bytes, 0, bytes.length);
+        writtenLines.incrementAndGet();
+        return;
+      }
+      long offset = logOffset(timeMillis);
+      Files.write(logPath, bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+      logEnd = offset + bytes.length;
+      writtenLines.incrementAndGet();
+      if (index != null) {
+        index.append(timeMillis, offset, bytes.length, message);
+      }
+    } catch (IOException ex) {
+      logEnd = currentSize();
+      droppedLines.incrementAndGet();
+      System.out.println("[RelayAgent:FALLBACK] " + line);
+      System.out.println("[RelayAgent:FALLBACK] Failed to write log: " + ex.getMessage());
+    }
   }
 
-  private void writeRaw(String message) {
+  private void writeEvent(RelayEvent event) {
+    waitingWriters.incrementAndGet();
     synchronized (lock) {
+      waitingWriters.decrementAndGet();
+      event.timeMillis = System.currentTimeMillis();
+      ByteBuffer line = encoder.encode(event);
+      if (sink != null) {
+        sink.append(event.timeMillis, line.array(), 0, line.limit());
+        writtenLines.incrementAndGet();
+        return;
+      }
       try {
-        Files.write(
-            logPath,
-            (message + System.lineSeparator()).getBytes(StandardCharsets.UTF_8),
-            StandardOpenOption.CREATE,
-            StandardOpenOption.APPEND);
+        long offset = logOffset(event.timeMillis);
+        try (OutputStream out = Files.newOutputStream(logPath, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+          out.write(line.array(), 0, line.limit());
+        }
+        logEnd = offset + line.limit();
+        writtenLines.incrementAndGet();
+        if (index != null) {
+          index.append(event.timeMillis, offset, line.limit(), event);
+        }
       } catch (IOException ex) {
-        System.out.println("[RelayAgent:FALLBACK] " + message);
+        logEnd = currentSize();
+        droppedLines.incrementAndGet();
+        System.out.println("[RelayAgent:FALLBACK] " + event.toText());
         System.out.println("[RelayAgent:FALLBACK] Failed to write log: " + ex.getMessage());
       }
     }
   }
+
+  /** Offset the next line is written at; called with the lock held. */
+  private long logOffset(long timeMillis) {
+    if (index != null && timeMillis - logEndCheckedMillis >= 1_000L) {
+      logEnd = currentSize();
+      logEndCheckedMillis = timeMillis;
+    }
+    return logEnd;
+  }
+
+  private long currentSize() {
+    try {
+      return Files.size(logPath);
+    } catch (IOException ex) {
+      // Not created yet, or truncated and replaced underneath us.
+      return 0L;
+    }
+  }
 }
@@ -0,0 +1,284 @@
+package com.blueprint.relay;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * In-process counters for the agent's own behaviour, rendered in Prometheus text
+ * format by LocalReportServer's /metrics endpoint. Public because advice code is
+ * inlined into OMS classes and calls {@link #recordCall} from their packages. Package
+ * advice calls are counted per method id in {@link MethodRegistry} instead and rendered
+ * here under stream {@code pkg}.
+ */
+public final class RelayMetrics {
+  private static final ConcurrentMap<String, ConcurrentMap<String, CallStats>> CALLS = new ConcurrentHashMap<>();
+  private static final CallStats REPORTS = new CallStats();
+  private static final AtomicInteger REPORTS_IN_FLIGHT = new AtomicInteger();
+  private static final LongAdder REPORTS_COALESCED = new LongAdder();
+  private static final ConcurrentMap<String, Gauge> GAUGES = new ConcurrentHashMap<>();
+
+  private RelayMetrics() {
+  }
+
+  /**
+   * Records one traced call. {@code stream} is the log prefix (omsController,
+   * omsService, jms, pkg, ...); two-level lookup keeps the hot path allocation-free.
+   */
+  public static void recordCall(String stream, String method, long elapsedNanos, boolean failed) {
+    ConcurrentMap<String, CallStats> byMethod = CALLS.get(stream);
+    if (byMethod == null) {
+      byMethod = CALLS.computeIfAbsent(stream, key -> new ConcurrentHashMap<>());
+    }
+    CallStats stats = byMethod.get(method);
+    if (stats == null) {
+      stats = byMethod.computeIfAbsent(method, key -> new CallStats());
+    }
+    stats.record(elapsedNanos, failed);
+  }
+
+  static void reportStarted() {
+    REPORTS_IN_FLIGHT.incrementAndGet();
+  }
+
+  static void reportFinished(long elapsedNanos, boolean failed) {
+    REPORTS_IN_FLIGHT.decrementAndGet();
+    REPORTS.record(elapsedNanos, failed);
+  }
+
+  static void reportCoalesced() {
+    REPORTS_COALESCED.increment();
+  }
+
+  /**
+   * Registers (or replaces) a gauge sampled at scrape time.
+   */
+  static void registerGauge(String name, String help, LongSupplier supplier) {
+    GAUGES.put(name, new Gauge(help, supplier));
+  }
+
+  static String renderPrometheus() {
+    StringBuilder out = new StringBuilder(4096);
+
+    header(out, "relay_log_queue_depth", "gauge", "Log lines waiting for the relay log writer");
+    sample(out, "relay_log_queue_depth", null, RelayLogger.queueDepth());
+    header(out, "relay_log_lines_written_total", "counter", "Log lines written to the relay log");
+    sample(out, "relay_log_lines_written_total", null, RelayLogger.writtenLines());
+    header(out, "relay_log_lines_dropped_total", "counter", "Log lines that could not be written");
+    sample(out, "relay_log_lines_dropped_total", null, RelayLogger.droppedLines());
+
+    renderCalls(out);
+    renderHttp(out);
+    renderAws(out);
+
+    header(out, "relay_report_requests_total", "counter", "Report requests received over local transports");
+    sample(out, "relay_report_requests_total", null, REPORTS.calls.sum());
+    header(out, "relay_report_errors_total", "counter", "Report requests that failed");
+    sample(out, "relay_report_errors_total", null, REPORTS.errors.sum());
+    header(out, "relay_report_in_flight", "gauge", "Report requests currently executing or waiting");
+    sample(out, "relay_report_in_flight", null, REPORTS_IN_FLIGHT.get());
+    header(out, "relay_report_coalesced_total", "counter", "Report requests served by an identical in-flight call");
+    sample(out, "relay_report_coalesced_total", null, REPORTS_COALESCED.sum());
+    header(out, "relay_report_duration_seconds", "summary", "Report request latency");
+    sample(out, "relay_report_duration_seconds_count", null, REPORTS.calls.sum());
+    sample(out, "relay_report_duration_seconds_sum", null, seconds(REPORTS.totalNanos.sum()));
+    header(out, "relay_report_duration_seconds_max", "gauge", "Slowest report request");
+    sample(out, "relay_report_duration_seconds_max", null, seconds(REPORTS.maxNanos.get()));
+
+    for (Map.Entry<String, Gauge> entry : new TreeMap<>(GAUGES).entrySet()) {
+      header(out, entry.getKey(), "gauge", entry.getValue().help);
+      long value;
+      try {
+        value = entry.getValue().supplier.getAsLong();
+      } catch (RuntimeException ex) {
+        continue;
+      }
+      sample(out, entry.getKey(), null, value);
+    }
+
+    renderJvm(out);
+    return out.toString();
+  }
+
+  private static void renderCalls(StringBuilder out) {
+    header(out, "relay_call_duration_seconds", "summary", "Latency of traced proxy and advice calls");
+    StringBuilder errors = new StringBuilder();
+    StringBuilder max = new StringBuilder();
+    Map<String, Map<String, CallStats>> streams = new TreeMap<>(CALLS);
+    Map<String, CallStats> packageMethods = MethodRegistry.callStats();
+    if (!packageMethods.isEmpty()) {
+      streams.put("pkg", packageMethods);
+    }
+    for (Map.Entry<String, Map<String, CallStats>> stream : streams.entrySet()) {
+      for (Map.Entry<String, CallStats> method : new TreeMap<>(stream.getValue()).entrySet()) {
+        String labels = "stream=\"" + escape(stream.getKey()) + "\",method=\"" + escape(method.getKey()) + "\"";
+        CallStats stats = method.getValue();
+        sample(out, "relay_call_duration_seconds_count", labels, stats.calls.sum());
+        sample(out, "relay_call_duration_seconds_sum", labels, seconds(stats.totalNanos.sum()));
+        sample(errors, "relay_call_errors_total", labels, stats.errors.sum());
+        sample(max, "relay_call_duration_seconds_max", labels, seconds(stats.maxNanos.get()));
+      }
+    }
+    header(out, "relay_call_errors_total", "counter", "Traced calls that threw");
+    out.append(errors);
+    header(out, "relay_call_duration_seconds_max", "gauge", "Slowest traced call since start");
+    out.append(max);
+  }
+
+  private static void renderHttp(StringBuilder out) {
+    Map<String, HttpRequestLogUtil.Endpoint> endpoints = new TreeMap<>(HttpRequestLogUtil.endpoints());
+    header(out, "relay_http_request_duration_seconds", "histogram", "Latency of HTTP client calls by host and path template");
+    StringBuilder statuses = new StringBuilder();
+    StringBuilder sizes = new StringBuilder();
+    for (HttpRequestLogUtil.Endpoint endpoint : endpoints.values()) {
+      String labels = "host=\"" + escape(endpoint.host) + "\",path=\"" + escape(endpoint.path) + "\"";
+      histogram(out, "relay_http_request_duration_seconds", labels, endpoint.latency);
+      for (Map.Entry<String, LongAdder> status : new TreeMap<>(endpoint.statuses).entrySet()) {
+        sample(statuses, "relay_http_responses_total", labels + ",status=\"" + escape(status.getKey()) + "\"",
+            status.getValue().sum());
+      }
+      sample(sizes, "relay_http_response_bytes_sum", labels, endpoint.responseBytes.sum());
+      sample(sizes, "relay_http_response_bytes_count", labels, endpoint.sizedResponses.sum());
+    }
+    header(out, "relay_http_responses_total", "counter", "HTTP client calls by status code (error when the call threw)");
+    out.append(statuses);
+    header(out, "relay_http_response_bytes", "summary", "Entity Content-Length of HTTP responses that declared one");
+    out.append(sizes);
+  }
+
+  private static void renderAws(StringBuilder out) {
+    Map<String, AwsSdkCalls.Operation> operations = new TreeMap<>(AwsSdkCalls.operations());
+    if (operations.isEmpty()) {
+      return;
+    }
+    header(out, "relay_aws_call_duration_seconds", "histogram", "Latency of AWS SDK calls by service and operation, retries included");
+    StringBuilder retries = new StringBuilder();
+    StringBuilder throttled = new StringBuilder();
+    StringBuilder errors = new StringBuilder();
+    for (AwsSdkCalls.Operation operation : operations.values()) {
+      String labels = "service=\"" + escape(operation.service) + "\",operation=\"" + escape(operation.operation) + "\"";
+      histogram(out, "relay_aws_call_duration_seconds", labels, operation.latency);
+      sample(retries, "relay_aws_call_retries_total", labels, operation.retries.sum());
+      sample(throttled, "relay_aws_call_throttled_total", labels, operation.throttled.sum());
+      sample(errors, "relay_aws_call_errors_total", labels, operation.errors.sum());
+    }
+    header(out, "relay_aws_call_retries_total", "counter", "HTTP attempts beyond the first");
+    out.append(retries);
+    header(out, "relay_aws_call_throttled_total", "counter", "Attempts answered 429/503 or failed with a throttling exception");
+    out.append(throttled);
+    header(out, "relay_aws_call_errors_total", "counter", "AWS SDK calls that failed after retries");
+    out.append(errors);
+  }
+
+  private static void histogram(StringBuilder out, String name, String labels, LatencyHistogram latency) {
+    for (int i = 0; i < LatencyHistogram.BOUNDS_NANOS.length; i++) {
+      String le = Double.toString(seconds(LatencyHistogram.BOUNDS_NANOS[i]));
+      sample(out, name + "_bucket", labels + ",le=\"" + le + "\"", latency.cumulativeCount(i));
+    }
+    sample(out, name + "_bucket", labels + ",le=\"+Inf\"", latency.cumulativeCount(LatencyHistogram.BOUNDS_NANOS.length));
+    sample(out, name + "_sum", labels, seconds(latency.sumNanos()));
+    sample(out, name + "_count", labels, latency.count());
+  }
+
+  private static void renderJvm(StringBuilder out) {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    MemoryUsage heap = memory.getHeapMemoryUsage();
+    header(out, "jvm_memory_heap_used_bytes", "gauge", "Used heap");
+    sample(out, "jvm_memory_heap_used_bytes", null, heap.getUsed());
+    header(out, "jvm_memory_heap_committed_bytes", "gauge", "Committed heap");
+    sample(out, "jvm_memory_heap_committed_bytes", null, heap.getCommitted());
+    header(out, "jvm_memory_heap_max_bytes", "gauge", "Maximum heap");
+    sample(out, "jvm_memory_heap_max_bytes", null, heap.getMax());
+
+    header(out, "jvm_gc_collection_seconds", "summary", "Time spent in garbage collection by collector");
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      String labels = "gc=\"" + escape(gc.getName()) + "\"";
+      sample(out, "jvm_gc_collection_seconds_count", labels, Math.max(0L, gc.getCollectionCount()));
+      sample(out, "jvm_gc_collection_seconds_sum", labels, Math.max(0L, gc.getCollectionTime()) / 1000.0);
+    }
+
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    header(out, "jvm_threads_current", "gauge", "Live threads");
+    sample(out, "jvm_threads_current", null, threads.getThreadCount());
+    header(out, "jvm_threads_daemon", "gauge", "Live daemon threads");
+    sample(out, "jvm_threads_daemon", null, threads.getDaemonThreadCount());
+    header(out, "jvm_threads_peak", "gauge", "Peak live threads");
+    sample(out, "jvm_threads_peak", null, threads.getPeakThreadCount());
+  }
+
+  private static void header(StringBuilder out, String name, String type, String help) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void sample(StringBuilder out, String name, String labels, long value) {
+    out.append(name);
+    if (labels != null) {
+      out.append('{').append(labels).append('}');
+    }
+    out.append(' ').append(value).append('\n');
+  }
+
+  private static void sample(StringBuilder out, String name, String labels, double value) {
+    out.append(name);
+    if (labels != null) {
+      out.append('{').append(labels).append('}');
+    }
+    out.append(' ').append(String.format(Locale.ROOT, "%.9f", value)).append('\n');
+  }
+
+  private static double seconds(long nanos) {
+    return nanos / 1_000_000_000.0;
+  }
+
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  static final class CallStats {
+    final LongAdder calls = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder totalNanos = new LongAdder();
+    final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long elapsedNanos, boolean failed) {
+      calls.increment();
+      totalNanos.add(elapsedNanos);
+      if (failed) {
+        errors.increment();
+      }
+      long current = maxNanos.get();
+      while (elapsedNanos > current && !maxNanos.compareAndSet(current, elapsedNanos)) {
+        current = maxNanos.get();
+      }
+    }
+
+    void add(CallStats other) {
+      calls.add(other.calls.sum());
+      errors.add(other.errors.sum());
+      totalNanos.add(other.totalNanos.sum());
+      maxNanos.accumulateAndGet(other.maxNanos.get(), Math::max);
+    }
+  }
+
+  private static final class Gauge {
+    final String help;
+    final LongSupplier supplier;
+
+    Gauge(String help, LongSupplier supplier) {
+      this.help = help;
+      this.supplier = supplier;
+    }
+  }
+}
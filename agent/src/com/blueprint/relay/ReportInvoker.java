@@ -0,0 +1,91 @@
+package com.blueprint.relay;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Resolves and calls a report entry point on the omsController bean. Shared by every
+ * local transport (HTTP and the mapped control channel) so they coalesce onto the
+ * same in-flight calls.
+ */
+final class ReportInvoker {
+    private final Object omsController;
+    private final SingleFlight<Object> calls = new SingleFlight<>(RelayMetrics::reportCoalesced);
+
+    ReportInvoker(Object omsController) {
+        this.omsController = omsController;
+    }
+
+    /**
+     * Route through the single-flight layer keyed on the full, order-independent
+     * parameter set so only truly identical requests are merged.
+     */
+    Object invoke(final String reportName, final Map<String, String> params) throws Exception {
+        String key = new TreeMap<>(params).toString();
+        RelayMetrics.reportStarted();
+        long start = RelayJfr.begin(RelayJfr.REPORT, reportName);
+        Exception failure = null;
+        try {
+            return calls.execute(key, () -> invokeDirect(reportName, params));
+        } catch (Exception ex) {
+            failure = ex;
+            throw ex;
+        } finally {
+            RelayMetrics.reportFinished(System.nanoTime() - start, failure != null);
+            RelayJfr.end(start, failure);
+        }
+    }
+
+    /**
+     * Dynamically invoke report method on omsController
+     */
+    private Object invokeDirect(String reportName, Map<String, String> params) throws Exception {
+        Class<?> controllerClass = omsController.getClass();
+
+        // Try common method signatures
+        String[] methodNames = {
+            "handleReportRequest",
+            "submitReport",
+            "generateReport",
+            "requestReport",
+            "runReport",
+            "triggerReport",
+            "exportReport",
+            "createReport"
+        };
+
+        for (String methodName : methodNames) {
+            try {
+                // Try with String parameter
+                java.lang.reflect.Method m = controllerClass.getMethod(methodName, String.class);
+                System.out.println("[RELAY] Invoking: " + methodName + "(\"" + reportName + "\")");
+                Object result = m.invoke(omsController, reportName);
+                System.out.println("[RELAY]   -> Success: " + (result != null ? result.toString() : "null"));
+                return result;
+            } catch (NoSuchMethodException e) {
+                // Try next
+            }
+
+            try {
+                // Try with Map parameter (for parameters)
+                java.lang.reflect.Method m = controllerClass.getMethod(methodName, Map.class);
+                Map<String, Object> reportParams = new HashMap<>();
+                reportParams.put("reportName", reportName);
+                reportParams.putAll(params);
+                System.out.println("[RELAY] Invoking: " + methodName + "(Map)");
+                Object result = m.invoke(omsController, reportParams);
+                System.out.println("[RELAY]   -> Success: " + (result != null ? result.toString() : "null"));
+                return result;
+            } catch (NoSuchMethodException e) {
+                // Try next
+            }
+        }
+
+        throw new NoSuchMethodException(
+            "Could not find report method on " + controllerClass.getName() +
+            ". Tried: " + Arrays.toString(methodNames)
+        );
+    }
+}
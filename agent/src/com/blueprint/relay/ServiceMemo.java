@@ -0,0 +1,278 @@
+package com.blueprint.relay;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read-through memoization for OMSService lookups, configured per method with
+ * {@code -Drelay.memo.methods=getLocations:60,getUsers:30:200,getRecallList:10:50}: method
+ * name, time to live in seconds and, optionally, how many argument combinations to keep
+ * (default 256, least recently used go first). Results are keyed by the proxied service
+ * and the call's arguments; only calls whose arguments are all strings, boxed primitives,
+ * enums or null are memoized, the rest always reach the service. Exceptions are never
+ * cached.
+ *
+ * A call on the same service to a method whose name starts with one of
+ * {@code relay.memo.mutators} (default save, update, delete, remove, insert, create, add,
+ * set, put, clear, cancel, mark) drops everything memoized for that service once it
+ * returns or throws. A lookup that was already running when the mutation finished does
+ * not store its result.
+ *
+ * Cached results are shared between callers, so only methods whose results the GUI does
+ * not modify should be listed. Hits skip the target and are logged as {@code memoized}.
+ * The generated proxies inline MemoizingProxyAdvice, which is why this is public.
+ */
+public final class ServiceMemo {
+  private static final Map<String, MethodCache> CACHES = parse(System.getProperty("relay.memo.methods"));
+  private static final String[] MUTATORS = System.getProperty("relay.memo.mutators",
+      "save,update,delete,remove,insert,create,add,set,put,clear,cancel,mark").split("\\s*,\\s*");
+  // Bumped by every mutation; a lookup only stores its result if none finished while it ran.
+  private static final AtomicLong EPOCH = new AtomicLong();
+  private static final LongAdder HITS = new LongAdder();
+  private static final LongAdder MISSES = new LongAdder();
+  private static final LongAdder INVALIDATIONS = new LongAdder();
+
+  private ServiceMemo() {
+  }
+
+  static boolean enabled() {
+    return !CACHES.isEmpty();
+  }
+
+  static String[] methods() {
+    return CACHES.keySet().toArray(new String[0]);
+  }
+
+  static void start() {
+    RelayMetrics.registerGauge("relay_memo_hits", "OMSService calls answered from the memo", HITS::sum);
+    RelayMetrics.registerGauge("relay_memo_misses", "Memoized OMSService calls that went to the service", MISSES::sum);
+    RelayMetrics.registerGauge("relay_memo_invalidations", "Memo flushes caused by mutating OMSService calls",
+        INVALIDATIONS::sum);
+    RelayMetrics.registerGauge("relay_memo_entries", "OMSService results currently memoized", ServiceMemo::entries);
+    Agent.log("Memoizing OMSService %s; mutators %s", CACHES.values(), Arrays.toString(MUTATORS));
+  }
+
+  /** A memoized result; the proxy returns {@link #value} without calling the target. */
+  public static final class Hit {
+    public final Object value;
+
+    Hit(Object value) {
+      this.value = value;
+    }
+  }
+
+  /** A lookup that has to go to the target, and the epoch it started in. */
+  public static final class Miss {
+    final long epoch;
+
+    Miss(long epoch) {
+      this.epoch = epoch;
+    }
+  }
+
+  /**
+   * Returns a {@link Hit} when the call can be answered from the memo, a {@link Miss} when
+   * it is memoized but has to run, and null for every other method.
+   */
+  public static Object before(Object target, String method, Object[] args) {
+    MethodCache cache = CACHES.get(method);
+    if (cache == null) {
+      return null;
+    }
+    if (!memoizable(args)) {
+      return null;
+    }
+    long epoch = EPOCH.get();
+    Hit hit = cache.get(new Key(target, args), System.nanoTime());
+    if (hit == null) {
+      MISSES.increment();
+      return new Miss(epoch);
+    }
+    HITS.increment();
+    if (TracingGovernor.level() >= TracingGovernor.SUMMARY && RelayLogger.textEnabled()) {
+      RelayLogger.logExit(ProxyCalls.OMS_SERVICE, method, 0L, "memoized");
+    }
+    return hit;
+  }
+
+  /** Stores the result of a miss, or flushes the target's memo after a mutating call. */
+  public static void after(Object target, String method, Object[] args, Object token, Object result, Throwable thrown) {
+    if (token instanceof Miss) {
+      if (thrown == null && ((Miss) token).epoch == EPOCH.get()) {
+        CACHES.get(method).put(new Key(target, args), result, System.nanoTime());
+      }
+    } else if (token == null && isMutator(method)) {
+      invalidate(target);
+    }
+  }
+
+  /**
+   * Only calls whose arguments are immutable values are memoized: a bean the GUI fills in
+   * and passes again with other fields would otherwise match the result of its first use.
+   */
+  private static boolean memoizable(Object[] args) {
+    if (args == null) {
+      return true;
+    }
+    for (Object arg : args) {
+      if (arg != null && !immutableValue(arg)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean immutableValue(Object value) {
+    return value instanceof String || value instanceof Integer || value instanceof Long || value instanceof Boolean
+        || value instanceof Enum || value instanceof Short || value instanceof Byte || value instanceof Character
+        || value instanceof Double || value instanceof Float;
+  }
+
+  private static void invalidate(Object target) {
+    EPOCH.incrementAndGet();
+    INVALIDATIONS.increment();
+    for (MethodCache cache : CACHES.values()) {
+      cache.removeTarget(target);
+    }
+  }
+
+  private static boolean isMutator(String method) {
+    if (CACHES.isEmpty()) {
+      return false;
+    }
+    for (String prefix : MUTATORS) {
+      if (!prefix.isEmpty() && method.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static long entries() {
+    long total = 0L;
+    for (MethodCache cache : CACHES.values()) {
+      total += cache.size();
+    }
+    return total;
+  }
+
+  private static Map<String, MethodCache> parse(String spec) {
+    Map<String, MethodCache> caches = new HashMap<>();
+    if (spec == null || spec.trim().isEmpty()) {
+      return caches;
+    }
+    for (String entry : spec.split(",")) {
+      String[] parts = entry.trim().split(":");
+      try {
+        if (parts.length < 2 || parts.length > 3 || parts[0].isEmpty()) {
+          throw new IllegalArgumentException("expected method:ttlSeconds[:maxEntries]");
+        }
+        double ttlSeconds = Double.parseDouble(parts[1]);
+        int maxEntries = parts.length == 3 ? Integer.parseInt(parts[2]) : 256;
+        if (ttlSeconds <= 0.0 || maxEntries <= 0) {
+          throw new IllegalArgumentException("ttl and size must be positive");
+        }
+        caches.put(parts[0], new MethodCache(parts[0], (long) (ttlSeconds * 1e9), maxEntries));
+      } catch (IllegalArgumentException ex) {
+        Agent.log("Ignoring relay.memo.methods entry '%s': %s", entry.trim(), ex.getMessage());
+      }
+    }
+    return caches;
+  }
+
+  /** Service identity plus argument values. */
+  private static final class Key {
+    final Object target;
+    final Object[] args;
+    final int hash;
+
+    Key(Object target, Object[] args) {
+      this.target = target;
+      this.args = args == null ? new Object[0] : args.clone();
+      this.hash = 31 * System.identityHashCode(target) + Arrays.hashCode(this.args);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) other;
+      return target == key.target && hash == key.hash && Arrays.equals(args, key.args);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  private static final class Stored {
+    final Hit hit;
+    final long expiresAt;
+
+    Stored(Hit hit, long expiresAt) {
+      this.hit = hit;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  /** LRU map of one method's results, trimmed to its size bound on insert. */
+  private static final class MethodCache {
+    private final String method;
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final LinkedHashMap<Key, Stored> entries;
+
+    MethodCache(String method, long ttlNanos, int maxEntries) {
+      this.method = method;
+      this.ttlNanos = ttlNanos;
+      this.maxEntries = maxEntries;
+      this.entries = new LinkedHashMap<Key, Stored>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Stored> eldest) {
+          return size() > MethodCache.this.maxEntries;
+        }
+      };
+    }
+
+    synchronized Hit get(Key key, long now) {
+      Stored entry = entries.get(key);
+      if (entry == null) {
+        return null;
+      }
+      if (now - entry.expiresAt >= 0L) {
+        entries.remove(key);
+        return null;
+      }
+      return entry.hit;
+    }
+
+    synchronized void put(Key key, Object value, long now) {
+      entries.put(key, new Stored(new Hit(value), now + ttlNanos));
+    }
+
+    synchronized void removeTarget(Object target) {
+      Iterator<Key> keys = entries.keySet().iterator();
+      while (keys.hasNext()) {
+        if (keys.next().target == target) {
+          keys.remove();
+        }
+      }
+    }
+
+    synchronized int size() {
+      return entries.size();
+    }
+
+    @Override
+    public String toString() {
+      return method + " (" + ttlNanos / 1_000_000L + " ms, " + maxEntries + " entries)";
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package com.blueprint.relay;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Collapses concurrent calls that share a key onto one execution. Callers arriving
+ * while the first call is still running wait on its future and receive the same
+ * outcome. Nothing is retained once the call finishes, so this is not a cache.
+ */
+final class SingleFlight<V> {
+  private final ConcurrentMap<String, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+  private final Runnable onJoin;
+
+  SingleFlight() {
+    this(null);
+  }
+
+  /**
+   * @param onJoin run each time a caller attaches to an existing call, e.g. to count it
+   */
+  SingleFlight(Runnable onJoin) {
+    this.onJoin = onJoin;
+  }
+
+  interface Call<V> {
+    V call() throws Exception;
+  }
+
+  V execute(String key, Call<V> call) throws Exception {
+    CompletableFuture<V> created = new CompletableFuture<>();
+    CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+    if (existing != null) {
+      if (onJoin != null) {
+        onJoin.run();
+      }
+      return await(existing);
+    }
+
+    V value;
+    try {
+      value = call.call();
+    } catch (Throwable throwable) {
+      // Drop the key before completing so a late arrival starts a fresh call instead of
+      // observing a finished one.
+      inFlight.remove(key, created);
+      created.completeExceptionally(throwable);
+      throw throwable;
+    }
+    inFlight.remove(key, created);
+    created.complete(value);
+    return value;
+  }
+
+  private static <V> V await(CompletableFuture<V> future) throws Exception {
+    try {
+      return future.get();
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw ex;
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package com.blueprint.relay;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-local trace spans so relay log lines from one report can be tied together.
+ * Entry points (LocalReportServer and control channel requests, omsController calls,
+ * JMS onMessage) open a span; anything logged while it is current, on that thread or
+ * on a task passed through {@link #wrap}, carries {@code trace=... span=...}. Closing a
+ * span logs one {@code span.end} line with its duration and parent, so
+ * {@code grep trace=<id>} gives a report's whole path and timing breakdown.
+ *
+ * A span opened with no span current starts a new trace. JMS messages use their
+ * JMSCorrelationID as the trace id, so request and reply share one trace.
+ */
+public final class TraceContext {
+  private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+  private static final AtomicLong SPAN_IDS = new AtomicLong();
+  private static final int MAX_TRACE_ID_LENGTH = 64;
+
+  private static final ClassValue<Method> CORRELATION_GETTERS = new ClassValue<Method>() {
+    @Override
+    protected Method computeValue(Class<?> type) {
+      try {
+        Method getter = type.getMethod("getJMSCorrelationID");
+        getter.setAccessible(true);
+        return getter;
+      } catch (NoSuchMethodException | RuntimeException ex) {
+        return null;
+      }
+    }
+  };
+
+  private TraceContext() {
+  }
+
+  static final class Span {
+    final String traceId;
+    final String spanId;
+    final Span parent;
+    final String name;
+    final long startNanos = System.nanoTime();
+    final String linePrefix;
+
+    Span(String traceId, Span parent, String name) {
+      this.traceId = traceId;
+      this.spanId = Long.toHexString(SPAN_IDS.incrementAndGet());
+      this.parent = parent;
+      this.name = name;
+      this.linePrefix = "trace=" + traceId + " span=" + spanId + " | ";
+    }
+  }
+
+  /**
+   * Restores the previous span when closed; usable in try-with-resources.
+   */
+  static final class Scope implements AutoCloseable {
+    private final Span span;
+    private final Span previous;
+    private final boolean owner;
+
+    private Scope(Span span, Span previous, boolean owner) {
+      this.span = span;
+      this.previous = previous;
+      this.owner = owner;
+    }
+
+    String traceId() {
+      return span == null ? null : span.traceId;
+    }
+
+    @Override
+    public void close() {
+      if (owner) {
+        end(span);
+      }
+      restore(previous);
+    }
+  }
+
+  static Scope open(String name) {
+    return open(name, null);
+  }
+
+  /**
+   * Opens a span as a child of the current one, or as the root of a trace (using
+   * {@code traceId} when given) if none is current.
+   */
+  static Scope open(String name, String traceId) {
+    Span previous = CURRENT.get();
+    Span span = new Span(previous != null ? previous.traceId : rootTraceId(traceId), previous, name);
+    CURRENT.set(span);
+    return new Scope(span, previous, true);
+  }
+
+  /**
+   * Stack-style open for advice and proxy code that cannot hold a Scope across the
+   * call; every enter must be paired with {@link #exit()} on the same thread.
+   */
+  public static void enter(String name, String traceId) {
+    Span previous = CURRENT.get();
+    CURRENT.set(new Span(previous != null ? previous.traceId : rootTraceId(traceId), previous, name));
+  }
+
+  public static void exit() {
+    Span span = CURRENT.get();
+    if (span == null) {
+      return;
+    }
+    end(span);
+    restore(span.parent);
+  }
+
+  /**
+   * Runs {@code task} with the caller's current span, for executor hops.
+   */
+  static Runnable wrap(Runnable task) {
+    Span captured = CURRENT.get();
+    if (captured == null) {
+      return task;
+    }
+    return () -> {
+      Scope scope = activate(captured);
+      try {
+        task.run();
+      } finally {
+        scope.close();
+      }
+    };
+  }
+
+  static <V> Callable<V> wrap(Callable<V> task) {
+    Span captured = CURRENT.get();
+    if (captured == null) {
+      return task;
+    }
+    return () -> {
+      Scope scope = activate(captured);
+      try {
+        return task.call();
+      } finally {
+        scope.close();
+      }
+    };
+  }
+
+  static String currentTraceId() {
+    Span span = CURRENT.get();
+    return span == null ? null : span.traceId;
+  }
+
+  static String currentSpanId() {
+    Span span = CURRENT.get();
+    return span == null ? null : span.spanId;
+  }
+
+  /**
+   * Prefix RelayLogger puts in front of every message, empty outside any span.
+   */
+  static String linePrefix() {
+    Span span = CURRENT.get();
+    return span == null ? "" : span.linePrefix;
+  }
+
+  /**
+   * JMSCorrelationID of a message argument, or null. Resolved reflectively because
+   * the agent does not compile against JMS.
+   */
+  static String correlationId(Object message) {
+    if (message == null) {
+      return null;
+    }
+    Method getter = CORRELATION_GETTERS.get(message.getClass());
+    if (getter == null) {
+      return null;
+    }
+    try {
+      Object value = getter.invoke(message);
+      return value == null ? null : value.toString();
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      return null;
+    }
+  }
+
+  private static Scope activate(Span span) {
+    Span previous = CURRENT.get();
+    CURRENT.set(span);
+    return new Scope(span, previous, false);
+  }
+
+  private static void end(Span span) {
+    if (TracingGovernor.level() < TracingGovernor.SUMMARY) {
+      return;
+    }
+    long elapsedNanos = System.nanoTime() - span.startNanos;
+    String parent = span.parent == null ? "-" : span.parent.spanId;
+    if (RelayLogger.structured()) {
+      RelayLogger.event("span", span.name, RelayEvent.Phase.EXIT, elapsedNanos, "parent=" + parent);
+    } else {
+      RelayLogger.log("span.end %s %dus parent=%s", span.name, elapsedNanos / 1_000L, parent);
+    }
+  }
+
+  private static void restore(Span previous) {
+    if (previous == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(previous);
+    }
+  }
+
+  private static String rootTraceId(String requested) {
+    if (requested != null) {
+      String trimmed = requested.trim();
+      if (!trimmed.isEmpty()) {
+        StringBuilder id = new StringBuilder(Math.min(trimmed.length(), MAX_TRACE_ID_LENGTH));
+        for (int i = 0; i < trimmed.length() && id.length() < MAX_TRACE_ID_LENGTH; i++) {
+          char c = trimmed.charAt(i);
+          id.append(Character.isWhitespace(c) || c == '|' || c == '=' ? '_' : c);
+        }
+        return id.toString();
+      }
+    }
+    return String.format("%016x", ThreadLocalRandom.current().nextLong());
+  }
+}
@@ -0,0 +1,234 @@
+package com.blueprint.relay;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Overhead budget for tracing ({@code -Drelay.overhead.budgetPercent=5}). Tracing runs at
+ * one of four levels:
+ * <ul>
+ *   <li>{@link #FULL}: enter and exit lines with formatted arguments and results;</li>
+ *   <li>{@link #SUMMARY}: one exit line per call with its duration or exception, nothing formatted;</li>
+ *   <li>{@link #COUNTERS}: /metrics and JFR only;</li>
+ *   <li>{@link #OFF}: nothing beyond trace spans, which stay balanced at every level.</li>
+ * </ul>
+ *
+ * Call sites bracket their own work (advice, formatting, logging) with {@link #beginWork}
+ * and {@link #endWork}. A random one in {@value #SAMPLE_EVERY} brackets reads the thread's
+ * CPU time from ThreadMXBean and counts for the ones skipped. Every
+ * {@code relay.overhead.intervalMs} (default 1000) a governor thread compares that
+ * estimate with the CPU time of all Java threads: above the budget it steps one level down;
+ * when the cost measured earlier at the next level up, applied to the current call
+ * rate, would stay under half the budget for {@code relay.overhead.upIntervals}
+ * (default 3) intervals in a row, it steps back up.
+ *
+ * Without the property the level stays at FULL and the brackets cost a branch.
+ */
+public final class TracingGovernor implements Runnable {
+  public static final int OFF = 0;
+  public static final int COUNTERS = 1;
+  public static final int SUMMARY = 2;
+  public static final int FULL = 3;
+
+  private static final String[] NAMES = {"off", "counters", "summary", "full"};
+  private static final int SAMPLE_EVERY = 32;
+  private static final double BUDGET = budget();
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+  private static final boolean THREAD_CPU = BUDGET > 0 && threadCpuTime();
+  private static final long CLOCK_COST_NANOS = THREAD_CPU ? calibrate() : 0L;
+  private static final LongAdder SAMPLES = new LongAdder();
+  private static final LongAdder SAMPLED_NANOS = new LongAdder();
+  private static final AtomicLong OVERHEAD_PERMILLE = new AtomicLong();
+  private static final AtomicLong LEVEL_CHANGES = new AtomicLong();
+  private static volatile int level = FULL;
+
+  private final long intervalMillis = Math.max(100L, Long.getLong("relay.overhead.intervalMs", 1_000L));
+  private final int upIntervals = Math.max(1, Integer.getInteger("relay.overhead.upIntervals", 3));
+  private double overhead;
+  private Map<Long, Long> threadCpu = new HashMap<>();
+  // Agent CPU per bracket last measured at each level; 0 until that level has run.
+  private final double[] costPerBracket = new double[NAMES.length];
+
+  private TracingGovernor() {
+  }
+
+  static boolean enabled() {
+    return BUDGET > 0;
+  }
+
+  static void start() {
+    RelayMetrics.registerGauge("relay_tracing_level", "Tracing level: 3 full, 2 summary, 1 counters, 0 off",
+        () -> level);
+    RelayMetrics.registerGauge("relay_tracing_overhead_permille", "Agent share of application thread CPU in the last interval",
+        OVERHEAD_PERMILLE::get);
+    RelayMetrics.registerGauge("relay_tracing_level_changes", "Tracing level changes since start",
+        LEVEL_CHANGES::get);
+    Thread thread = new Thread(new TracingGovernor(), "BlueprintRelay-TracingGovernor");
+    thread.setDaemon(true);
+    thread.start();
+    Agent.log("Tracing overhead budget %.1f%% of application CPU (%s)", BUDGET * 100.0,
+        THREAD_CPU ? "thread CPU time" : "wall time, thread CPU time unsupported");
+  }
+
+  public static int level() {
+    return level;
+  }
+
+  /** Detail for a SUMMARY exit line; text lines carry no duration otherwise. */
+  public static String summary(long elapsedNanos) {
+    return elapsedNanos / 1_000L + "us";
+  }
+
+  /**
+   * Starts a bracket around agent work; returns the token for {@link #endWork}, or -1
+   * when this bracket is not sampled.
+   */
+  public static long beginWork() {
+    if (BUDGET <= 0) {
+      return -1L;
+    }
+    // Random rather than every Nth: brackets alternate (enter, exit, ...) and a fixed
+    // stride would only ever sample one kind.
+    if (ThreadLocalRandom.current().nextInt(SAMPLE_EVERY) != 0) {
+      return -1L;
+    }
+    return now();
+  }
+
+  public static void endWork(long token) {
+    if (token < 0) {
+      return;
+    }
+    long cost = now() - token - CLOCK_COST_NANOS;
+    SAMPLES.increment();
+    SAMPLED_NANOS.add(Math.max(0L, cost) * SAMPLE_EVERY);
+  }
+
+  @Override
+  public void run() {
+    long intervalNanos = intervalMillis * 1_000_000L;
+    int calm = 0;
+    try {
+      applicationCpuNanos(intervalNanos);
+      while (true) {
+        Thread.sleep(intervalMillis);
+        long appNanos = applicationCpuNanos(intervalNanos);
+        long agentNanos = SAMPLED_NANOS.sumThenReset();
+        long brackets = SAMPLES.sumThenReset() * SAMPLE_EVERY;
+        if (appNanos <= 0L) {
+          continue;
+        }
+        int current = level;
+        if (brackets > 0L) {
+          costPerBracket[current] = smooth(costPerBracket[current], agentNanos / (double) brackets);
+        }
+        // A sampled bracket that hit a log write or a safepoint counts 32 times over, so
+        // decisions use a moving average rather than one interval.
+        overhead = smooth(overhead, agentNanos / (double) appNanos);
+        OVERHEAD_PERMILLE.set(Math.round(overhead * 1_000.0));
+
+        // Below 0.1% of one core the ratio is noise from an idle process.
+        boolean material = agentNanos * 1_000L > intervalNanos;
+        if (overhead > BUDGET && material && current > OFF) {
+          change(current, current - 1, overhead);
+          overhead = 0.0;
+          calm = 0;
+        } else if (current < FULL && costPerBracket[current + 1] * brackets < BUDGET / 2.0 * appNanos) {
+          if (++calm >= upIntervals) {
+            change(current, current + 1, overhead);
+            calm = 0;
+          }
+        } else {
+          calm = 0;
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } catch (Throwable ex) {
+      Agent.log("Tracing governor stopped at level %s: %s", NAMES[level], ex.toString());
+    }
+  }
+
+  private static void change(int from, int to, double overhead) {
+    level = to;
+    LEVEL_CHANGES.incrementAndGet();
+    Agent.log("Tracing %s -> %s (agent %.2f%% of application CPU, budget %.1f%%)",
+        NAMES[from], NAMES[to], overhead * 100.0, BUDGET * 100.0);
+  }
+
+  private static double smooth(double average, double sample) {
+    return average == 0.0 ? sample : average * 0.5 + sample * 0.5;
+  }
+
+  private static long now() {
+    return THREAD_CPU ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+  }
+
+  /**
+   * CPU used by Java threads since the last call, summed per thread: the process CPU
+   * time the JVM reports is only tick-accurate, too coarse for one-second intervals.
+   * Without thread CPU time it is the interval times the processor count, so the
+   * budget becomes a share of machine capacity.
+   */
+  private long applicationCpuNanos(long intervalNanos) {
+    if (!THREAD_CPU) {
+      return intervalNanos * Runtime.getRuntime().availableProcessors();
+    }
+    Map<Long, Long> current = new HashMap<>();
+    long total = 0L;
+    for (long id : THREADS.getAllThreadIds()) {
+      long cpu = THREADS.getThreadCpuTime(id);
+      if (cpu < 0L) {
+        continue;
+      }
+      current.put(id, cpu);
+      Long previous = threadCpu.get(id);
+      total += cpu - (previous == null ? 0L : previous);
+    }
+    threadCpu = current;
+    return total;
+  }
+
+  private static double budget() {
+    String value = System.getProperty("relay.overhead.budgetPercent");
+    if (value == null) {
+      return 0.0;
+    }
+    try {
+      return Math.max(0.0, Double.parseDouble(value.trim())) / 100.0;
+    } catch (NumberFormatException ex) {
+      Agent.log("Ignoring relay.overhead.budgetPercent=%s: not a number", value);
+      return 0.0;
+    }
+  }
+
+  private static boolean threadCpuTime() {
+    try {
+      if (!THREADS.isCurrentThreadCpuTimeSupported()) {
+        return false;
+      }
+      if (!THREADS.isThreadCpuTimeEnabled()) {
+        THREADS.setThreadCpuTimeEnabled(true);
+      }
+      return true;
+    } catch (UnsupportedOperationException | SecurityException ex) {
+      return false;
+    }
+  }
+
+  /** The cost of the two clock reads in a sampled bracket, so it is not billed to the agent. */
+  private static long calibrate() {
+    long best = Long.MAX_VALUE;
+    for (int i = 0; i < 200; i++) {
+      long start = THREADS.getCurrentThreadCpuTime();
+      long end = THREADS.getCurrentThreadCpuTime();
+      best = Math.min(best, end - start);
+    }
+    return Math.max(0L, best);
+  }
+}
@@ -77,23 +77,34 @@ FOUND=0
 ACCESS_KEY=""
 SECRET_KEY=""
 SESSION_TOKEN=""
+LINE=""
+
+# Follow the log from the start (it was truncated above) and return as soon as a
+# 'secret=' line (only written in debug mode) is appended. Exit status 3 is a timeout;
+# anything else means the follower could not run, so fall back to polling with grep.
+FOLLOW_STATUS=0
+LINE=$("$JAVA_BIN" -cp "$AGENT_JAR" com.blueprint.relay.RelayLogFollower \
+    --log "$LOG_FILE" --from-start --timeout $((MAX_RETRIES * 2)) "secret=" 2>/dev/null) || FOLLOW_STATUS=$?
+
+if [[ "$FOLLOW_STATUS" -ne 0 && "$FOLLOW_STATUS" -ne 3 ]]; then
+    LINE=""
+    for ((i=1; i<=MAX_RETRIES; i++)); do
+        if grep -q "secret=" "$LOG_FILE"; then
+            # Extract the LAST occurrence
+            LINE=$(grep "secret=" "$LOG_FILE" | tail -n 1)
+            break
+        fi
+        sleep 2
+        echo -n "."
+    done
+fi
 
-for ((i=1; i<=MAX_RETRIES; i++)); do
-    # Grep for the pattern 'secret=' which only appears in debug mode
-    if grep -q "secret=" "$LOG_FILE"; then
-        # Extract the LAST occurrence
-        LINE=$(grep "secret=" "$LOG_FILE" | tail -n 1)
-        
-        # Regex parse
-        if [[ $LINE =~ key=([^[:space:]]+) ]]; then ACCESS_KEY="${BASH_REMATCH[1]}"; fi
-        if [[ $LINE =~ secret=([^[:space:]]+) ]]; then SECRET_KEY="${BASH_REMATCH[1]}"; fi
-        
-        FOUND=1
-        break
-    fi
-    sleep 2
-    echo -n "."
-done
+if [[ -n "$LINE" ]]; then
+    # Regex parse
+    if [[ $LINE =~ key=([^[:space:]]+) ]]; then ACCESS_KEY="${BASH_REMATCH[1]}"; fi
+    if [[ $LINE =~ secret=([^[:space:]]+) ]]; then SECRET_KEY="${BASH_REMATCH[1]}"; fi
+    FOUND=1
+fi
 
 echo ""
 